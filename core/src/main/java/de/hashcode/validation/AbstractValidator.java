@@ -15,33 +15,24 @@
  */
 package de.hashcode.validation;
 
-import javax.validation.ConstraintValidator;
-import javax.validation.ConstraintValidatorFactory;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.InvocationTargetException;
 
-import com.google.inject.Inject;
-import com.google.inject.Injector;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.validation.ConstraintValidator;
 
 /**
- * A {@link ConstraintValidatorFactory} that relies on guice for creating
- * validators.
+ * Abstract base class for annotation based validators.
  *
  * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
  */
-public class GuiceConstraintValidatorFactory implements ConstraintValidatorFactory {
-
-    private final Injector injector;
-
-    @Inject
-    public GuiceConstraintValidatorFactory(final Injector injector) {
-        this.injector = injector;
-    }
+public abstract class AbstractValidator<T extends Annotation> implements ConstraintValidator<T, Object> {
 
-    /**
-     * {@inheritDoc}
-     */
-    @Override
-    public <T extends ConstraintValidator<?, ?>> T getInstance(final Class<T> key) {
-        return injector.getInstance(key);
+    @CheckForNull
+    protected Object getPropertyValue(@Nonnull final Object object, @Nonnull final String propertyName)
+            throws IllegalArgumentException, IllegalAccessException, InvocationTargetException {
+        return ReflectionUtils.getPropertyValue(object, propertyName);
     }
 
 }
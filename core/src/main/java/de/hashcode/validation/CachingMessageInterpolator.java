@@ -0,0 +1,129 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import java.lang.annotation.Annotation;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.Nonnull;
+import javax.validation.MessageInterpolator;
+
+/**
+ * A {@link MessageInterpolator} that caches the interpolated messages of its
+ * delegate per message template, constraint annotation and {@link Locale}, so
+ * that a template is parsed and its resource bundle messages are resolved
+ * only once, and not for every violation. It's set via
+ * {@link javax.validation.Configuration#messageInterpolator(MessageInterpolator)}:
+ * <pre>
+ * final Configuration&lt;?&gt; configuration = Validation.byDefaultProvider().configure();
+ * configuration.messageInterpolator(new CachingMessageInterpolator(configuration
+ *         .getDefaultMessageInterpolator()));
+ * </pre>
+ * The delegate must not use the validated value (bean validation 1.0
+ * interpolators don't), as it's not part of the cache key. Annotations are
+ * compared by identity, which is cheap, as a provider uses the same instance
+ * for all validations of a constraint.
+ * <p>
+ * The number of cached messages is limited (as e.g. validators might build
+ * templates dynamically), when the limit is reached the cache is cleared.
+ * </p>
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+public class CachingMessageInterpolator implements MessageInterpolator {
+
+    private final MessageInterpolator delegate;
+    private final int maxSize;
+    private final ConcurrentMap<Key, String> messages = new ConcurrentHashMap<Key, String>();
+
+    public CachingMessageInterpolator(@Nonnull final MessageInterpolator delegate) {
+        this(delegate, 10000);
+    }
+
+    /**
+     * Creates a new interpolator.
+     *
+     * @param maxSize
+     *            the max number of cached messages.
+     */
+    public CachingMessageInterpolator(@Nonnull final MessageInterpolator delegate, final int maxSize) {
+        this.delegate = delegate;
+        this.maxSize = maxSize;
+    }
+
+    @Override
+    public String interpolate(final String messageTemplate, final Context context) {
+        return interpolate(messageTemplate, context, Locale.getDefault());
+    }
+
+    @Override
+    public String interpolate(final String messageTemplate, final Context context, final Locale locale) {
+        final Annotation annotation = context.getConstraintDescriptor() != null ? context.getConstraintDescriptor()
+                .getAnnotation() : null;
+        final Key key = new Key(messageTemplate, annotation, locale);
+        String result = messages.get(key);
+        if (result == null) {
+            result = delegate.interpolate(messageTemplate, context, locale);
+            if (messages.size() >= maxSize) {
+                messages.clear();
+            }
+            messages.put(key, result);
+        }
+        return result;
+    }
+
+    /**
+     * The number of cached messages.
+     */
+    public int size() {
+        return messages.size();
+    }
+
+    private static final class Key {
+
+        private final String messageTemplate;
+        private final Annotation annotation;
+        private final Locale locale;
+        private final int hashCode;
+
+        Key(final String messageTemplate, final Annotation annotation, final Locale locale) {
+            this.messageTemplate = messageTemplate;
+            this.annotation = annotation;
+            this.locale = locale;
+            hashCode = (messageTemplate.hashCode() * 31 + System.identityHashCode(annotation)) * 31
+                    + locale.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return annotation == other.annotation && messageTemplate.equals(other.messageTemplate)
+                    && locale.equals(other.locale);
+        }
+
+    }
+
+}
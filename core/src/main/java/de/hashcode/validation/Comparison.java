@@ -0,0 +1,68 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+/**
+ * The comparison operators supported by {@link FieldsCompare}.
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+public enum Comparison {
+
+    LESS {
+        @Override
+        public boolean matches(final int compareResult) {
+            return compareResult < 0;
+        }
+    },
+    LESS_OR_EQUAL {
+        @Override
+        public boolean matches(final int compareResult) {
+            return compareResult <= 0;
+        }
+    },
+    EQUAL {
+        @Override
+        public boolean matches(final int compareResult) {
+            return compareResult == 0;
+        }
+    },
+    NOT_EQUAL {
+        @Override
+        public boolean matches(final int compareResult) {
+            return compareResult != 0;
+        }
+    },
+    GREATER_OR_EQUAL {
+        @Override
+        public boolean matches(final int compareResult) {
+            return compareResult >= 0;
+        }
+    },
+    GREATER {
+        @Override
+        public boolean matches(final int compareResult) {
+            return compareResult > 0;
+        }
+    };
+
+    /**
+     * Determines if the given result of a comparison (as returned by
+     * {@link Comparable#compareTo(Object)}) satisfies this operator.
+     */
+    public abstract boolean matches(int compareResult);
+
+}
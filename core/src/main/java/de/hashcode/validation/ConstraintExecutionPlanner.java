@@ -0,0 +1,261 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.validation.ConstraintViolation;
+import javax.validation.ValidationException;
+import javax.validation.Validator;
+import javax.validation.metadata.BeanDescriptor;
+
+/**
+ * A {@link Validator} that plans the execution of constraints by their cost:
+ * in-memory constraints are cheap, constraints validated by an
+ * {@link IoBoundValidator} are expensive.
+ * <p>
+ * In fail-fast mode a validation runs with all I/O bound checks deferred: I/O
+ * bound validators hand their check to the planner via
+ * {@link #defer(DeferredCheck)} instead of running it. If the validation
+ * produces violations, these are returned without any I/O. Otherwise the
+ * deferred checks are run (in the order of validation) until the first one
+ * fails, so valid objects are validated once. Only if a deferred check fails
+ * the validation is run again, so that the violation is reported by the bean
+ * validation provider: the validators get the known results of the deferred
+ * checks (no I/O is repeated), I/O bound constraints after the failed one are
+ * skipped. So an invalid form submission doesn't cost database round trips,
+ * and at most one uniqueness violation is reported. Validators that skip their
+ * check via {@link #skipIoBound()} instead of deferring it are checked in the
+ * second run.
+ * </p>
+ * <p>
+ * Without fail-fast mode the validation is simply delegated.
+ * </p>
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+public class ConstraintExecutionPlanner implements Validator {
+
+    /**
+     * An I/O bound check, deferred until the cheap constraints are validated.
+     */
+    public interface DeferredCheck {
+
+        /**
+         * Runs the check.
+         *
+         * @return <code>true</code> if the constraint is satisfied.
+         */
+        boolean isValid();
+
+    }
+
+    private static final ThreadLocal<State> STATE = new ThreadLocal<State>();
+
+    private final Validator delegate;
+    private final boolean failFast;
+
+    public ConstraintExecutionPlanner(final Validator delegate, final boolean failFast) {
+        this.delegate = delegate;
+        this.failFast = failFast;
+    }
+
+    /**
+     * Determines if {@link IoBoundValidator}s shall skip their validation in the
+     * current thread. Validators should prefer {@link #defer(DeferredCheck)},
+     * a skipped check requires another validation run.
+     */
+    public static boolean skipIoBound() {
+        final State state = STATE.get();
+        if (state == null) {
+            return false;
+        }
+        if (state.deferring) {
+            state.skipped = true;
+            return true;
+        }
+        return state.ioViolated;
+    }
+
+    /**
+     * Defers the given check of an {@link IoBoundValidator} if the current
+     * validation is run by a {@link ConstraintExecutionPlanner} in fail-fast
+     * mode, or provides its result if it was already run.
+     *
+     * @return the result the validator has to report without doing any I/O
+     *         (<code>true</code> while the check is deferred, or
+     *         <code>false</code> if the deferred check failed), or
+     *         <code>null</code> if the validator has to check now.
+     */
+    @CheckForNull
+    public static Boolean defer(@Nonnull final DeferredCheck check) {
+        final State state = STATE.get();
+        if (state == null) {
+            return null;
+        }
+        if (state.deferring) {
+            state.deferred.add(check);
+            return Boolean.TRUE;
+        }
+        if (state.results == null || state.replayed >= state.results.size()) {
+            return null;
+        }
+        return state.results.get(state.replayed++);
+    }
+
+    /**
+     * Is invoked by {@link IoBoundValidator}s when they detected a violation,
+     * so that following {@link IoBoundValidator}s can be skipped.
+     */
+    public static void ioBoundViolation() {
+        final State state = STATE.get();
+        if (state != null) {
+            state.ioViolated = true;
+        }
+    }
+
+    @Override
+    public <T> Set<ConstraintViolation<T>> validate(final T object, final Class<?>... groups) {
+        return plan(new Validation<T>() {
+            @Override
+            public Set<ConstraintViolation<T>> run() {
+                return delegate.validate(object, groups);
+            }
+        });
+    }
+
+    @Override
+    public <T> Set<ConstraintViolation<T>> validateProperty(final T object, final String propertyName,
+            final Class<?>... groups) {
+        return plan(new Validation<T>() {
+            @Override
+            public Set<ConstraintViolation<T>> run() {
+                return delegate.validateProperty(object, propertyName, groups);
+            }
+        });
+    }
+
+    @Override
+    public <T> Set<ConstraintViolation<T>> validateValue(final Class<T> beanType, final String propertyName,
+            final Object value, final Class<?>... groups) {
+        return plan(new Validation<T>() {
+            @Override
+            public Set<ConstraintViolation<T>> run() {
+                return delegate.validateValue(beanType, propertyName, value, groups);
+            }
+        });
+    }
+
+    @Override
+    public BeanDescriptor getConstraintsForClass(final Class<?> clazz) {
+        return delegate.getConstraintsForClass(clazz);
+    }
+
+    @Override
+    public <T> T unwrap(final Class<T> type) {
+        return delegate.unwrap(type);
+    }
+
+    /**
+     * Runs the given validation with deferred I/O bound checks in fail-fast
+     * mode (see class comment).
+     */
+    private <T> Set<ConstraintViolation<T>> plan(final Validation<T> validation) {
+        if (!failFast) {
+            return validation.run();
+        }
+        final State previous = STATE.get();
+        try {
+            final State state = new State(true);
+            STATE.set(state);
+            final Set<ConstraintViolation<T>> result = validation.run();
+            if (!result.isEmpty()) {
+                return result;
+            }
+            final List<Boolean> results = runDeferred(state.deferred);
+            if (!state.skipped && !results.contains(Boolean.FALSE)) {
+                return result;
+            }
+            final State replay = new State(false);
+            replay.results = results;
+            STATE.set(replay);
+            return validation.run();
+        } finally {
+            restore(previous);
+        }
+    }
+
+    /**
+     * Runs the given checks until the first one fails, the results of the
+     * following checks are <code>true</code> (skipped).
+     */
+    @Nonnull
+    private static List<Boolean> runDeferred(final List<DeferredCheck> checks) {
+        final List<Boolean> results = new ArrayList<Boolean>(checks.size());
+        boolean failed = false;
+        for (final DeferredCheck check : checks) {
+            if (!failed) {
+                try {
+                    failed = !check.isValid();
+                } catch (final RuntimeException e) {
+                    // like the bean validation provider would report it
+                    throw new ValidationException("Unexpected exception during a deferred isValid call.", e);
+                }
+                results.add(!failed);
+            } else {
+                results.add(Boolean.TRUE);
+            }
+        }
+        return results;
+    }
+
+    private static void restore(final State previous) {
+        if (previous != null) {
+            STATE.set(previous);
+        } else {
+            STATE.remove();
+        }
+    }
+
+    /**
+     * One of the validations of the {@link Validator} interface.
+     */
+    private interface Validation<T> {
+
+        Set<ConstraintViolation<T>> run();
+
+    }
+
+    private static final class State {
+
+        private final boolean deferring;
+        private final List<DeferredCheck> deferred = new ArrayList<DeferredCheck>();
+        private List<Boolean> results;
+        private int replayed;
+        private boolean skipped;
+        private boolean ioViolated;
+
+        State(final boolean deferring) {
+            this.deferring = deferring;
+        }
+
+    }
+
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import static java.lang.annotation.ElementType.ANNOTATION_TYPE;
+import static java.lang.annotation.ElementType.TYPE;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import javax.validation.Constraint;
+import javax.validation.Payload;
+
+/**
+ * Validate that the values of 2 fields satisfy a {@link Comparison}, e.g. that
+ * a start date is before an end date, or a minimum is not greater than a
+ * maximum. Like with {@link FieldsMatch}, fields may be nested paths and the
+ * violation is reported for the second field.
+ *
+ * Example:
+ * <pre>
+ * &#064;FieldsCompare.List({
+ *   &#064;FieldsCompare(first = "start", second = "end", comparison = Comparison.LESS),
+ *   &#064;FieldsCompare(first = "amount", second = "limit", comparison = Comparison.LESS_OR_EQUAL)
+ * })
+ * </pre>
+ * <p>
+ * Supported are values of the same {@link Comparable} type (e.g. numbers,
+ * strings, {@link java.util.Date}s or {@link java.util.Calendar}s) and
+ * numbers of different types (e.g. an <code>int</code> and a
+ * {@link java.math.BigDecimal}). The comparator is chosen once per class from
+ * the declared property types, not per validation.
+ * </p>
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+@Target({ TYPE, ANNOTATION_TYPE })
+@Retention(RUNTIME)
+@Constraint(validatedBy = FieldsCompareValidator.class)
+@Documented
+public @interface FieldsCompare {
+
+    String message() default "{validation.constraints.FieldsCompare.message}";
+
+    Class<?>[] groups() default {};
+
+    Class<? extends Payload>[] payload() default {};
+
+    /**
+     * @return The first field
+     */
+    String first();
+
+    /**
+     * @return The second field
+     */
+    String second();
+
+    /**
+     * @return how the first field must compare to the second field.
+     */
+    Comparison comparison();
+
+    /**
+     * @return <code>true</code> (the default) if the constraint is satisfied
+     *         when one of the fields is <code>null</code>,
+     *         <code>false</code> if <code>null</code> values are invalid.
+     */
+    boolean nullValid() default true;
+
+    /**
+     * Defines several <code>@FieldsCompare</code> annotations on the same
+     * element
+     *
+     * @see FieldsCompare
+     */
+    @Target({ TYPE, ANNOTATION_TYPE })
+    @Retention(RUNTIME)
+    @Documented
+    @interface List {
+        FieldsCompare[] value();
+    }
+}
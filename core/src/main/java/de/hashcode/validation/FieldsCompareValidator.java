@@ -0,0 +1,221 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import static de.hashcode.validation.ReflectionUtils.getPropertyType;
+import static de.hashcode.validation.ReflectionUtils.getPropertyValue;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.Nonnull;
+import javax.validation.ConstraintValidator;
+import javax.validation.ConstraintValidatorContext;
+
+/**
+ * The validator for {@link FieldsCompare}. The comparator for the two fields
+ * is determined once per validated class from the declared property types.
+ * An instance is thread-safe after {@link #initialize(FieldsCompare)}.
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+public class FieldsCompareValidator implements ConstraintValidator<FieldsCompare, Object> {
+
+    private static final Map<Class<?>, Class<?>> WRAPPERS = new HashMap<Class<?>, Class<?>>();
+    static {
+        WRAPPERS.put(byte.class, Byte.class);
+        WRAPPERS.put(short.class, Short.class);
+        WRAPPERS.put(int.class, Integer.class);
+        WRAPPERS.put(long.class, Long.class);
+        WRAPPERS.put(float.class, Float.class);
+        WRAPPERS.put(double.class, Double.class);
+        WRAPPERS.put(char.class, Character.class);
+        WRAPPERS.put(boolean.class, Boolean.class);
+    }
+
+    private static final Comparator<Object> NATURAL = new Comparator<Object>() {
+        @Override
+        @SuppressWarnings("unchecked")
+        public int compare(final Object o1, final Object o2) {
+            return ((Comparable<Object>) o1).compareTo(o2);
+        }
+    };
+
+    private static final double MAX_EXACT_DOUBLE = 9007199254740992d;
+
+    private static final Comparator<Object> INTEGRAL = new Comparator<Object>() {
+        @Override
+        public int compare(final Object o1, final Object o2) {
+            final long l1 = ((Number) o1).longValue();
+            final long l2 = ((Number) o2).longValue();
+            return l1 < l2 ? -1 : l1 == l2 ? 0 : 1;
+        }
+    };
+
+    private static final Comparator<Object> FLOATING = new Comparator<Object>() {
+        @Override
+        public int compare(final Object o1, final Object o2) {
+            return Double.compare(((Number) o1).doubleValue(), ((Number) o2).doubleValue());
+        }
+    };
+
+    private static final Comparator<Object> DECIMAL = new Comparator<Object>() {
+        @Override
+        public int compare(final Object o1, final Object o2) {
+            if (isNonFinite(o1) || isNonFinite(o2)) {
+                return FLOATING.compare(o1, o2);
+            }
+            return toBigDecimal((Number) o1).compareTo(toBigDecimal((Number) o2));
+        }
+    };
+
+    /**
+     * Chooses the comparator by the runtime types, for properties whose
+     * declared types are not specific enough (e.g. <code>Object</code>).
+     */
+    private static final Comparator<Object> RUNTIME = new Comparator<Object>() {
+        @Override
+        public int compare(final Object o1, final Object o2) {
+            return getComparator(o1.getClass(), o2.getClass()).compare(o1, o2);
+        }
+    };
+
+    private final ConcurrentMap<Class<?>, Comparator<Object>> comparators =
+            new ConcurrentHashMap<Class<?>, Comparator<Object>>();
+
+    private volatile FieldsCompare constraintAnnotation;
+
+    @Override
+    public void initialize(final FieldsCompare constraintAnnotation) {
+        this.constraintAnnotation = constraintAnnotation;
+    }
+
+    @Override
+    public boolean isValid(final Object target, final ConstraintValidatorContext context) {
+        final String firstFieldName = constraintAnnotation.first();
+        final String secondFieldName = constraintAnnotation.second();
+        final boolean valid;
+        try {
+            final Object firstObj = getPropertyValue(target, firstFieldName);
+            final Object secondObj = getPropertyValue(target, secondFieldName);
+
+            if (firstObj == null || secondObj == null) {
+                valid = constraintAnnotation.nullValid();
+            } else {
+                final int result = getComparator(target.getClass()).compare(firstObj, secondObj);
+                valid = constraintAnnotation.comparison().matches(result);
+            }
+        } catch (final Exception e) {
+            throw new RuntimeException("An error occurred when comparing the fields '" + firstFieldName + "' and"
+                    + " '" + secondFieldName + "' on bean of type '" + target.getClass().getName(), e);
+        }
+        if (!valid) {
+            PropertyPaths.addViolation(context, constraintAnnotation.message(), secondFieldName)
+                    .disableDefaultConstraintViolation();
+        }
+        return valid;
+    }
+
+    @Nonnull
+    private Comparator<Object> getComparator(@Nonnull final Class<?> clazz) {
+        Comparator<Object> result = comparators.get(clazz);
+        if (result == null) {
+            final Class<?> firstType = wrap(getPropertyType(clazz, constraintAnnotation.first()));
+            final Class<?> secondType = wrap(getPropertyType(clazz, constraintAnnotation.second()));
+            result = isSpecific(firstType) && isSpecific(secondType)
+                    ? getComparator(firstType, secondType)
+                    : RUNTIME;
+            comparators.put(clazz, result);
+        }
+        return result;
+    }
+
+    /**
+     * Determines the comparator for values of the given types.
+     *
+     * @throws IllegalArgumentException
+     *             if values of the given types cannot be compared.
+     */
+    @Nonnull
+    private static Comparator<Object> getComparator(@Nonnull final Class<?> firstType,
+            @Nonnull final Class<?> secondType) throws IllegalArgumentException {
+        if (Number.class.isAssignableFrom(firstType) && Number.class.isAssignableFrom(secondType)
+                && firstType != secondType) {
+            if (isIntegral(firstType) && isIntegral(secondType)) {
+                return INTEGRAL;
+            }
+            if (isFloating(firstType) && isFloating(secondType)) {
+                return FLOATING;
+            }
+            return DECIMAL;
+        }
+        if (Comparable.class.isAssignableFrom(firstType)
+                && (firstType.isAssignableFrom(secondType) || secondType.isAssignableFrom(firstType))) {
+            return NATURAL;
+        }
+        throw new IllegalArgumentException("Cannot compare values of " + firstType + " and " + secondType);
+    }
+
+    private static boolean isSpecific(@Nonnull final Class<?> type) {
+        return type != Object.class && type != Number.class && type != Comparable.class && !type.isInterface();
+    }
+
+    private static boolean isIntegral(@Nonnull final Class<?> type) {
+        return type == Byte.class || type == Short.class || type == Integer.class || type == Long.class;
+    }
+
+    private static boolean isFloating(@Nonnull final Class<?> type) {
+        return type == Float.class || type == Double.class;
+    }
+
+    @Nonnull
+    private static Class<?> wrap(@Nonnull final Class<?> type) {
+        final Class<?> result = WRAPPERS.get(type);
+        return result != null ? result : type;
+    }
+
+    @Nonnull
+    private static BigDecimal toBigDecimal(@Nonnull final Number number) {
+        if (number instanceof BigDecimal) {
+            return (BigDecimal) number;
+        }
+        if (number instanceof BigInteger) {
+            return new BigDecimal((BigInteger) number);
+        }
+        if (isIntegral(number.getClass())) {
+            return BigDecimal.valueOf(number.longValue());
+        }
+        if (isFloating(number.getClass()) && Math.abs(number.doubleValue()) >= MAX_EXACT_DOUBLE) {
+            // beyond 2^53 the shortest decimal representation may differ from the exact (integral) value
+            return new BigDecimal(number.doubleValue());
+        }
+        return new BigDecimal(number.toString());
+    }
+
+    private static boolean isNonFinite(@Nonnull final Object number) {
+        if (!isFloating(number.getClass())) {
+            return false;
+        }
+        final double value = ((Number) number).doubleValue();
+        return Double.isNaN(value) || Double.isInfinite(value);
+    }
+
+}
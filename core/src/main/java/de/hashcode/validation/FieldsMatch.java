@@ -41,6 +41,8 @@ import javax.validation.Payload;
  *   @FieldsMatch(first = "email", second = "confirmEmail", message = "The email fields must match")
  * })
  * </pre>
+ * Fields can be nested paths, e.g. <code>first = "billing.email", second = "shipping.email"</code>;
+ * a <code>null</code> on the path results in a <code>null</code> value.
  * <p>
  * This constraint is based on this
  * <a href="http://stackoverflow.com/questions/1972933/cross-field-validation-with-hibernate-validator-jsr-303">stackoverflow post</a>
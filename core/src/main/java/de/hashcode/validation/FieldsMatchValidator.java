@@ -21,13 +21,14 @@ import javax.validation.ConstraintValidator;
 import javax.validation.ConstraintValidatorContext;
 
 /**
- * The validator for {@link FieldsMatch}.
+ * The validator for {@link FieldsMatch}. An instance is immutable after
+ * {@link #initialize(FieldsMatch)} and can be shared by concurrent threads.
  *
  * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
  */
 public class FieldsMatchValidator implements ConstraintValidator<FieldsMatch, Object> {
 
-    private FieldsMatch constraintAnnotation;
+    private volatile FieldsMatch constraintAnnotation;
 
     @Override
     public void initialize(final FieldsMatch constraintAnnotation) {
@@ -44,8 +45,8 @@ public class FieldsMatchValidator implements ConstraintValidator<FieldsMatch, Ob
 
             final boolean valid = firstObj == null && secondObj == null || firstObj != null && firstObj.equals(secondObj);
             if (!valid) {
-                context.buildConstraintViolationWithTemplate(constraintAnnotation.message()).addNode(secondFieldName)
-                        .addConstraintViolation().disableDefaultConstraintViolation();
+                PropertyPaths.addViolation(context, constraintAnnotation.message(), secondFieldName)
+                        .disableDefaultConstraintViolation();
                 return false;
             }
             return valid;
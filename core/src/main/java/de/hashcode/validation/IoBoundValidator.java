@@ -0,0 +1,36 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+/**
+ * Marker interface for validators that need I/O (e.g. a database query) and
+ * are therefore expensive compared to in-memory validators like the
+ * {@link FieldsMatchValidator}. The {@link ConstraintExecutionPlanner} uses
+ * this to run cheap constraints first.
+ * <p>
+ * Implementations should hand their check to
+ * {@link ConstraintExecutionPlanner#defer(ConstraintExecutionPlanner.DeferredCheck)}
+ * and report the returned result without doing any I/O (if it's
+ * <code>null</code> they check now, unless
+ * {@link ConstraintExecutionPlanner#skipIoBound()} says so). A violation is
+ * reported via {@link ConstraintExecutionPlanner#ioBoundViolation()}.
+ * </p>
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+public interface IoBoundValidator {
+
+}
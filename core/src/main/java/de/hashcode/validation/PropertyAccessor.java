@@ -0,0 +1,129 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+/**
+ * Reads a single property of an object, either via its getter or directly
+ * from its field. Instances are resolved once and cached by the
+ * {@link ReflectionUtils}.
+ * <p>
+ * Applications may implement this class without reflection (e.g. invoking the
+ * getter directly, see {@link ReachabilityMetadataGenerator}) and register
+ * instances via {@link ReflectionUtils#registerAccessor(Class, String, PropertyAccessor)}.
+ * </p>
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+public abstract class PropertyAccessor {
+
+    /**
+     * Reads the property of the given target.
+     */
+    @CheckForNull
+    public abstract Object getValue(@Nonnull Object target) throws IllegalAccessException,
+            InvocationTargetException;
+
+    /**
+     * The declared type of the property.
+     */
+    @Nonnull
+    public abstract Class<?> getType();
+
+    /**
+     * The getter or field that is read reflectively by this accessor.
+     *
+     * @return the member or <code>null</code> if this accessor does not use
+     *         reflection.
+     */
+    @CheckForNull
+    public Member getMember() {
+        return null;
+    }
+
+    /**
+     * Creates an accessor invoking the given getter.
+     */
+    @Nonnull
+    public static PropertyAccessor forGetter(@Nonnull final Method getter) {
+        return new PropertyAccessor() {
+
+            @Override
+            public Object getValue(final Object target) throws IllegalAccessException, InvocationTargetException {
+                return getter.invoke(target, (Object[]) null);
+            }
+
+            @Override
+            public Class<?> getType() {
+                return getter.getReturnType();
+            }
+
+            @Override
+            public Member getMember() {
+                return getter;
+            }
+
+            @Override
+            public String toString() {
+                return "getter " + getter;
+            }
+        };
+    }
+
+    /**
+     * Creates an accessor reading the given field. A non public field is made
+     * accessible once here, not on every read.
+     *
+     * @throws SecurityException
+     *             if the field cannot be made accessible.
+     */
+    @Nonnull
+    public static PropertyAccessor forField(@Nonnull final Field field) throws SecurityException {
+        if (!field.isAccessible()) {
+            field.setAccessible(true);
+        }
+        return new PropertyAccessor() {
+
+            @Override
+            public Object getValue(final Object target) throws IllegalAccessException {
+                return field.get(target);
+            }
+
+            @Override
+            public Class<?> getType() {
+                return field.getType();
+            }
+
+            @Override
+            public Member getMember() {
+                return field;
+            }
+
+            @Override
+            public String toString() {
+                return "field " + field;
+            }
+        };
+    }
+
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+import javax.annotation.Nonnull;
+import javax.validation.ConstraintValidatorContext;
+import javax.validation.ConstraintValidatorContext.ConstraintViolationBuilder;
+import javax.validation.ConstraintValidatorContext.ConstraintViolationBuilder.NodeBuilderCustomizableContext;
+
+/**
+ * A utility class for nested (dotted) property paths like
+ * <code>billing.email</code>.
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+public final class PropertyPaths {
+
+    private static final Pattern SEPARATOR = Pattern.compile("\\.");
+    /**
+     * The split paths of violations and property reads, paths are declared in
+     * annotations so there's a limited number of them.
+     */
+    private static final ConcurrentMap<String, String[]> SPLIT_PATHS = new ConcurrentHashMap<String, String[]>();
+
+    private PropertyPaths() {
+        // utility class
+    }
+
+    /**
+     * Splits the given path into its property names.
+     */
+    @Nonnull
+    public static String[] split(@Nonnull final String path) {
+        return SEPARATOR.split(path);
+    }
+
+    /**
+     * Splits the given path like {@link #split(String)}, but caches the result
+     * which therefore must not be modified.
+     */
+    @Nonnull
+    static String[] splitCached(@Nonnull final String path) {
+        String[] properties = SPLIT_PATHS.get(path);
+        if (properties == null) {
+            properties = split(path);
+            SPLIT_PATHS.put(path, properties);
+        }
+        return properties;
+    }
+
+    /**
+     * Adds a constraint violation with the given message template for the
+     * given (possibly nested) property path, one node per property.
+     *
+     * @return the given context.
+     */
+    @Nonnull
+    public static ConstraintValidatorContext addViolation(@Nonnull final ConstraintValidatorContext context,
+            @Nonnull final String messageTemplate, @Nonnull final String path) {
+        final ConstraintViolationBuilder builder = context.buildConstraintViolationWithTemplate(messageTemplate);
+        if (path.indexOf('.') < 0) {
+            return builder.addNode(path).addConstraintViolation();
+        }
+        final String[] properties = splitCached(path);
+        if (properties.length == 1) {
+            return builder.addNode(properties[0]).addConstraintViolation();
+        }
+        NodeBuilderCustomizableContext node = builder.addNode(properties[0]).addNode(properties[1]);
+        for (int i = 2; i < properties.length; i++) {
+            node = node.addNode(properties[i]);
+        }
+        return node.addConstraintViolation();
+    }
+
+}
@@ -0,0 +1,498 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import java.beans.Introspector;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.validation.Constraint;
+
+/**
+ * Generates the reflection metadata that is needed to run the validators in an
+ * ahead of time compiled native image (graalvm), where reflection only works
+ * for registered classes and members.
+ * <p>
+ * For each added class the constraint annotations of the class (like
+ * {@link FieldsMatch}, {@link FieldsCompare} or <code>@UniqueKey</code>) and
+ * of its fields and getters (like <code>@Unique</code>), also inside their
+ * <code>List</code> containers, are inspected: the annotated fields and
+ * getters are registered, and the property paths referenced
+ * by the attributes {@link #PROPERTY_ATTRIBUTES} are resolved like the
+ * validators do at runtime, and the getters/fields read along these paths are
+ * registered, as well as the id field of jpa entities and the constraint
+ * validators (which are instantiated via reflection by the validator
+ * factories).
+ * </p>
+ * <p>
+ * The generated metadata is available as <code>reflect-config.json</code>
+ * (graalvm &lt; 23) and as <code>reachability-metadata.json</code>.
+ * Additionally java source can be generated that registers reflection free
+ * {@link PropertyAccessor}s for all public getters via
+ * {@link ReflectionUtils#registerAccessor(Class, String, PropertyAccessor)}.
+ * </p>
+ * <p>
+ * To run this at build time (e.g. via the exec-maven-plugin after the
+ * compile phase) use the main method:
+ * </p>
+ * <pre>
+ * java de.hashcode.validation.ReachabilityMetadataGenerator &lt;outputDir&gt; &lt;accessorPackage&gt; &lt;classesDir|className&gt;...
+ * </pre>
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+public class ReachabilityMetadataGenerator {
+
+    /**
+     * The names of the constraint attributes that reference property paths.
+     */
+    public static final String[] PROPERTY_ATTRIBUTES = { "first", "second", "property", "scope" };
+
+    private static final String[] ID_ANNOTATIONS = { "javax.persistence.Id", "javax.persistence.EmbeddedId" };
+
+    private final Map<String, Entry> entries = new TreeMap<String, Entry>();
+    private final Map<String, Map<String, PropertyAccessor>> accessors =
+            new TreeMap<String, Map<String, PropertyAccessor>>();
+    private final Map<String, Class<?>> classes = new TreeMap<String, Class<?>>();
+
+    /**
+     * Registers the metadata for the constraints declared on the given class
+     * (and its superclasses). Classes without constraint annotations are
+     * ignored.
+     *
+     * @return this generator
+     */
+    @Nonnull
+    public ReachabilityMetadataGenerator addClass(@Nonnull final Class<?> clazz) {
+        boolean constrained = false;
+        for (Class<?> c = clazz; c != null && c != Object.class; c = c.getSuperclass()) {
+            constrained |= addConstraints(clazz, c.getDeclaredAnnotations());
+            for (final Field field : c.getDeclaredFields()) {
+                if (addConstraints(clazz, field.getDeclaredAnnotations())) {
+                    constrained = true;
+                    addHierarchy(c);
+                    getEntry(c).fields.add(field.getName());
+                    if (ReflectionUtils.isFieldAccess(clazz) || hasPublicGetter(clazz, field.getName())) {
+                        addProperty(clazz, field.getName());
+                    }
+                }
+            }
+            for (final Method method : c.getDeclaredMethods()) {
+                final String property = getPropertyName(method);
+                if (property != null && addConstraints(clazz, method.getDeclaredAnnotations())) {
+                    constrained = true;
+                    addHierarchy(c);
+                    getEntry(c).methods.add(method.getName());
+                    if (hasPublicGetter(clazz, property)) {
+                        addProperty(clazz, property);
+                    }
+                }
+            }
+        }
+        if (constrained) {
+            addIdProperty(clazz);
+        }
+        return this;
+    }
+
+    /**
+     * Registers the metadata for reading the given (possibly nested) property
+     * of the given class.
+     *
+     * @return this generator
+     */
+    @Nonnull
+    public ReachabilityMetadataGenerator addProperty(@Nonnull final Class<?> clazz, @Nonnull final String propertyName) {
+        final PropertyAccessor[] chain = ReflectionUtils.getAccessors(clazz, propertyName);
+        final String[] properties = PropertyPaths.split(propertyName);
+        Class<?> type = clazz;
+        for (int i = 0; i < chain.length; i++) {
+            addHierarchy(type);
+            getAccessors(type).put(properties[i], chain[i]);
+            final Member member = chain[i].getMember();
+            if (member instanceof Method) {
+                getEntry(member.getDeclaringClass()).methods.add(member.getName());
+            } else if (member instanceof Field) {
+                getEntry(member.getDeclaringClass()).fields.add(member.getName());
+            }
+            type = chain[i].getType();
+        }
+        return this;
+    }
+
+    /**
+     * Registers all classes found (as <code>.class</code> files) in the given
+     * directory and its subdirectories, see {@link #addClass(Class)}.
+     *
+     * @return this generator
+     */
+    @Nonnull
+    public ReachabilityMetadataGenerator addClasses(@Nonnull final File classesDir, @Nonnull final ClassLoader classLoader)
+            throws ClassNotFoundException {
+        addClasses(classesDir, "", classLoader);
+        return this;
+    }
+
+    private void addClasses(@Nonnull final File dir, @Nonnull final String packagePrefix,
+            @Nonnull final ClassLoader classLoader) throws ClassNotFoundException {
+        final File[] files = dir.listFiles();
+        if (files == null) {
+            throw new IllegalArgumentException("Cannot list the files of " + dir);
+        }
+        for (final File file : files) {
+            final String name = file.getName();
+            if (file.isDirectory()) {
+                addClasses(file, packagePrefix + name + '.', classLoader);
+            } else if (name.endsWith(".class") && !name.equals("package-info.class")) {
+                final String className = packagePrefix + name.substring(0, name.length() - ".class".length());
+                addClass(Class.forName(className, false, classLoader));
+            }
+        }
+    }
+
+    /**
+     * Writes the metadata in the format of <code>reflect-config.json</code>.
+     */
+    public void writeReflectConfig(@Nonnull final Writer out) throws IOException {
+        writeEntries(out, "name", true, "");
+        out.write('\n');
+        out.flush();
+    }
+
+    /**
+     * Writes the metadata in the format of
+     * <code>reachability-metadata.json</code>.
+     */
+    public void writeReachabilityMetadata(@Nonnull final Writer out) throws IOException {
+        out.write("{\n  \"reflection\" : ");
+        writeEntries(out, "type", false, "  ");
+        out.write("\n}\n");
+        out.flush();
+    }
+
+    /**
+     * Writes the source of a class with a static <code>register()</code>
+     * method, that registers reflection free accessors for all properties
+     * that are read via public getters of public classes. Properties read from
+     * fields are not covered, these are still read via reflection (covered by
+     * the generated metadata).
+     */
+    public void writeAccessorSource(@Nonnull final Writer out, @CheckForNull final String packageName,
+            @Nonnull final String className) throws IOException {
+        if (packageName != null && packageName.length() > 0) {
+            out.write("package " + packageName + ";\n\n");
+        }
+        out.write("import de.hashcode.validation.PropertyAccessor;\n");
+        out.write("import de.hashcode.validation.ReflectionUtils;\n\n");
+        out.write("/**\n * Registers the accessors used for validation, generated by "
+                + getClass().getSimpleName() + ".\n */\n");
+        out.write("public final class " + className + " {\n\n");
+        out.write("    private " + className + "() {\n    }\n\n");
+        out.write("    public static void register() {\n");
+        for (final Map.Entry<String, Map<String, PropertyAccessor>> classAccessors : accessors.entrySet()) {
+            final Class<?> clazz = classes.get(classAccessors.getKey());
+            for (final Map.Entry<String, PropertyAccessor> accessor : classAccessors.getValue().entrySet()) {
+                final Member member = accessor.getValue().getMember();
+                if (member instanceof Method && isPublic(clazz) && Modifier.isPublic(member.getModifiers())) {
+                    writeAccessor(out, clazz, accessor.getKey(), (Method) member);
+                }
+            }
+        }
+        out.write("    }\n\n}\n");
+        out.flush();
+    }
+
+    private void writeAccessor(final Writer out, final Class<?> clazz, final String property, final Method getter)
+            throws IOException {
+        final String type = clazz.getCanonicalName();
+        out.write("        ReflectionUtils.registerAccessor(" + type + ".class, \"" + property
+                + "\", new PropertyAccessor() {\n");
+        out.write("            @Override\n");
+        out.write("            public Object getValue(final Object target) {\n");
+        out.write("                return ((" + type + ") target)." + getter.getName() + "();\n");
+        out.write("            }\n\n");
+        out.write("            @Override\n");
+        out.write("            public Class<?> getType() {\n");
+        out.write("                return " + getter.getReturnType().getCanonicalName() + ".class;\n");
+        out.write("            }\n");
+        out.write("        });\n");
+    }
+
+    private static boolean isPublic(final Class<?> clazz) {
+        for (Class<?> c = clazz; c != null; c = c.getEnclosingClass()) {
+            if (!Modifier.isPublic(c.getModifiers()) || c.isAnonymousClass() || c.isLocalClass()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void writeEntries(final Writer out, final String nameKey, final boolean queryFlags, final String indent)
+            throws IOException {
+        out.write("[");
+        for (final Iterator<Entry> iter = entries.values().iterator(); iter.hasNext();) {
+            final Entry entry = iter.next();
+            out.write("\n" + indent + "  {\n" + indent + "    \"" + nameKey + "\" : \"" + entry.name + "\"");
+            if (queryFlags && entry.queryMembers) {
+                out.write(",\n" + indent + "    \"queryAllDeclaredFields\" : true");
+                out.write(",\n" + indent + "    \"queryAllDeclaredMethods\" : true");
+                out.write(",\n" + indent + "    \"queryAllPublicMethods\" : true");
+            }
+            if (entry.allPublicMethods) {
+                out.write(",\n" + indent + "    \"allPublicMethods\" : true");
+            }
+            if (!entry.fields.isEmpty()) {
+                out.write(",\n" + indent + "    \"fields\" : [");
+                writeMembers(out, entry.fields, false, indent);
+                out.write(" ]");
+            }
+            if (entry.constructor || !entry.methods.isEmpty()) {
+                final Set<String> methods = new TreeSet<String>(entry.methods);
+                if (entry.constructor) {
+                    methods.add("<init>");
+                }
+                out.write(",\n" + indent + "    \"methods\" : [");
+                writeMembers(out, methods, true, indent);
+                out.write(" ]");
+            }
+            out.write("\n" + indent + "  }" + (iter.hasNext() ? "," : ""));
+        }
+        out.write("\n" + indent + "]");
+    }
+
+    private static void writeMembers(final Writer out, final Set<String> names, final boolean methods,
+            final String indent) throws IOException {
+        for (final Iterator<String> iter = names.iterator(); iter.hasNext();) {
+            out.write("\n" + indent + "      { \"name\" : \"" + iter.next() + "\""
+                    + (methods ? ", \"parameterTypes\" : [ ]" : "") + " }" + (iter.hasNext() ? "," : ""));
+        }
+    }
+
+    private boolean addConstraints(final Class<?> clazz, final Annotation[] annotations) {
+        boolean result = false;
+        for (final Annotation annotation : annotations) {
+            result |= addConstraint(clazz, annotation);
+        }
+        return result;
+    }
+
+    /**
+     * Determines the name of the property read by the given getter, or
+     * <code>null</code> if the method is no getter.
+     */
+    @CheckForNull
+    private static String getPropertyName(final Method method) {
+        if (method.getParameterTypes().length > 0 || method.isSynthetic() || method.isBridge()) {
+            return null;
+        }
+        final String name = method.getName();
+        if (name.startsWith("get") && name.length() > 3 && method.getReturnType() != void.class) {
+            return Introspector.decapitalize(name.substring(3));
+        }
+        if (name.startsWith("is") && name.length() > 2
+                && (method.getReturnType() == boolean.class || method.getReturnType() == Boolean.class)) {
+            return Introspector.decapitalize(name.substring(2));
+        }
+        return null;
+    }
+
+    /**
+     * Determines if the given property can be read via a public getter, as
+     * done by the {@link ReflectionUtils} for classes without field access.
+     */
+    private static boolean hasPublicGetter(final Class<?> clazz, final String property) {
+        for (final Method method : clazz.getMethods()) {
+            if (property.equals(getPropertyName(method))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean addConstraint(final Class<?> clazz, final Annotation annotation) {
+        final Class<? extends Annotation> annotationType = annotation.annotationType();
+        final Constraint constraint = annotationType.getAnnotation(Constraint.class);
+        if (constraint != null) {
+            getEntry(annotationType).allPublicMethods = true;
+            for (final Class<?> validator : constraint.validatedBy()) {
+                getEntry(validator).constructor = true;
+            }
+            for (final String attribute : PROPERTY_ATTRIBUTES) {
+                final Object value = getAttribute(annotation, attribute);
+                if (value instanceof String) {
+                    addProperty(clazz, (String) value);
+                } else if (value instanceof String[]) {
+                    for (final String property : (String[]) value) {
+                        addProperty(clazz, property);
+                    }
+                }
+            }
+            return true;
+        }
+        // a container like @FieldsMatch.List
+        final Object value = getAttribute(annotation, "value");
+        boolean result = false;
+        if (value instanceof Annotation[]) {
+            for (final Annotation nested : (Annotation[]) value) {
+                result |= addConstraint(clazz, nested);
+            }
+        }
+        return result;
+    }
+
+    private void addIdProperty(final Class<?> clazz) {
+        for (Class<?> c = clazz; c != null && c != Object.class; c = c.getSuperclass()) {
+            for (final Field field : c.getDeclaredFields()) {
+                for (final Annotation annotation : field.getAnnotations()) {
+                    for (final String idAnnotation : ID_ANNOTATIONS) {
+                        if (annotation.annotationType().getName().equals(idAnnotation)) {
+                            addProperty(clazz, field.getName());
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @CheckForNull
+    private static Object getAttribute(final Annotation annotation, final String name) {
+        final Method method;
+        try {
+            method = annotation.annotationType().getMethod(name);
+        } catch (final NoSuchMethodException e) {
+            return null;
+        }
+        try {
+            return method.invoke(annotation);
+        } catch (final Exception e) {
+            throw new RuntimeException("Could not read the attribute '" + name + "' of " + annotation, e);
+        }
+    }
+
+    /**
+     * Registers the given class and its superclasses for member lookups, as
+     * done by the {@link ReflectionUtils} to resolve accessors.
+     */
+    private void addHierarchy(final Class<?> clazz) {
+        classes.put(clazz.getName(), clazz);
+        for (Class<?> c = clazz; c != null && c != Object.class; c = c.getSuperclass()) {
+            getEntry(c).queryMembers = true;
+        }
+    }
+
+    private Map<String, PropertyAccessor> getAccessors(final Class<?> clazz) {
+        Map<String, PropertyAccessor> result = accessors.get(clazz.getName());
+        if (result == null) {
+            result = new TreeMap<String, PropertyAccessor>();
+            accessors.put(clazz.getName(), result);
+        }
+        return result;
+    }
+
+    private Entry getEntry(final Class<?> clazz) {
+        Entry result = entries.get(clazz.getName());
+        if (result == null) {
+            result = new Entry(clazz.getName());
+            entries.put(clazz.getName(), result);
+        }
+        return result;
+    }
+
+    /**
+     * Generates <code>reflect-config.json</code>,
+     * <code>reachability-metadata.json</code> and the accessor source
+     * (<code>ValidationAccessors.java</code> in the package given as second
+     * argument, below the directory of its package) into the directory given as
+     * first argument, for the classes (directories or class names) given as
+     * further arguments.
+     */
+    public static void main(final String[] args) throws Exception {
+        if (args.length < 3) {
+            System.err.println("Usage: " + ReachabilityMetadataGenerator.class.getName()
+                    + " <outputDir> <accessorPackage> <classesDir|className>...");
+            System.exit(1);
+        }
+        final String accessorPackage = args[1];
+        final ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        final ReachabilityMetadataGenerator generator = new ReachabilityMetadataGenerator();
+        for (int i = 2; i < args.length; i++) {
+            final File file = new File(args[i]);
+            if (file.isDirectory()) {
+                generator.addClasses(file, classLoader);
+            } else {
+                generator.addClass(Class.forName(args[i], false, classLoader));
+            }
+        }
+        final File outputDir = new File(args[0]);
+        if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+            throw new IOException("Could not create " + outputDir);
+        }
+        Writer out = new OutputStreamWriter(new FileOutputStream(new File(outputDir, "reflect-config.json")), "UTF-8");
+        try {
+            generator.writeReflectConfig(out);
+        } finally {
+            out.close();
+        }
+        out = new OutputStreamWriter(new FileOutputStream(new File(outputDir, "reachability-metadata.json")), "UTF-8");
+        try {
+            generator.writeReachabilityMetadata(out);
+        } finally {
+            out.close();
+        }
+        final File packageDir = new File(outputDir, accessorPackage.replace('.', File.separatorChar));
+        if (!packageDir.isDirectory() && !packageDir.mkdirs()) {
+            throw new IOException("Could not create " + packageDir);
+        }
+        out = new OutputStreamWriter(new FileOutputStream(new File(packageDir, "ValidationAccessors.java")), "UTF-8");
+        try {
+            generator.writeAccessorSource(out, accessorPackage, "ValidationAccessors");
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * The metadata of a single class.
+     */
+    private static final class Entry {
+        private final String name;
+        private final Set<String> fields = new TreeSet<String>();
+        private final Set<String> methods = new TreeSet<String>();
+        private boolean constructor;
+        private boolean queryMembers;
+        private boolean allPublicMethods;
+
+        private Entry(final String name) {
+            this.name = name;
+        }
+    }
+
+}
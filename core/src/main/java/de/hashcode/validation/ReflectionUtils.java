@@ -0,0 +1,352 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import de.hashcode.validation.ValidationEventSink.AccessorResolution;
+
+/**
+ * A utility class for reflection tasks. Resolved accessors are cached per
+ * class, nested property paths (like <code>billing.email</code>) are compiled
+ * once into a chain of accessors.
+ * <p>
+ * Properties are read via their getters, unless the class uses jpa field
+ * access: then the fields are read directly, so that lazy or computed getters
+ * are not invoked. Field access is determined like jpa does, via
+ * <code>@Access(AccessType.FIELD)</code> or the placement of <code>@Id</code>
+ * (or <code>@EmbeddedId</code>) on a field, the annotations are identified by
+ * name so that there's no dependency on the jpa api. Field access is only used
+ * for classes that are mapped themselves (<code>@Entity</code>,
+ * <code>@MappedSuperclass</code> or <code>@Embeddable</code>), as the fields of
+ * a provider proxy (an unmapped subclass) are not populated.
+ * </p>
+ * <p>
+ * For environments without (or with restricted) reflection, like ahead of
+ * time compiled native images, accessors can be registered upfront via
+ * {@link #registerAccessor(Class, String, PropertyAccessor)}, and reflective
+ * lookups can be disabled via {@link #setReflectiveAccessAllowed(boolean)}.
+ * </p>
+ *
+ * @author Martin Grotzke
+ */
+public class ReflectionUtils {
+
+    private static final String ACCESS = "javax.persistence.Access";
+    private static final String ID = "javax.persistence.Id";
+    private static final String EMBEDDED_ID = "javax.persistence.EmbeddedId";
+    private static final String[] MAPPED_CLASS_ANNOTATIONS = { "javax.persistence.Entity",
+            "javax.persistence.MappedSuperclass", "javax.persistence.Embeddable" };
+
+    private static final ConcurrentMap<Class<?>, ConcurrentMap<String, PropertyAccessor>> ACCESSORS =
+            new ConcurrentHashMap<Class<?>, ConcurrentMap<String, PropertyAccessor>>();
+    private static final ConcurrentMap<Class<?>, ConcurrentMap<String, PropertyAccessor[]>> ACCESSOR_CHAINS =
+            new ConcurrentHashMap<Class<?>, ConcurrentMap<String, PropertyAccessor[]>>();
+    private static final ConcurrentMap<Class<?>, Boolean> FIELD_ACCESS = new ConcurrentHashMap<Class<?>, Boolean>();
+
+    private static volatile boolean reflectiveAccessAllowed = true;
+
+    private ReflectionUtils() {
+        // utility class
+    }
+
+    /**
+     * Read the value of the specified propertyName from the given object. This
+     * implementation allows properties/fields with only getters (immutable
+     * beans) and does not rely on java beans standard (PropertyDescriptor)
+     * which would require also a setter method (the alternative would be s.th.
+     * like
+     * <code>new PropertyDescriptor(propertyName, entityClass).getReadMethod().invoke(target);</code>
+     * ).
+     * <p>
+     * The propertyName may be a nested path like <code>billing.email</code>,
+     * which is null-safe: if an intermediate property is <code>null</code>,
+     * <code>null</code> is returned. The accessors of a path are resolved via
+     * the declared types, an intermediate value of another class (e.g. a lazy
+     * provider proxy, whose fields are not populated) is read via the accessor
+     * of its runtime class, i.e. the getter of the proxy.
+     * </p>
+     */
+    @CheckForNull
+    public static Object getPropertyValue(@Nonnull final Object object, @Nonnull final String propertyName)
+            throws IllegalArgumentException, IllegalAccessException, InvocationTargetException {
+        if (propertyName.indexOf('.') < 0) {
+            return getAccessor(object.getClass(), propertyName).getValue(object);
+        }
+        final PropertyAccessor[] chain = getAccessorChain(object.getClass(), propertyName);
+        Object result = chain[0].getValue(object);
+        for (int i = 1; i < chain.length; i++) {
+            if (result == null) {
+                return null;
+            }
+            final PropertyAccessor accessor = result.getClass() == chain[i - 1].getType()
+                ? chain[i]
+                : getAccessor(result.getClass(), PropertyPaths.splitCached(propertyName)[i]);
+            result = accessor.getValue(result);
+        }
+        return result;
+    }
+
+    /**
+     * Determines the declared type of the given (possibly nested) property of
+     * the given class, i.e. the return type of the getter or the type of the
+     * field.
+     */
+    @Nonnull
+    public static Class<?> getPropertyType(@Nonnull final Class<?> clazz, @Nonnull final String propertyName) {
+        if (propertyName.indexOf('.') < 0) {
+            return getAccessor(clazz, propertyName).getType();
+        }
+        final PropertyAccessor[] chain = getAccessorChain(clazz, propertyName);
+        return chain[chain.length - 1].getType();
+    }
+
+    /**
+     * Registers the accessor for the given property of the given class, so that
+     * it's not looked up via reflection. Accessors should be registered before
+     * validation starts, e.g. with the source generated by the
+     * {@link ReachabilityMetadataGenerator}.
+     */
+    public static void registerAccessor(@Nonnull final Class<?> clazz, @Nonnull final String propertyName,
+            @Nonnull final PropertyAccessor accessor) {
+        getAccessors(clazz).put(propertyName, accessor);
+        // chains of any class may contain the replaced accessor
+        ACCESSOR_CHAINS.clear();
+    }
+
+    /**
+     * Specifies if getters and fields may be looked up via reflection (the
+     * default). If disabled, reading a property without a registered accessor
+     * fails with an {@link IllegalStateException}, so that missing accessors
+     * are detected early (e.g. in tests) instead of in the native image.
+     */
+    public static void setReflectiveAccessAllowed(final boolean allowed) {
+        reflectiveAccessAllowed = allowed;
+    }
+
+    /**
+     * Determines if the properties of the given class are read from the fields
+     * (jpa field access) instead of via getters.
+     */
+    public static boolean isFieldAccess(@Nonnull final Class<?> clazz) {
+        Boolean result = FIELD_ACCESS.get(clazz);
+        if (result == null) {
+            result = determineFieldAccess(clazz);
+            FIELD_ACCESS.put(clazz, result);
+        }
+        return result;
+    }
+
+    @Nonnull
+    private static String toMethodName(@Nonnull final String methodPrefix, @Nonnull final String propertyName) {
+        return methodPrefix + propertyName.substring(0, 1).toUpperCase(Locale.ENGLISH) + propertyName.substring(1);
+    }
+
+    /**
+     * Resolves the accessors for each segment of the given (possibly nested)
+     * property path.
+     */
+    @Nonnull
+    static PropertyAccessor[] getAccessors(@Nonnull final Class<?> clazz, @Nonnull final String propertyName) {
+        return propertyName.indexOf('.') < 0
+            ? new PropertyAccessor[] { getAccessor(clazz, propertyName) }
+            : getAccessorChain(clazz, propertyName).clone();
+    }
+
+    @Nonnull
+    private static ConcurrentMap<String, PropertyAccessor> getAccessors(@Nonnull final Class<?> clazz) {
+        ConcurrentMap<String, PropertyAccessor> accessors = ACCESSORS.get(clazz);
+        if (accessors == null) {
+            accessors = new ConcurrentHashMap<String, PropertyAccessor>();
+            final ConcurrentMap<String, PropertyAccessor> existing = ACCESSORS.putIfAbsent(clazz, accessors);
+            if (existing != null) {
+                accessors = existing;
+            }
+        }
+        return accessors;
+    }
+
+    @Nonnull
+    private static PropertyAccessor getAccessor(@Nonnull final Class<?> clazz, @Nonnull final String property) {
+        final ConcurrentMap<String, PropertyAccessor> accessors = getAccessors(clazz);
+        PropertyAccessor result = accessors.get(property);
+        if (result == null) {
+            final AccessorResolution event = ValidationEvents.beginAccessorResolution();
+            result = createAccessor(clazz, property);
+            if (event != null) {
+                event.complete(clazz, property);
+            }
+            accessors.put(property, result);
+        }
+        return result;
+    }
+
+    @Nonnull
+    private static PropertyAccessor[] getAccessorChain(@Nonnull final Class<?> clazz, @Nonnull final String path) {
+        ConcurrentMap<String, PropertyAccessor[]> chains = ACCESSOR_CHAINS.get(clazz);
+        if (chains == null) {
+            chains = new ConcurrentHashMap<String, PropertyAccessor[]>();
+            final ConcurrentMap<String, PropertyAccessor[]> existing = ACCESSOR_CHAINS.putIfAbsent(clazz, chains);
+            if (existing != null) {
+                chains = existing;
+            }
+        }
+        PropertyAccessor[] result = chains.get(path);
+        if (result == null) {
+            final String[] properties = PropertyPaths.split(path);
+            result = new PropertyAccessor[properties.length];
+            Class<?> type = clazz;
+            for (int i = 0; i < properties.length; i++) {
+                result[i] = getAccessor(type, properties[i]);
+                type = result[i].getType();
+            }
+            chains.put(path, result);
+        }
+        return result;
+    }
+
+    @Nonnull
+    private static PropertyAccessor createAccessor(@Nonnull final Class<?> clazz, @Nonnull final String property) {
+        if (!reflectiveAccessAllowed) {
+            throw new IllegalStateException("No accessor registered for '" + clazz.getName() + '#' + property
+                    + "' and reflective access is disabled.");
+        }
+        if (isFieldAccess(clazz)) {
+            final Field field = findField(clazz, property);
+            if (field != null) {
+                try {
+                    return PropertyAccessor.forField(field);
+                } catch (final SecurityException e) {
+                    throw new RuntimeException("Field '" + clazz.getSimpleName() + '#' + property
+                            + "' is protected by the security manager.", e);
+                }
+            }
+        }
+        return PropertyAccessor.forGetter(findGetter(clazz, property));
+    }
+
+    @CheckForNull
+    private static Field findField(@Nonnull final Class<?> clazz, @Nonnull final String property) {
+        for (Class<?> c = clazz; c != null && c != Object.class; c = c.getSuperclass()) {
+            try {
+                return c.getDeclaredField(property);
+            } catch (final NoSuchFieldException e) {
+                // continue with the superclass
+            }
+        }
+        return null;
+    }
+
+    private static boolean determineFieldAccess(@Nonnull final Class<?> clazz) {
+        if (!isMappedClass(clazz)) {
+            return false;
+        }
+        for (Class<?> c = clazz; c != null && c != Object.class; c = c.getSuperclass()) {
+            final Annotation access = getAnnotation(c.getAnnotations(), ACCESS);
+            if (access != null) {
+                return "FIELD".equals(String.valueOf(getAnnotationValue(access)));
+            }
+            if (hasIdAnnotation(c.getDeclaredFields())) {
+                return true;
+            }
+            if (hasIdAnnotation(c.getDeclaredMethods())) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isMappedClass(@Nonnull final Class<?> clazz) {
+        final Annotation[] annotations = clazz.getAnnotations();
+        for (final String type : MAPPED_CLASS_ANNOTATIONS) {
+            if (getAnnotation(annotations, type) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasIdAnnotation(@Nonnull final AccessibleObject[] members) {
+        for (final AccessibleObject member : members) {
+            final Annotation[] annotations = member.getAnnotations();
+            if (getAnnotation(annotations, ID) != null || getAnnotation(annotations, EMBEDDED_ID) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @CheckForNull
+    private static Annotation getAnnotation(@Nonnull final Annotation[] annotations, @Nonnull final String type) {
+        for (final Annotation annotation : annotations) {
+            if (annotation.annotationType().getName().equals(type)) {
+                return annotation;
+            }
+        }
+        return null;
+    }
+
+    @CheckForNull
+    private static Object getAnnotationValue(@Nonnull final Annotation annotation) {
+        try {
+            return annotation.annotationType().getMethod("value").invoke(annotation);
+        } catch (final Exception e) {
+            throw new RuntimeException("Could not read the value of " + annotation, e);
+        }
+    }
+
+    @Nonnull
+    private static Method findGetter(@Nonnull final Class<?> clazz, @Nonnull final String property) {
+        final String get = toMethodName("get", property);
+        final String is = toMethodName("is", property);
+        Method getter;
+        try {
+            getter = clazz.getMethod(get);
+        } catch (final NoSuchMethodException noSuchMethodException) {
+            try {
+                getter = clazz.getMethod(is);
+            } catch (final NoSuchMethodException noSuchMethodException2) {
+                throw new RuntimeException("Getter for '" + clazz.getSimpleName() + '#' + property + "' not found.",
+                        noSuchMethodException2);
+            } catch (final SecurityException securityException) {
+                throw new RuntimeException("Method '" + clazz.getSimpleName() + '#' + is
+                        + "()' is protected by the security manager.");
+            }
+        } catch (final SecurityException securityException) {
+            try {
+                getter = clazz.getMethod(is);
+            } catch (final NoSuchMethodException noSuchMethodException) {
+                throw new RuntimeException("Method '" + clazz.getSimpleName() + '#' + get
+                        + "()' is protected by the security manager.");
+            } catch (final SecurityException securityException2) {
+                throw new RuntimeException("Methods '" + clazz.getSimpleName() + '#' + get + "()' and "
+                        + clazz.getSimpleName() + '#' + is + "()' are protected by the security manager.");
+            }
+        }
+        return getter;
+    }
+
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import java.util.Collections;
+import java.util.Iterator;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Path;
+import javax.validation.metadata.ConstraintDescriptor;
+
+/**
+ * A {@link ConstraintViolation} for violations that are detected outside of
+ * the bean validation provider (e.g. by the
+ * {@link UniqueKeyViolationTranslator}), with a property path consisting of a
+ * single property node.
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+public class SimpleConstraintViolation<T> implements ConstraintViolation<T> {
+
+    private final String message;
+    private final String messageTemplate;
+    private final T rootBean;
+    private final Class<T> rootBeanClass;
+    private final Path propertyPath;
+    private final Object invalidValue;
+    private final ConstraintDescriptor<?> constraintDescriptor;
+
+    public SimpleConstraintViolation(final String message, final String messageTemplate, final T rootBean,
+            final Class<T> rootBeanClass, final String property, final Object invalidValue,
+            final ConstraintDescriptor<?> constraintDescriptor) {
+        this.message = message;
+        this.messageTemplate = messageTemplate;
+        this.rootBean = rootBean;
+        this.rootBeanClass = rootBeanClass;
+        this.propertyPath = new PropertyPath(property);
+        this.invalidValue = invalidValue;
+        this.constraintDescriptor = constraintDescriptor;
+    }
+
+    @Override
+    public String getMessage() {
+        return message;
+    }
+
+    @Override
+    public String getMessageTemplate() {
+        return messageTemplate;
+    }
+
+    @Override
+    public T getRootBean() {
+        return rootBean;
+    }
+
+    @Override
+    public Class<T> getRootBeanClass() {
+        return rootBeanClass;
+    }
+
+    @Override
+    public Object getLeafBean() {
+        return rootBean;
+    }
+
+    @Override
+    public Path getPropertyPath() {
+        return propertyPath;
+    }
+
+    @Override
+    public Object getInvalidValue() {
+        return invalidValue;
+    }
+
+    @Override
+    public ConstraintDescriptor<?> getConstraintDescriptor() {
+        return constraintDescriptor;
+    }
+
+    @Override
+    public String toString() {
+        return "SimpleConstraintViolation [propertyPath=" + propertyPath + ", rootBeanClass=" + rootBeanClass
+                + ", message=" + message + "]";
+    }
+
+    private static final class PropertyPath implements Path, Path.Node {
+
+        private final String name;
+
+        PropertyPath(final String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Iterator<Node> iterator() {
+            return Collections.<Node> singletonList(this).iterator();
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public boolean isInIterable() {
+            return false;
+        }
+
+        @Override
+        public Integer getIndex() {
+            return null;
+        }
+
+        @Override
+        public Object getKey() {
+            return null;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            return obj instanceof PropertyPath && name.equals(((PropertyPath) obj).name);
+        }
+
+        @Override
+        public int hashCode() {
+            return name.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+
+    }
+
+}
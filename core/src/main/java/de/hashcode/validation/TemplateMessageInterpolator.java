@@ -0,0 +1,44 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import java.util.Locale;
+
+import javax.validation.MessageInterpolator;
+
+/**
+ * A {@link MessageInterpolator} that doesn't interpolate at all: the message
+ * of a violation is its template, i.e. usually the message key like
+ * <code>{validation.constraints.UniqueKey.message}</code>. For batch callers
+ * (e.g. imports) that report violations as property path and message key
+ * and don't need localized texts, this saves the resource bundle lookups and
+ * the parsing of the templates.
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+public class TemplateMessageInterpolator implements MessageInterpolator {
+
+    @Override
+    public String interpolate(final String messageTemplate, final Context context) {
+        return messageTemplate;
+    }
+
+    @Override
+    public String interpolate(final String messageTemplate, final Context context, final Locale locale) {
+        return messageTemplate;
+    }
+
+}
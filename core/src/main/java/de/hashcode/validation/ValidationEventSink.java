@@ -0,0 +1,96 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+/**
+ * Receives events about the hot paths of the validation, e.g. to make them
+ * visible in a profiler (see the JfrValidationEventSink of the
+ * jsr303-validators-jfr module). The sink is installed via
+ * {@link ValidationEvents}.
+ * <p>
+ * An event is started via one of the <code>begin</code> methods, which return
+ * <code>null</code> if the event is not recorded, and is completed with its
+ * data once the measured operation is done.
+ * </p>
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+public interface ValidationEventSink {
+
+    /**
+     * Starts an event for a uniqueness check.
+     *
+     * @return <code>null</code> if the event is not recorded.
+     */
+    @CheckForNull
+    UniquenessCheck beginUniquenessCheck();
+
+    /**
+     * Starts an event for the (reflective) lookup of a property accessor that
+     * was not cached yet.
+     *
+     * @return <code>null</code> if the event is not recorded.
+     */
+    @CheckForNull
+    AccessorResolution beginAccessorResolution();
+
+    /**
+     * Starts an event for the creation of a constraint validator by a
+     * {@link javax.validation.ConstraintValidatorFactory}.
+     *
+     * @return <code>null</code> if the event is not recorded.
+     */
+    @CheckForNull
+    ValidatorInstantiation beginValidatorInstantiation();
+
+    /**
+     * A started uniqueness check event.
+     */
+    interface UniquenessCheck {
+
+        /**
+         * Completes the event.
+         *
+         * @param exists
+         *            the result of the check: <code>true</code> if the key is
+         *            taken.
+         */
+        void complete(@Nonnull Class<?> entityClass, @Nonnull String property, boolean exists);
+
+    }
+
+    /**
+     * A started accessor resolution event.
+     */
+    interface AccessorResolution {
+
+        void complete(@Nonnull Class<?> type, @Nonnull String property);
+
+    }
+
+    /**
+     * A started validator instantiation event.
+     */
+    interface ValidatorInstantiation {
+
+        void complete(@Nonnull Class<?> validatorClass);
+
+    }
+
+}
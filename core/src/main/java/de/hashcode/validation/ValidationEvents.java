@@ -0,0 +1,100 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import java.util.Iterator;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+import javax.annotation.CheckForNull;
+
+import de.hashcode.validation.ValidationEventSink.AccessorResolution;
+import de.hashcode.validation.ValidationEventSink.UniquenessCheck;
+import de.hashcode.validation.ValidationEventSink.ValidatorInstantiation;
+
+/**
+ * Holds the {@link ValidationEventSink} used by the validators and factories.
+ * By default it's the first one provided via the {@link ServiceLoader} (e.g.
+ * by the jsr303-validators-jfr module), if there's none no events are created
+ * at all. The sink can be replaced via {@link #setSink(ValidationEventSink)}.
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+public final class ValidationEvents {
+
+    private static volatile ValidationEventSink sink = loadSink();
+
+    private ValidationEvents() {
+    }
+
+    /**
+     * Sets the sink that receives the events, <code>null</code> disables
+     * events.
+     */
+    public static void setSink(@CheckForNull final ValidationEventSink sink) {
+        ValidationEvents.sink = sink;
+    }
+
+    @CheckForNull
+    public static ValidationEventSink getSink() {
+        return sink;
+    }
+
+    /**
+     * Starts an event for a uniqueness check, see
+     * {@link ValidationEventSink#beginUniquenessCheck()}.
+     */
+    @CheckForNull
+    public static UniquenessCheck beginUniquenessCheck() {
+        final ValidationEventSink current = sink;
+        return current != null ? current.beginUniquenessCheck() : null;
+    }
+
+    /**
+     * Starts an event for an accessor lookup, see
+     * {@link ValidationEventSink#beginAccessorResolution()}.
+     */
+    @CheckForNull
+    public static AccessorResolution beginAccessorResolution() {
+        final ValidationEventSink current = sink;
+        return current != null ? current.beginAccessorResolution() : null;
+    }
+
+    /**
+     * Starts an event for a validator instantiation, see
+     * {@link ValidationEventSink#beginValidatorInstantiation()}.
+     */
+    @CheckForNull
+    public static ValidatorInstantiation beginValidatorInstantiation() {
+        final ValidationEventSink current = sink;
+        return current != null ? current.beginValidatorInstantiation() : null;
+    }
+
+    @CheckForNull
+    private static ValidationEventSink loadSink() {
+        try {
+            final Iterator<ValidationEventSink> sinks = ServiceLoader.load(ValidationEventSink.class,
+                    ValidationEvents.class.getClassLoader()).iterator();
+            return sinks.hasNext() ? sinks.next() : null;
+        } catch (final ServiceConfigurationError e) {
+            // e.g. the jfr sink on a jvm without jfr, validation works without events
+            return null;
+        } catch (final LinkageError e) {
+            return null;
+        }
+    }
+
+}
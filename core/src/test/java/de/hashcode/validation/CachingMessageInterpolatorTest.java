@@ -0,0 +1,151 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import static de.hashcode.validation.TestUtils.getByPropertyPath;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+import java.util.Locale;
+import java.util.Set;
+
+import javax.validation.Configuration;
+import javax.validation.ConstraintViolation;
+import javax.validation.MessageInterpolator;
+import javax.validation.Validation;
+import javax.validation.Validator;
+import javax.validation.constraints.Size;
+import javax.validation.metadata.ConstraintDescriptor;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test for {@link CachingMessageInterpolator} and the
+ * {@link TemplateMessageInterpolator}.
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+public class CachingMessageInterpolatorTest {
+
+    private CountingMessageInterpolator delegate;
+    private CachingMessageInterpolator interpolator;
+    private Validator validator;
+
+    @Before
+    public void beforeMethod() {
+        final Configuration<?> configuration = Validation.byDefaultProvider().configure();
+        delegate = new CountingMessageInterpolator(configuration.getDefaultMessageInterpolator());
+        interpolator = new CachingMessageInterpolator(delegate);
+        validator = configuration.messageInterpolator(interpolator).buildValidatorFactory().getValidator();
+    }
+
+    @Test
+    public void testMessagesAreInterpolatedOncePerConstraint() {
+        final Set<ConstraintViolation<Entity>> violations = validator.validate(new Entity("a", "abc"));
+        assertEquals(2, violations.size());
+        assertTrue(getByPropertyPath(violations, "prop1").getMessage().contains("10"));
+        assertFalse(getByPropertyPath(violations, "prop2").getMessage().contains("10"));
+        assertEquals(2, delegate.count);
+
+        validator.validate(new Entity("b", "bcd"));
+        assertEquals(2, delegate.count);
+        assertEquals(2, interpolator.size());
+    }
+
+    @Test
+    public void testMessagesAreCachedPerLocale() {
+        final ConstraintViolation<Entity> violation = validator.validate(new Entity("a", null)).iterator().next();
+        final MessageInterpolator.Context context = new MessageInterpolator.Context() {
+            @Override
+            public Object getValidatedValue() {
+                return violation.getInvalidValue();
+            }
+
+            @Override
+            public ConstraintDescriptor<?> getConstraintDescriptor() {
+                return violation.getConstraintDescriptor();
+            }
+        };
+        final Locale locale = new Locale("xx");
+        interpolator.interpolate(violation.getMessageTemplate(), context, locale);
+        interpolator.interpolate(violation.getMessageTemplate(), context, locale);
+        assertEquals(2, delegate.count);
+    }
+
+    @Test
+    public void testCacheIsLimited() {
+        interpolator = new CachingMessageInterpolator(delegate, 1);
+        validator = Validation.byDefaultProvider().configure().messageInterpolator(interpolator)
+                .buildValidatorFactory().getValidator();
+        validator.validate(new Entity("a", "abc"));
+        assertEquals(1, interpolator.size());
+    }
+
+    @Test
+    public void testTemplateMessageInterpolator() {
+        validator = Validation.byDefaultProvider().configure().messageInterpolator(
+                new TemplateMessageInterpolator()).buildValidatorFactory().getValidator();
+        final ConstraintViolation<Entity> violation = validator.validate(new Entity("a", null)).iterator().next();
+        assertEquals("{javax.validation.constraints.Size.message}", violation.getMessage());
+    }
+
+    private static class CountingMessageInterpolator implements MessageInterpolator {
+
+        private final MessageInterpolator delegate;
+        private int count;
+
+        CountingMessageInterpolator(final MessageInterpolator delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public String interpolate(final String messageTemplate, final Context context) {
+            return interpolate(messageTemplate, context, Locale.getDefault());
+        }
+
+        @Override
+        public String interpolate(final String messageTemplate, final Context context, final Locale locale) {
+            count++;
+            return delegate.interpolate(messageTemplate, context, locale);
+        }
+
+    }
+
+    static class Entity {
+
+        @Size(min = 2, max = 10)
+        private final String prop1;
+        @Size(max = 2)
+        private final String prop2;
+
+        Entity(final String prop1, final String prop2) {
+            this.prop1 = prop1;
+            this.prop2 = prop2;
+        }
+
+        public String getProp1() {
+            return prop1;
+        }
+
+        public String getProp2() {
+            return prop2;
+        }
+
+    }
+
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import static de.hashcode.validation.TestUtils.getByPropertyPath;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.Set;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validation;
+import javax.validation.Validator;
+import javax.validation.ValidatorContext;
+import javax.validation.ValidatorFactory;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test for {@link FieldsCompareValidator}.
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+public class FieldsCompareValidatorTest {
+
+    private Validator validator;
+
+    @Before
+    public void beforeMethod() {
+        final ValidatorFactory validatorFactory = Validation.buildDefaultValidatorFactory();
+        final ValidatorContext validatorContext = validatorFactory.usingContext();
+        validator = validatorContext.getValidator();
+    }
+
+    @Test
+    public void testComparison() {
+        assertTrue(Comparison.LESS.matches(-1));
+        assertTrue(!Comparison.LESS.matches(0));
+        assertTrue(Comparison.LESS_OR_EQUAL.matches(0));
+        assertTrue(Comparison.EQUAL.matches(0));
+        assertTrue(Comparison.NOT_EQUAL.matches(1));
+        assertTrue(Comparison.GREATER_OR_EQUAL.matches(0));
+        assertTrue(!Comparison.GREATER.matches(0));
+    }
+
+    @Test
+    public void testDateRange() {
+        final long now = System.currentTimeMillis();
+        assertTrue(validator.validate(new DateRange(new Date(now), new Date(now + 1000))).isEmpty());
+
+        final Set<ConstraintViolation<DateRange>> violations = validator.validate(new DateRange(new Date(now),
+                new Date(now)));
+        assertEquals("Unexpected violations: " + violations + ".", 1, violations.size());
+        assertNotNull("No violation found for propertyPath 'end'.", getByPropertyPath(violations, "end"));
+        assertEquals("must be LESS compared to start", getByPropertyPath(violations, "end").getMessage());
+    }
+
+    @Test
+    public void testMixedNumberTypes() {
+        assertTrue(validator.validate(new Amounts(10, new BigDecimal("10.00"), 3L, 3.5d)).isEmpty());
+
+        final Set<ConstraintViolation<Amounts>> violations = validator.validate(new Amounts(11,
+                new BigDecimal("10.99"), 4L, 3.5d));
+        assertEquals("Unexpected violations: " + violations + ".", 2, violations.size());
+        assertNotNull("No violation found for propertyPath 'limit'.", getByPropertyPath(violations, "limit"));
+        assertNotNull("No violation found for propertyPath 'max'.", getByPropertyPath(violations, "max"));
+    }
+
+    @Test
+    public void testNullSemantics() {
+        final Set<ConstraintViolation<DateRange>> violations = validator.validate(new DateRange(null, new Date()));
+        assertTrue("Unexpected violations: " + violations + ".", violations.isEmpty());
+
+        final Set<ConstraintViolation<Amounts>> amountViolations = validator.validate(new Amounts(1,
+                new BigDecimal("1"), null, 1d));
+        assertEquals("Unexpected violations: " + amountViolations + ".", 1, amountViolations.size());
+        assertNotNull(getByPropertyPath(amountViolations, "max"));
+    }
+
+    @Test
+    public void testUntypedPropertiesAreComparedByRuntimeType() {
+        assertTrue(validator.validate(new Untyped("a", "b")).isEmpty());
+        assertTrue(validator.validate(new Untyped(1, 2L)).isEmpty());
+        assertEquals(1, validator.validate(new Untyped(new Date(2), new Date(1))).size());
+    }
+
+    @Test
+    public void testLongsAndDoublesAreComparedExactly() {
+        final long maxExact = 1L << 53;
+        assertEquals(1, validator.validate(new Untyped(maxExact + 1, (double) maxExact)).size());
+        assertTrue(validator.validate(new Untyped((double) maxExact, maxExact + 1)).isEmpty());
+        assertEquals(1, validator.validate(new Untyped((1L << 60) + 1, (double) (1L << 60))).size());
+        assertTrue(validator.validate(new Untyped(Long.MAX_VALUE, Double.POSITIVE_INFINITY)).isEmpty());
+        assertTrue(validator.validate(new Untyped(1, 1.5f)).isEmpty());
+    }
+
+    @FieldsCompare(first = "start", second = "end", comparison = Comparison.LESS)
+    static class DateRange {
+        private final Date start;
+        private final Date end;
+
+        public DateRange(final Date start, final Date end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        public Date getStart() {
+            return start;
+        }
+
+        public Date getEnd() {
+            return end;
+        }
+    }
+
+    @FieldsCompare.List({
+            @FieldsCompare(first = "amount", second = "limit", comparison = Comparison.LESS_OR_EQUAL),
+            @FieldsCompare(first = "min", second = "max", comparison = Comparison.LESS_OR_EQUAL, nullValid = false) })
+    static class Amounts {
+        private final int amount;
+        private final BigDecimal limit;
+        private final Long min;
+        private final double max;
+
+        public Amounts(final int amount, final BigDecimal limit, final Long min, final double max) {
+            this.amount = amount;
+            this.limit = limit;
+            this.min = min;
+            this.max = max;
+        }
+
+        public int getAmount() {
+            return amount;
+        }
+
+        public BigDecimal getLimit() {
+            return limit;
+        }
+
+        public Long getMin() {
+            return min;
+        }
+
+        public double getMax() {
+            return max;
+        }
+    }
+
+    @FieldsCompare(first = "first", second = "second", comparison = Comparison.LESS)
+    static class Untyped {
+        private final Object first;
+        private final Object second;
+
+        public Untyped(final Object first, final Object second) {
+            this.first = first;
+            this.second = second;
+        }
+
+        public Object getFirst() {
+            return first;
+        }
+
+        public Object getSecond() {
+            return second;
+        }
+    }
+
+}
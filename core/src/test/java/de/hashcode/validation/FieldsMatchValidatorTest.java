@@ -92,6 +92,23 @@ public class FieldsMatchValidatorTest {
                 getByPropertyPath(violations, "prop2Confirmation"));
     }
 
+    @Test
+    public void testNestedFields() {
+        assertTrue(validator.validate(new EntityNested(new Address("foo"), new Address("foo"))).isEmpty());
+
+        final Set<ConstraintViolation<EntityNested>> violations = validator.validate(new EntityNested(new Address(
+                "foo"), new Address("bar")));
+        assertEquals("Unexpected violations: " + violations + ".", 1, violations.size());
+        assertNotNull("No violation found for propertyPath 'shipping.email'.",
+                getByPropertyPath(violations, "shipping.email"));
+    }
+
+    @Test
+    public void testNestedFieldsAreNullSafe() {
+        assertTrue(validator.validate(new EntityNested(null, new Address(null))).isEmpty());
+        assertEquals(1, validator.validate(new EntityNested(null, new Address("foo"))).size());
+    }
+
     @FieldsMatch(first = "prop1", second = "prop1Confirmation")
     static class Entity {
         private final String prop1;
@@ -142,4 +159,35 @@ public class FieldsMatchValidatorTest {
         }
     }
 
+    @FieldsMatch(first = "billing.email", second = "shipping.email")
+    static class EntityNested {
+        private final Address billing;
+        private final Address shipping;
+
+        public EntityNested(final Address billing, final Address shipping) {
+            this.billing = billing;
+            this.shipping = shipping;
+        }
+
+        public Address getBilling() {
+            return billing;
+        }
+
+        public Address getShipping() {
+            return shipping;
+        }
+    }
+
+    static class Address {
+        private final String email;
+
+        public Address(final String email) {
+            this.email = email;
+        }
+
+        public String getEmail() {
+            return email;
+        }
+    }
+
 }
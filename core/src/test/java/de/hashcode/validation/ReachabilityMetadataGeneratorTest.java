@@ -0,0 +1,201 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+import java.io.StringWriter;
+import java.lang.reflect.InvocationTargetException;
+
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+
+import org.junit.Test;
+
+/**
+ * Test for {@link ReachabilityMetadataGenerator} and the reflection free
+ * accessors.
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+public class ReachabilityMetadataGeneratorTest {
+
+    @Test
+    public void testReflectConfig() throws Exception {
+        final StringWriter out = new StringWriter();
+        new ReachabilityMetadataGenerator().addClass(Registration.class).addClass(String.class)
+                .writeReflectConfig(out);
+        final String config = out.toString();
+
+        assertTrue(config, config.startsWith("["));
+        assertTrue(config, config.contains("\"name\" : \"" + Registration.class.getName() + "\""));
+        assertTrue(config, config.contains("{ \"name\" : \"getEmail\", \"parameterTypes\" : [ ] }"));
+        assertTrue(config, config.contains("{ \"name\" : \"getEmailConfirmation\", \"parameterTypes\" : [ ] }"));
+        // nested path
+        assertTrue(config, config.contains("\"name\" : \"" + Period.class.getName() + "\""));
+        assertTrue(config, config.contains("{ \"name\" : \"getStart\", \"parameterTypes\" : [ ] }"));
+        // validators are instantiated reflectively
+        assertTrue(config, config.contains("\"name\" : \"" + FieldsMatchValidator.class.getName() + "\",\n"
+                + "    \"methods\" : [\n      { \"name\" : \"<init>\", \"parameterTypes\" : [ ] } ]"));
+        assertTrue(config, config.contains("\"name\" : \"" + FieldsCompareValidator.class.getName() + "\""));
+        // classes without constraints are ignored
+        assertFalse(config, config.contains(String.class.getName()));
+    }
+
+    @Test
+    public void testPropertyConstraints() throws Exception {
+        final StringWriter out = new StringWriter();
+        new ReachabilityMetadataGenerator().addClass(Account.class).writeReflectConfig(out);
+        final String config = out.toString();
+
+        assertTrue(config, config.contains("\"name\" : \"" + Account.class.getName() + "\""));
+        assertTrue(config, config.contains("\"fields\" : [\n      { \"name\" : \"name\" } ]"));
+        assertTrue(config, config.contains("{ \"name\" : \"getName\", \"parameterTypes\" : [ ] }"));
+        assertTrue(config, config.contains("{ \"name\" : \"getLogin\", \"parameterTypes\" : [ ] }"));
+        assertTrue(config, config.contains("\"name\" : \"" + NotNull.class.getName() + "\""));
+        // the unannotated getter is not needed
+        assertFalse(config, config.contains("getNickname"));
+    }
+
+    @Test
+    public void testReachabilityMetadata() throws Exception {
+        final StringWriter out = new StringWriter();
+        new ReachabilityMetadataGenerator().addClass(Registration.class).writeReachabilityMetadata(out);
+        final String metadata = out.toString();
+        assertTrue(metadata, metadata.startsWith("{\n  \"reflection\" : ["));
+        assertTrue(metadata, metadata.contains("\"type\" : \"" + Registration.class.getName() + "\""));
+        assertFalse(metadata, metadata.contains("queryAll"));
+    }
+
+    @Test
+    public void testAccessorSource() throws Exception {
+        final StringWriter out = new StringWriter();
+        new ReachabilityMetadataGenerator().addClass(Registration.class).writeAccessorSource(out, "com.example",
+                "ValidationAccessors");
+        final String source = out.toString();
+        assertTrue(source, source.startsWith("package com.example;"));
+        assertTrue(source, source.contains("ReflectionUtils.registerAccessor(" + Registration.class.getCanonicalName()
+                + ".class, \"email\", new PropertyAccessor() {"));
+        assertTrue(source, source.contains("return ((" + Registration.class.getCanonicalName()
+                + ") target).getEmail();"));
+        assertTrue(source, source.contains("return java.util.Date.class;"));
+    }
+
+    @Test
+    public void testRegisteredAccessorsWithoutReflection() throws Exception {
+        ReflectionUtils.registerAccessor(Unregistered.class, "value", new PropertyAccessor() {
+            @Override
+            public Object getValue(final Object target) {
+                return ((Unregistered) target).value;
+            }
+
+            @Override
+            public Class<?> getType() {
+                return String.class;
+            }
+        });
+        ReflectionUtils.setReflectiveAccessAllowed(false);
+        try {
+            assertEquals("foo", ReflectionUtils.getPropertyValue(new Unregistered("foo"), "value"));
+            assertEquals(String.class, ReflectionUtils.getPropertyType(Unregistered.class, "value"));
+            try {
+                ReflectionUtils.getPropertyValue(new Unregistered("foo"), "other");
+                fail("Reading an unregistered property should fail.");
+            } catch (final IllegalStateException e) {
+                // expected
+            }
+        } finally {
+            ReflectionUtils.setReflectiveAccessAllowed(true);
+        }
+    }
+
+    @Test(expected = InvocationTargetException.class)
+    public void testRegisteredAccessorReplacesReflectiveAccessor() throws Exception {
+        assertEquals("foo", ReflectionUtils.getPropertyValue(new Unregistered("foo"), "other"));
+        ReflectionUtils.registerAccessor(Unregistered.class, "other", new PropertyAccessor() {
+            @Override
+            public Object getValue(final Object target) throws InvocationTargetException {
+                throw new InvocationTargetException(null, "registered");
+            }
+
+            @Override
+            public Class<?> getType() {
+                return String.class;
+            }
+        });
+        ReflectionUtils.getPropertyValue(new Unregistered("foo"), "other");
+    }
+
+    @FieldsMatch(first = "email", second = "emailConfirmation")
+    @FieldsCompare(first = "period.start", second = "period.end", comparison = Comparison.LESS)
+    public static class Registration {
+        public String getEmail() {
+            return null;
+        }
+
+        public String getEmailConfirmation() {
+            return null;
+        }
+
+        public Period getPeriod() {
+            return null;
+        }
+    }
+
+    public static class Account {
+        @NotNull
+        private String name;
+
+        public String getName() {
+            return name;
+        }
+
+        @Size(min = 3)
+        public String getLogin() {
+            return null;
+        }
+
+        public String getNickname() {
+            return null;
+        }
+    }
+
+    public static class Period {
+        public java.util.Date getStart() {
+            return null;
+        }
+
+        public java.util.Date getEnd() {
+            return null;
+        }
+    }
+
+    public static class Unregistered {
+        private final String value;
+
+        public Unregistered(final String value) {
+            this.value = value;
+        }
+
+        public String getOther() {
+            return value;
+        }
+    }
+
+}
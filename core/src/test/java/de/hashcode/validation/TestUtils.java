@@ -17,8 +17,16 @@ package de.hashcode.validation;
 
 import static junit.framework.Assert.assertEquals;
 
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.util.Set;
 
+import javax.validation.ConstraintValidatorContext;
+import javax.validation.ConstraintValidatorContext.ConstraintViolationBuilder;
+import javax.validation.ConstraintValidatorContext.ConstraintViolationBuilder.NodeBuilderCustomizableContext;
+import javax.validation.ConstraintValidatorContext.ConstraintViolationBuilder.NodeBuilderDefinedContext;
+import javax.validation.ConstraintValidatorContext.ConstraintViolationBuilder.NodeContextBuilder;
 import javax.validation.ConstraintViolation;
 import javax.validation.Path;
 
@@ -47,6 +55,21 @@ public class TestUtils {
         return null;
     }
 
+    /**
+     * Creates a {@link ConstraintValidatorContext} that ignores everything, for
+     * tests that invoke a validator directly.
+     */
+    public static ConstraintValidatorContext newConstraintValidatorContext() {
+        return (ConstraintValidatorContext) Proxy.newProxyInstance(TestUtils.class.getClassLoader(), new Class<?>[] {
+                ConstraintValidatorContext.class, ConstraintViolationBuilder.class, NodeBuilderDefinedContext.class,
+                NodeBuilderCustomizableContext.class, NodeContextBuilder.class }, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+                return method.getReturnType().isInstance(proxy) ? proxy : null;
+            }
+        });
+    }
+
     public static void assertPropertyPath(final ConstraintViolation<?> violation, final String expectedPropertyPath) {
         assertEquals("Unexpected propertyPath for violation.", expectedPropertyPath, violation.getPropertyPath()
                 .toString());
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.validation.ConstraintValidator;
+import javax.validation.ConstraintValidatorFactory;
+
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+
+import de.hashcode.validation.ValidationEventSink.ValidatorInstantiation;
+
+/**
+ * A {@link ConstraintValidatorFactory} that relies on guice for creating
+ * validators.
+ * <p>
+ * To decorate the <code>UniquenessChecker</code> of jpa validators, create the
+ * factory via {@link GuiceUniquenessCheckerDecorators}. This class doesn't
+ * reference the jpa module, which is an optional dependency.
+ * </p>
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+public class GuiceConstraintValidatorFactory implements ConstraintValidatorFactory {
+
+    private final Injector injector;
+    private final InstanceInitializer initializer;
+
+    @Inject
+    public GuiceConstraintValidatorFactory(final Injector injector) {
+        this(injector, null);
+    }
+
+    GuiceConstraintValidatorFactory(final Injector injector, @CheckForNull final InstanceInitializer initializer) {
+        this.injector = injector;
+        this.initializer = initializer;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T extends ConstraintValidator<?, ?>> T getInstance(final Class<T> key) {
+        final ValidatorInstantiation event = ValidationEvents.beginValidatorInstantiation();
+        final T instance = injector.getInstance(key);
+        if (initializer != null) {
+            initializer.initialize(instance);
+        }
+        if (event != null) {
+            event.complete(key);
+        }
+        return instance;
+    }
+
+    /**
+     * Initializes the validators returned by the injector. Implementations may
+     * use optional dependencies, as they are only loaded when used.
+     */
+    interface InstanceInitializer {
+
+        void initialize(@Nonnull Object instance);
+
+    }
+
+}
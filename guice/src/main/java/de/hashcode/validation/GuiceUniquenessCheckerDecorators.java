@@ -0,0 +1,81 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import javax.annotation.Nonnull;
+
+import com.google.inject.Injector;
+
+/**
+ * Creates {@link GuiceConstraintValidatorFactory}s that decorate the
+ * {@link UniquenessChecker} of {@link UniquenessCheckerAwareValidator}s with
+ * the given {@link UniquenessCheckerDecorator}s (once per validator instance,
+ * in the given order so that the last one is the outermost).
+ * <p>
+ * This needs the jpa module on the classpath.
+ * </p>
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+public final class GuiceUniquenessCheckerDecorators {
+
+    private GuiceUniquenessCheckerDecorators() {
+        // utility class
+    }
+
+    /**
+     * Creates a factory that decorates the {@link UniquenessChecker}s of the
+     * validators with the given decorators.
+     */
+    @Nonnull
+    public static GuiceConstraintValidatorFactory newConstraintValidatorFactory(@Nonnull final Injector injector,
+            @Nonnull final UniquenessCheckerDecorator... decorators) {
+        return new GuiceConstraintValidatorFactory(injector, decorators.length > 0 ? new Decoration(decorators)
+                : null);
+    }
+
+    private static final class Decoration implements GuiceConstraintValidatorFactory.InstanceInitializer {
+
+        private final UniquenessCheckerDecorator[] decorators;
+        private final Set<Object> decorated = Collections.synchronizedSet(Collections
+                .newSetFromMap(new WeakHashMap<Object, Boolean>()));
+
+        Decoration(final UniquenessCheckerDecorator[] decorators) {
+            this.decorators = decorators.clone();
+        }
+
+        @Override
+        public void initialize(final Object instance) {
+            if (!(instance instanceof UniquenessCheckerAwareValidator) || !decorated.add(instance)) {
+                return;
+            }
+            final UniquenessCheckerAwareValidator validator = (UniquenessCheckerAwareValidator) instance;
+            UniquenessChecker uniquenessChecker = validator.getUniquenessChecker();
+            if (uniquenessChecker != null) {
+                for (final UniquenessCheckerDecorator decorator : decorators) {
+                    uniquenessChecker = decorator.decorate(uniquenessChecker);
+                }
+                validator.setUniquenessChecker(uniquenessChecker);
+            }
+        }
+
+    }
+
+}
@@ -17,6 +17,8 @@ package de.hashcode.validation;
 
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
 
 import java.util.Set;
 
@@ -115,4 +117,32 @@ public class GuiceConstraintValidatorFactoryTest {
         assertEquals("Unexpected violations: " + violations + ".", 0, violations.size());
     }
 
+    @Test
+    public void testSingletonValidatorIsDecoratedOnce() {
+        final int[] decorations = new int[1];
+        final GuiceConstraintValidatorFactory factory = GuiceUniquenessCheckerDecorators
+                .newConstraintValidatorFactory(injector, new UniquenessCheckerDecorator() {
+                    @Override
+                    public UniquenessChecker decorate(final UniquenessChecker uniquenessChecker) {
+                        decorations[0]++;
+                        return new CountingUniquenessChecker(uniquenessChecker);
+                    }
+                });
+
+        final UniqueKeyValidator uniqueKeyValidator = factory.getInstance(UniqueKeyValidator.class);
+        final UniquenessChecker uniquenessChecker = uniqueKeyValidator.getUniquenessChecker();
+        assertTrue(uniquenessChecker instanceof CountingUniquenessChecker);
+
+        // the validator factory initializes the singleton, so decorating it again would fail
+        final Validator decoratingValidator = Validation.byDefaultProvider().configure()
+                .constraintValidatorFactory(factory).buildValidatorFactory().getValidator();
+        assertEquals(0, decoratingValidator.validate(new Entity1("val1", "someValue")).size());
+        assertEquals(0, decoratingValidator.validate(new Entity1("val2", "someValue")).size());
+
+        assertSame(uniqueKeyValidator, factory.getInstance(UniqueKeyValidator.class));
+        assertSame(uniquenessChecker, uniqueKeyValidator.getUniquenessChecker());
+        assertEquals(1, decorations[0]);
+        assertEquals(2, ((CountingUniquenessChecker) uniquenessChecker).getCount());
+    }
+
 }
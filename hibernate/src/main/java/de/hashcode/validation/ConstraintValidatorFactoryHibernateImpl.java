@@ -0,0 +1,88 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import javax.persistence.EntityManagerFactory;
+import javax.validation.ConstraintValidator;
+import javax.validation.ConstraintValidatorFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.hashcode.validation.ValidationEventSink.ValidatorInstantiation;
+
+/**
+ * A {@link ConstraintValidatorFactory} that sets a
+ * {@link HibernateUniquenessChecker} (for the provided hibernate
+ * {@link EntityManagerFactory}) on {@link ConstraintValidator}s that implement
+ * {@link UniquenessCheckerAwareValidator}. The checker is decorated with the
+ * given {@link UniquenessCheckerDecorator}s (in the given order, so that the
+ * last one is the outermost).
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+public class ConstraintValidatorFactoryHibernateImpl implements ConstraintValidatorFactory {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ConstraintValidatorFactoryHibernateImpl.class);
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final HibernateUniquenessChecker uniquenessChecker;
+    private final UniquenessCheckerDecorator[] decorators;
+
+    /**
+     * @throws IllegalArgumentException
+     *             if the given {@link EntityManagerFactory} is not provided by
+     *             hibernate.
+     */
+    public ConstraintValidatorFactoryHibernateImpl(final EntityManagerFactory entityManagerFactory,
+            final UniquenessCheckerDecorator... decorators) throws IllegalArgumentException {
+        this.entityManagerFactory = entityManagerFactory;
+        this.uniquenessChecker = HibernateUniquenessChecker.forEntityManagerFactory(entityManagerFactory);
+        this.decorators = decorators;
+    }
+
+    @Override
+    public <T extends ConstraintValidator<?, ?>> T getInstance(final Class<T> key) {
+        final ValidatorInstantiation event = ValidationEvents.beginValidatorInstantiation();
+        T instance = null;
+
+        try {
+            instance = key.newInstance();
+        } catch (final Exception e) {
+            LOG.error("Could not instantiate " + key.getName(), e);
+            return null;
+        }
+
+        if (UniquenessCheckerAwareValidator.class.isAssignableFrom(key)) {
+            UniquenessChecker checker = uniquenessChecker;
+            for (final UniquenessCheckerDecorator decorator : decorators) {
+                checker = decorator.decorate(checker);
+            }
+            ((UniquenessCheckerAwareValidator) instance).setUniquenessChecker(checker);
+        }
+
+        if (MetamodelAwareValidator.class.isAssignableFrom(key)) {
+            ((MetamodelAwareValidator) instance).setMetamodel(entityManagerFactory.getMetamodel(),
+                    entityManagerFactory.getPersistenceUnitUtil());
+        }
+
+        if (event != null) {
+            event.complete(key);
+        }
+        return instance;
+    }
+
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import static de.hashcode.validation.EntityReflectionUtils.getIdAttributeName;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.metamodel.Attribute;
+import javax.persistence.metamodel.Metamodel;
+
+import org.hibernate.Query;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.ejb.HibernateEntityManagerFactory;
+
+/**
+ * A {@link UniquenessChecker} for hibernate, that runs each check as a read
+ * only hql query in its own {@link StatelessSession}. The session of the
+ * application is not touched: no flush is triggered, and neither the
+ * persistence context nor dirty checking are affected. Therefore entities that
+ * are not yet committed (or not yet flushed) are not seen by the check, as
+ * for the {@link JdbcUniquenessChecker}; the database unique index is the
+ * last line of defense anyway (see {@link UniqueKeyViolationTranslator}).
+ * <p>
+ * Only the id is selected, limited to a single row. Nested properties are
+ * resolved via left joins (shared by properties with the same prefix), the id
+ * of a to-one association is compared without a join.
+ * </p>
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+public class HibernateUniquenessChecker implements UniquenessChecker, UniqueKeyQueryRenderer {
+
+    private final SessionFactory sessionFactory;
+    private final Metamodel metamodel;
+    private volatile int queryTimeoutSeconds;
+
+    public HibernateUniquenessChecker(@Nonnull final SessionFactory sessionFactory, @Nonnull final Metamodel metamodel) {
+        this.sessionFactory = sessionFactory;
+        this.metamodel = metamodel;
+    }
+
+    /**
+     * Creates a checker for the {@link SessionFactory} of the given hibernate
+     * {@link EntityManagerFactory}.
+     *
+     * @throws IllegalArgumentException
+     *             if the given {@link EntityManagerFactory} is not provided by
+     *             hibernate.
+     */
+    @Nonnull
+    public static HibernateUniquenessChecker forEntityManagerFactory(
+            @Nonnull final EntityManagerFactory entityManagerFactory) throws IllegalArgumentException {
+        if (!(entityManagerFactory instanceof HibernateEntityManagerFactory)) {
+            throw new IllegalArgumentException("The EntityManagerFactory " + entityManagerFactory
+                    + " is not provided by hibernate.");
+        }
+        return new HibernateUniquenessChecker(((HibernateEntityManagerFactory) entityManagerFactory)
+                .getSessionFactory(), entityManagerFactory.getMetamodel());
+    }
+
+    /**
+     * Sets the timeout for uniqueness queries, rounded up to seconds.
+     * <code>0</code> (the default) means no timeout.
+     */
+    public void setQueryTimeout(final long timeout, final TimeUnit unit) {
+        queryTimeoutSeconds = (int) ((unit.toMillis(timeout) + 999) / 1000);
+    }
+
+    @Override
+    public boolean exists(final UniqueKeyQuery query) {
+        final List<Object> bindValues = new ArrayList<Object>();
+        final String hql = getHql(query, bindValues);
+        final StatelessSession session = sessionFactory.openStatelessSession();
+        try {
+            final Query hqlQuery = session.createQuery(hql).setReadOnly(true).setMaxResults(1);
+            if (queryTimeoutSeconds > 0) {
+                hqlQuery.setTimeout(queryTimeoutSeconds);
+            }
+            for (int i = 0; i < bindValues.size(); i++) {
+                hqlQuery.setParameter("p" + (i + 1), bindValues.get(i));
+            }
+            return !hqlQuery.list().isEmpty();
+        } finally {
+            session.close();
+        }
+    }
+
+    /**
+     * Renders the executed hql query.
+     */
+    @Override
+    public String render(final UniqueKeyQuery query, final boolean maskBindValues) {
+        final List<Object> bindValues = new ArrayList<Object>();
+        final StringBuilder sb = new StringBuilder(getHql(query, bindValues)).append(" [");
+        for (int i = 0; i < bindValues.size(); i++) {
+            sb.append(i > 0 ? ", " : "").append(maskBindValues ? "***" : String.valueOf(bindValues.get(i)));
+        }
+        return sb.append(']').toString();
+    }
+
+    @Nonnull
+    private String getHql(@Nonnull final UniqueKeyQuery query, @Nonnull final List<Object> bindValues) {
+        final StringBuilder from = new StringBuilder("select e.").append(query.getIdProperty()).append(" from ")
+                .append(query.getEntityClass().getName()).append(" e");
+        final Map<String, String> joins = new HashMap<String, String>();
+        final StringBuilder where = new StringBuilder();
+        for (final Entry<String, Object> scope : query.getScope().entrySet()) {
+            appendEqual(where, getPath(query.getEntityClass(), from, joins, scope.getKey()), scope.getValue(),
+                    bindValues);
+            where.append(" and ");
+        }
+        appendEqual(where, getPath(query.getEntityClass(), from, joins, query.getProperty()), query.getValue(),
+                bindValues);
+        if (query.getIdValue() != null) {
+            bindValues.add(query.getIdValue());
+            where.append(" and e.").append(query.getIdProperty()).append(" <> :p").append(bindValues.size());
+        }
+        return from.append(" where ").append(where).toString();
+    }
+
+    private static void appendEqual(final StringBuilder sb, final String path, final Object value,
+            final List<Object> bindValues) {
+        sb.append(path);
+        if (value != null) {
+            bindValues.add(value);
+            sb.append(" = :p").append(bindValues.size());
+        } else {
+            sb.append(" is null");
+        }
+    }
+
+    /**
+     * Resolves the given (possibly nested) property path, adding a left join
+     * for each intermediate association to the from clause. The id of a to-one
+     * association is compared without a join (i.e. via the foreign key).
+     */
+    @Nonnull
+    private String getPath(@Nonnull final Class<?> entityClass, @Nonnull final StringBuilder from,
+            @Nonnull final Map<String, String> joins, @Nonnull final String path) {
+        final String[] properties = PropertyPaths.split(path);
+        final int last = properties.length - 1;
+        String alias = "e";
+        Class<?> type = entityClass;
+        final StringBuilder prefix = new StringBuilder();
+        for (int i = 0; i < last; i++) {
+            final Attribute<?, ?> attribute = metamodel.managedType(type).getAttribute(properties[i]);
+            type = attribute.getJavaType();
+            if (!attribute.isAssociation()) {
+                // an embeddable is navigated without a join
+                alias = alias + '.' + properties[i];
+                continue;
+            }
+            if (i == last - 1 && !attribute.isCollection()
+                    && properties[last].equals(getIdAttributeName(metamodel.entity(type)))) {
+                return alias + '.' + properties[i] + '.' + properties[last];
+            }
+            prefix.append(properties[i]).append('.');
+            String join = joins.get(prefix.toString());
+            if (join == null) {
+                join = "j" + (joins.size() + 1);
+                from.append(" left join ").append(alias).append('.').append(properties[i]).append(' ').append(join);
+                joins.put(prefix.toString(), join);
+            }
+            alias = join;
+        }
+        return alias + '.' + properties[last];
+    }
+
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import static de.hashcode.validation.TestUtils.assertPropertyPath;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import javax.validation.ConstraintViolation;
+import javax.validation.Validation;
+import javax.validation.Validator;
+import javax.validation.ValidatorContext;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test for {@link HibernateUniquenessChecker} and
+ * {@link ConstraintValidatorFactoryHibernateImpl}.
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+public class HibernateUniquenessCheckerTest {
+
+    private EntityManagerFactory entityManagerFactory;
+    private EntityManager em;
+    private HibernateUniquenessChecker checker;
+    private Validator validator;
+    private List<Object> objectsToRemove;
+
+    @Before
+    public void beforeMethod() {
+        entityManagerFactory = Persistence.createEntityManagerFactory("test-hibernate");
+        em = entityManagerFactory.createEntityManager();
+        checker = HibernateUniquenessChecker.forEntityManagerFactory(entityManagerFactory);
+
+        final ValidatorContext validatorContext = Validation.buildDefaultValidatorFactory().usingContext();
+        validatorContext.constraintValidatorFactory(new ConstraintValidatorFactoryHibernateImpl(
+                entityManagerFactory));
+        validator = validatorContext.getValidator();
+
+        objectsToRemove = new ArrayList<Object>();
+    }
+
+    @After
+    public void afterMethod() {
+        if (em.getTransaction().isActive()) {
+            em.getTransaction().rollback();
+        }
+        em.getTransaction().begin();
+        for (int i = objectsToRemove.size() - 1; i >= 0; i--) {
+            em.remove(em.merge(objectsToRemove.get(i)));
+        }
+        em.getTransaction().commit();
+        entityManagerFactory.close();
+    }
+
+    @Test
+    public void testExists() {
+        final Entity1 obj1 = new Entity1("val1");
+        persist(obj1);
+
+        assertTrue(checker.exists(new UniqueKeyQuery(Entity1.class, "prop1", "val1", "id", null)));
+        assertFalse(checker.exists(new UniqueKeyQuery(Entity1.class, "prop1", "val1", "id", obj1.getId())));
+        assertFalse(checker.exists(new UniqueKeyQuery(Entity1.class, "prop1", "val2", "id", null)));
+    }
+
+    @Test
+    public void testUniqueKeyViaValidator() {
+        final Entity1 obj1 = new Entity1("val1");
+        persist(obj1);
+
+        final Set<ConstraintViolation<Entity1>> violations = validator.validate(new Entity1("val1"));
+        assertEquals("Unexpected violations: " + violations + ".", 1, violations.size());
+        assertPropertyPath(violations.iterator().next(), "prop1");
+
+        assertTrue(validator.validate(obj1).isEmpty());
+    }
+
+    @Test
+    public void testNestedPropertyAndAssociation() {
+        final Entity7Account account = new Entity7Account("login");
+        persist(account, new Entity7(account), new Entity8(account));
+
+        assertTrue(checker.exists(new UniqueKeyQuery(Entity7.class, "account.login", "login", "id", null)));
+        assertFalse(checker.exists(new UniqueKeyQuery(Entity7.class, "account.login", "other", "id", null)));
+        assertTrue(checker.exists(new UniqueKeyQuery(Entity8.class, "account.id", account.getId(), "id", null)));
+
+        assertEquals(1, validator.validate(new Entity7(new Entity7Account("login"))).size());
+        assertEquals(1, validator.validate(new Entity8(account)).size());
+    }
+
+    @Test
+    public void testSessionOfTheApplicationIsNotFlushed() {
+        em.getTransaction().begin();
+        em.persist(new Entity1("pending"));
+
+        // the check runs in its own stateless session and doesn't trigger a flush
+        assertFalse(checker.exists(new UniqueKeyQuery(Entity1.class, "prop1", "pending", "id", null)));
+        em.getTransaction().rollback();
+    }
+
+    @Test
+    public void testRender() {
+        final UniqueKeyQuery query = new UniqueKeyQuery(Entity7.class, Collections.<String, Object> singletonMap(
+                "account.id", 42L), "account.login", "login", "id", 1L);
+        assertEquals("select e.id from " + Entity7.class.getName() + " e left join e.account j1"
+                + " where e.account.id = :p1 and j1.login = :p2 and e.id <> :p3 [***, ***, ***]", checker.render(
+                query, true));
+    }
+
+    private void persist(final Object... entities) {
+        em.getTransaction().begin();
+        for (final Object entity : entities) {
+            em.persist(entity);
+            objectsToRemove.add(entity);
+        }
+        em.getTransaction().commit();
+    }
+
+}
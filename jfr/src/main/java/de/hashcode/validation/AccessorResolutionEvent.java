@@ -0,0 +1,58 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import de.hashcode.validation.ValidationEventSink.AccessorResolution;
+
+/**
+ * The lookup of a property accessor (getter or field) by the
+ * {@link ReflectionUtils}, which happens only if it's not cached yet.
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+@Name("de.hashcode.validation.AccessorResolution")
+@Label("Accessor Resolution")
+@Description("The reflective lookup of a property accessor that was not cached")
+@Category({ "Java Application", "Validation" })
+@Enabled(false)
+@StackTrace(false)
+final class AccessorResolutionEvent extends Event implements AccessorResolution {
+
+    @Label("Type")
+    Class<?> type;
+
+    @Label("Property")
+    String property;
+
+    @Override
+    public void complete(final Class<?> type, final String property) {
+        end();
+        if (shouldCommit()) {
+            this.type = type;
+            this.property = property;
+            commit();
+        }
+    }
+
+}
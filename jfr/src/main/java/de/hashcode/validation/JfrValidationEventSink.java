@@ -0,0 +1,78 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+
+/**
+ * A {@link ValidationEventSink} creating Java Flight Recorder events, so that
+ * validation shows up on the same timeline as e.g. gc, lock and jdbc events.
+ * It's installed automatically (via the {@link java.util.ServiceLoader}) if
+ * this module is on the classpath.
+ * <p>
+ * The events are disabled by default, they're enabled in the recording
+ * settings (e.g. <code>de.hashcode.validation.UniquenessCheck#enabled=true</code>).
+ * Events that are not enabled in a running recording are not even created.
+ * </p>
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+public class JfrValidationEventSink implements ValidationEventSink {
+
+    private static final EventType UNIQUENESS_CHECK = EventType.getEventType(UniquenessCheckEvent.class);
+    private static final EventType ACCESSOR_RESOLUTION = EventType.getEventType(AccessorResolutionEvent.class);
+    private static final EventType VALIDATOR_INSTANTIATION = EventType
+            .getEventType(ValidatorInstantiationEvent.class);
+
+    static {
+        // make the events known to recordings that are configured before the first event
+        FlightRecorder.register(UniquenessCheckEvent.class);
+        FlightRecorder.register(AccessorResolutionEvent.class);
+        FlightRecorder.register(ValidatorInstantiationEvent.class);
+    }
+
+    @Override
+    public UniquenessCheck beginUniquenessCheck() {
+        if (!UNIQUENESS_CHECK.isEnabled()) {
+            return null;
+        }
+        final UniquenessCheckEvent event = new UniquenessCheckEvent();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public AccessorResolution beginAccessorResolution() {
+        if (!ACCESSOR_RESOLUTION.isEnabled()) {
+            return null;
+        }
+        final AccessorResolutionEvent event = new AccessorResolutionEvent();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public ValidatorInstantiation beginValidatorInstantiation() {
+        if (!VALIDATOR_INSTANTIATION.isEnabled()) {
+            return null;
+        }
+        final ValidatorInstantiationEvent event = new ValidatorInstantiationEvent();
+        event.begin();
+        return event;
+    }
+
+}
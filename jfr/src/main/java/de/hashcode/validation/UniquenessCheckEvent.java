@@ -0,0 +1,63 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import de.hashcode.validation.ValidationEventSink.UniquenessCheck;
+
+/**
+ * A uniqueness check of the {@link UniqueKeyValidator}, i.e. usually a
+ * database query.
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+@Name("de.hashcode.validation.UniquenessCheck")
+@Label("Uniqueness Check")
+@Description("A check if a @UniqueKey is already taken")
+@Category({ "Java Application", "Validation" })
+@Enabled(false)
+@StackTrace(false)
+final class UniquenessCheckEvent extends Event implements UniquenessCheck {
+
+    @Label("Entity Class")
+    Class<?> entityClass;
+
+    @Label("Property")
+    String property;
+
+    @Label("Exists")
+    @Description("If the key is already taken")
+    boolean exists;
+
+    @Override
+    public void complete(final Class<?> entityClass, final String property, final boolean exists) {
+        end();
+        if (shouldCommit()) {
+            this.entityClass = entityClass;
+            this.property = property;
+            this.exists = exists;
+            commit();
+        }
+    }
+
+}
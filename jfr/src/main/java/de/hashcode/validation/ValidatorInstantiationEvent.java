@@ -0,0 +1,54 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import de.hashcode.validation.ValidationEventSink.ValidatorInstantiation;
+
+/**
+ * The creation (and setup) of a constraint validator by one of the
+ * {@link javax.validation.ConstraintValidatorFactory}s of this project.
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+@Name("de.hashcode.validation.ValidatorInstantiation")
+@Label("Validator Instantiation")
+@Description("The creation of a constraint validator")
+@Category({ "Java Application", "Validation" })
+@Enabled(false)
+@StackTrace(false)
+final class ValidatorInstantiationEvent extends Event implements ValidatorInstantiation {
+
+    @Label("Validator Class")
+    Class<?> validatorClass;
+
+    @Override
+    public void complete(final Class<?> validatorClass) {
+        end();
+        if (shouldCommit()) {
+            this.validatorClass = validatorClass;
+            commit();
+        }
+    }
+
+}
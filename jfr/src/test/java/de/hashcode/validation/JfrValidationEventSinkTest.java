@@ -0,0 +1,99 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.Test;
+
+/**
+ * Test for {@link JfrValidationEventSink}.
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+public class JfrValidationEventSinkTest {
+
+    @Test
+    public void testSinkIsInstalledViaServiceLoader() {
+        assertTrue(ValidationEvents.getSink() instanceof JfrValidationEventSink);
+    }
+
+    @Test
+    public void testNoEventsWithoutRecording() {
+        final JfrValidationEventSink sink = new JfrValidationEventSink();
+        assertNull(sink.beginUniquenessCheck());
+        assertNull(sink.beginAccessorResolution());
+        assertNull(sink.beginValidatorInstantiation());
+    }
+
+    @Test
+    public void testEventsAreDisabledByDefault() throws IOException {
+        final Recording recording = new Recording();
+        try {
+            recording.start();
+            assertNull(new JfrValidationEventSink().beginUniquenessCheck());
+        } finally {
+            recording.close();
+        }
+    }
+
+    @Test
+    public void testEnabledEventsAreRecorded() throws IOException {
+        final JfrValidationEventSink sink = new JfrValidationEventSink();
+        final File file = File.createTempFile("validation", ".jfr");
+        final Recording recording = new Recording();
+        try {
+            recording.enable("de.hashcode.validation.UniquenessCheck");
+            recording.enable("de.hashcode.validation.ValidatorInstantiation");
+            recording.start();
+
+            final ValidationEventSink.UniquenessCheck check = sink.beginUniquenessCheck();
+            assertNotNull(check);
+            check.complete(String.class, "login", true);
+            sink.beginValidatorInstantiation().complete(FieldsMatchValidator.class);
+            assertNull("Accessor resolution is not enabled.", sink.beginAccessorResolution());
+
+            recording.stop();
+            recording.dump(file.toPath());
+
+            final List<RecordedEvent> events = RecordingFile.readAllEvents(file.toPath());
+            assertEquals(2, events.size());
+            final RecordedEvent event = events.get(0).getEventType().getName().endsWith("UniquenessCheck")
+                ? events.get(0)
+                : events.get(1);
+            assertEquals(String.class.getName(), event.getClass("entityClass").getName());
+            assertEquals("login", event.getString("property"));
+            assertTrue(event.getBoolean("exists"));
+            assertFalse(event.getDuration().isNegative());
+        } finally {
+            recording.close();
+            file.delete();
+        }
+    }
+
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+/**
+ * A {@link UniquenessChecker} that asks the (shared) {@link UniqueKeyCache}
+ * before its delegate, and remembers taken keys there.
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+public class CachingUniquenessChecker implements UniquenessChecker {
+
+    private final UniquenessChecker delegate;
+    private final UniqueKeyCache cache;
+
+    public CachingUniquenessChecker(final UniquenessChecker delegate, final UniqueKeyCache cache) {
+        this.delegate = delegate;
+        this.cache = cache;
+    }
+
+    /**
+     * A {@link UniquenessCheckerDecorator} creating
+     * {@link CachingUniquenessChecker}s that share the given cache.
+     */
+    public static UniquenessCheckerDecorator decorator(final UniqueKeyCache cache) {
+        return new UniquenessCheckerDecorator() {
+            @Override
+            public UniquenessChecker decorate(final UniquenessChecker uniquenessChecker) {
+                return new CachingUniquenessChecker(uniquenessChecker, cache);
+            }
+        };
+    }
+
+    @Override
+    public boolean exists(final UniqueKeyQuery query) {
+        if (cache.isTaken(query)) {
+            return true;
+        }
+        final boolean result = delegate.exists(query);
+        if (result) {
+            cache.putTaken(query);
+        }
+        return result;
+    }
+
+}
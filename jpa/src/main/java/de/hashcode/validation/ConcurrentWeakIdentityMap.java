@@ -0,0 +1,110 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+/**
+ * A concurrent map with weak keys that are compared by identity, used to keep
+ * state per entity instance: entities with an id based <code>equals</code>
+ * would share the state of all their instances (of different persistence
+ * contexts), and their <code>hashCode</code> may change when the id is
+ * assigned. It's also used to keep caches per metamodel, which must not keep
+ * a closed entity manager factory alive. Entries of collected keys are purged
+ * on access.
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+final class ConcurrentWeakIdentityMap<K, V> {
+
+    private final ConcurrentMap<IdentityReference, V> map = new ConcurrentHashMap<IdentityReference, V>();
+    private final ReferenceQueue<Object> queue = new ReferenceQueue<Object>();
+
+    @CheckForNull
+    V get(@Nonnull final K key) {
+        purge();
+        return map.get(new IdentityReference(key, null));
+    }
+
+    @CheckForNull
+    V put(@Nonnull final K key, @Nonnull final V value) {
+        purge();
+        return map.put(new IdentityReference(key, queue), value);
+    }
+
+    @CheckForNull
+    V putIfAbsent(@Nonnull final K key, @Nonnull final V value) {
+        purge();
+        return map.putIfAbsent(new IdentityReference(key, queue), value);
+    }
+
+    @CheckForNull
+    V remove(@Nonnull final K key) {
+        purge();
+        return map.remove(new IdentityReference(key, null));
+    }
+
+    int size() {
+        purge();
+        return map.size();
+    }
+
+    private void purge() {
+        Object reference;
+        while ((reference = queue.poll()) != null) {
+            map.remove(reference);
+        }
+    }
+
+    /**
+     * A weak reference that's equal to references of the same (not yet
+     * collected) instance.
+     */
+    private static final class IdentityReference extends WeakReference<Object> {
+
+        private final int hashCode;
+
+        IdentityReference(@Nonnull final Object referent, @CheckForNull final ReferenceQueue<Object> queue) {
+            super(referent, queue);
+            hashCode = System.identityHashCode(referent);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (obj == this) {
+                return true;
+            }
+            if (!(obj instanceof IdentityReference)) {
+                return false;
+            }
+            final Object referent = get();
+            return referent != null && referent == ((IdentityReference) obj).get();
+        }
+
+    }
+
+}
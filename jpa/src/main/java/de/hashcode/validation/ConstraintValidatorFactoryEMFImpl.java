@@ -0,0 +1,110 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import javax.persistence.EntityManagerFactory;
+import javax.validation.ConstraintValidator;
+import javax.validation.ConstraintValidatorFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.hashcode.validation.ValidationEventSink.ValidatorInstantiation;
+
+/**
+ * A {@link ConstraintValidatorFactory} that sets a {@link JpaUniquenessChecker}
+ * on {@link ConstraintValidator}s that implement
+ * {@link UniquenessCheckerAwareValidator}. The checker obtains the
+ * {@link javax.persistence.EntityManager} for each check from an
+ * {@link EntityManagerProvider} (by default
+ * {@link EntityManagerProviders#perCheck(EntityManagerFactory)}), so that the
+ * created validators are thread-safe and can be cached and shared by the bean
+ * validation provider. Other validators implementing
+ * {@link EntityManagerAwareValidator} get an
+ * {@link javax.persistence.EntityManager} created from the provided
+ * {@link EntityManagerFactory}.
+ * <p>
+ * If {@link UniquenessCheckerDecorator}s are given, the
+ * {@link JpaUniquenessChecker} is decorated with these (in the given order, so
+ * that the last one is the outermost).
+ * </p>
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+public class ConstraintValidatorFactoryEMFImpl implements ConstraintValidatorFactory {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ConstraintValidatorFactoryEMFImpl.class);
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final EntityManagerProvider entityManagerProvider;
+    private final UniquenessCheckerDecorator[] decorators;
+
+    public ConstraintValidatorFactoryEMFImpl(final EntityManagerFactory entityManagerFactory) {
+        this(entityManagerFactory, new UniquenessCheckerDecorator[0]);
+    }
+
+    public ConstraintValidatorFactoryEMFImpl(final EntityManagerFactory entityManagerFactory,
+            final UniquenessCheckerDecorator... decorators) {
+        this(entityManagerFactory, EntityManagerProviders.perCheck(entityManagerFactory), decorators);
+    }
+
+    /**
+     * Creates a factory whose {@link JpaUniquenessChecker}s use the given
+     * {@link EntityManagerProvider}, e.g. one returning the
+     * {@link javax.persistence.EntityManager} of the current transaction.
+     */
+    public ConstraintValidatorFactoryEMFImpl(final EntityManagerFactory entityManagerFactory,
+            final EntityManagerProvider entityManagerProvider, final UniquenessCheckerDecorator... decorators) {
+        this.entityManagerFactory = entityManagerFactory;
+        this.entityManagerProvider = entityManagerProvider;
+        this.decorators = decorators;
+    }
+
+    @Override
+    public <T extends ConstraintValidator<?, ?>> T getInstance(final Class<T> key) {
+        final ValidatorInstantiation event = ValidationEvents.beginValidatorInstantiation();
+        T instance = null;
+
+        try {
+            instance = key.newInstance();
+        } catch (final Exception e) {
+            LOG.error("Could not instantiate " + key.getName(), e);
+            return null;
+        }
+
+        if (UniquenessCheckerAwareValidator.class.isAssignableFrom(key)) {
+            UniquenessChecker uniquenessChecker = new JpaUniquenessChecker(entityManagerProvider);
+            for (final UniquenessCheckerDecorator decorator : decorators) {
+                uniquenessChecker = decorator.decorate(uniquenessChecker);
+            }
+            ((UniquenessCheckerAwareValidator) instance).setUniquenessChecker(uniquenessChecker);
+        } else if (EntityManagerAwareValidator.class.isAssignableFrom(key)) {
+            final EntityManagerAwareValidator validator = (EntityManagerAwareValidator) instance;
+            validator.setEntityManager(entityManagerFactory.createEntityManager());
+        }
+
+        if (MetamodelAwareValidator.class.isAssignableFrom(key)) {
+            ((MetamodelAwareValidator) instance).setMetamodel(entityManagerFactory.getMetamodel(),
+                    entityManagerFactory.getPersistenceUnitUtil());
+        }
+
+        if (event != null) {
+            event.complete(key);
+        }
+        return instance;
+    }
+
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import javax.persistence.metamodel.Metamodel;
+import javax.sql.DataSource;
+import javax.validation.ConstraintValidator;
+import javax.validation.ConstraintValidatorFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.hashcode.validation.ValidationEventSink.ValidatorInstantiation;
+
+/**
+ * A {@link ConstraintValidatorFactory} that sets a {@link JdbcUniquenessChecker}
+ * (using the provided {@link DataSource} and {@link Metamodel}) on
+ * {@link ConstraintValidator}s that implement
+ * {@link UniquenessCheckerAwareValidator}. The checker is decorated with the
+ * given {@link UniquenessCheckerDecorator}s (in the given order, so that the
+ * last one is the outermost).
+ * <p>
+ * All validators share one {@link JdbcUniquenessChecker}, which borrows a
+ * connection per check from the (pooling) {@link DataSource}. It's closed via
+ * {@link #close()}, e.g. when the {@link javax.validation.ValidatorFactory} is
+ * closed.
+ * </p>
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+public class ConstraintValidatorFactoryJdbcImpl implements ConstraintValidatorFactory {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ConstraintValidatorFactoryJdbcImpl.class);
+
+    private final Metamodel metamodel;
+    private final JdbcUniquenessChecker jdbcUniquenessChecker;
+    private final UniquenessCheckerDecorator[] decorators;
+
+    public ConstraintValidatorFactoryJdbcImpl(final DataSource dataSource, final Metamodel metamodel,
+            final UniquenessCheckerDecorator... decorators) {
+        this.metamodel = metamodel;
+        this.jdbcUniquenessChecker = new JdbcUniquenessChecker(dataSource, metamodel);
+        this.decorators = decorators;
+    }
+
+    @Override
+    public <T extends ConstraintValidator<?, ?>> T getInstance(final Class<T> key) {
+        final ValidatorInstantiation event = ValidationEvents.beginValidatorInstantiation();
+        T instance = null;
+
+        try {
+            instance = key.newInstance();
+        } catch (final Exception e) {
+            LOG.error("Could not instantiate " + key.getName(), e);
+            return null;
+        }
+
+        if (UniquenessCheckerAwareValidator.class.isAssignableFrom(key)) {
+            final UniquenessCheckerAwareValidator validator = (UniquenessCheckerAwareValidator) instance;
+            UniquenessChecker uniquenessChecker = jdbcUniquenessChecker;
+            for (final UniquenessCheckerDecorator decorator : decorators) {
+                uniquenessChecker = decorator.decorate(uniquenessChecker);
+            }
+            validator.setUniquenessChecker(uniquenessChecker);
+        }
+
+        if (MetamodelAwareValidator.class.isAssignableFrom(key)) {
+            ((MetamodelAwareValidator) instance).setMetamodel(metamodel, null);
+        }
+
+        if (event != null) {
+            event.complete(key);
+        }
+        return instance;
+    }
+
+    /**
+     * The {@link JdbcUniquenessChecker} shared by the validators, e.g. to set
+     * a query timeout.
+     */
+    public JdbcUniquenessChecker getJdbcUniquenessChecker() {
+        return jdbcUniquenessChecker;
+    }
+
+    /**
+     * Closes the shared {@link JdbcUniquenessChecker}, validators created by
+     * this factory can't check keys anymore.
+     */
+    public void close() {
+        jdbcUniquenessChecker.close();
+    }
+
+}
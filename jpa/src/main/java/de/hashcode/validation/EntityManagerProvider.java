@@ -0,0 +1,45 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import javax.annotation.Nonnull;
+import javax.persistence.EntityManager;
+
+/**
+ * Provides the {@link EntityManager} for a single uniqueness check, so that a
+ * {@link JpaUniquenessChecker} (and the validator using it) can be shared by
+ * concurrent threads although an {@link EntityManager} is not thread-safe.
+ * Implementations must be thread-safe, see {@link EntityManagerProviders} for
+ * the provided implementations.
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+public interface EntityManagerProvider {
+
+    /**
+     * Returns the {@link EntityManager} to use by the calling thread for a
+     * single check, e.g. the one bound to the current transaction.
+     */
+    @Nonnull
+    EntityManager getEntityManager();
+
+    /**
+     * Invoked when the check is done with the {@link EntityManager} returned by
+     * {@link #getEntityManager()}, e.g. to close it.
+     */
+    void release(@Nonnull EntityManager entityManager);
+
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import javax.annotation.Nonnull;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * Factory methods for {@link EntityManagerProvider}s.
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+public final class EntityManagerProviders {
+
+    private EntityManagerProviders() {
+        // utility class
+    }
+
+    /**
+     * Creates a provider that always returns the given {@link EntityManager}.
+     * This is only thread-safe if the {@link EntityManager} is, e.g. a
+     * container managed proxy that delegates to the {@link EntityManager} of
+     * the current transaction.
+     */
+    @Nonnull
+    public static EntityManagerProvider shared(@Nonnull final EntityManager entityManager) {
+        return new SharedEntityManagerProvider(entityManager);
+    }
+
+    /**
+     * Creates a provider that creates a new {@link EntityManager} from the
+     * given {@link EntityManagerFactory} for each check, and closes it when
+     * it's released.
+     */
+    @Nonnull
+    public static EntityManagerProvider perCheck(@Nonnull final EntityManagerFactory entityManagerFactory) {
+        return new EntityManagerProvider() {
+
+            @Override
+            public EntityManager getEntityManager() {
+                return entityManagerFactory.createEntityManager();
+            }
+
+            @Override
+            public void release(final EntityManager entityManager) {
+                entityManager.close();
+            }
+
+            @Override
+            public String toString() {
+                return "per check provider for " + entityManagerFactory;
+            }
+        };
+    }
+
+    /**
+     * The provider returned by {@link EntityManagerProviders#shared(EntityManager)}.
+     */
+    static final class SharedEntityManagerProvider implements EntityManagerProvider {
+
+        private final EntityManager entityManager;
+
+        private SharedEntityManagerProvider(@Nonnull final EntityManager entityManager) {
+            this.entityManager = entityManager;
+        }
+
+        @Override
+        public EntityManager getEntityManager() {
+            return entityManager;
+        }
+
+        @Override
+        public void release(final EntityManager entityManager) {
+            // the entity manager is owned by someone else
+        }
+
+    }
+
+}
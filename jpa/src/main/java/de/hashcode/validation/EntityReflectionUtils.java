@@ -0,0 +1,220 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.persistence.Id;
+import javax.persistence.Version;
+import javax.persistence.metamodel.EntityType;
+import javax.persistence.metamodel.Metamodel;
+
+/**
+ * A utility class for reflection tasks on jpa entities, complementing the
+ * {@link ReflectionUtils}. Resolved id and version fields and unique keys are
+ * cached per class, entity classes per {@link Metamodel} and class.
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+public class EntityReflectionUtils {
+
+    /**
+     * Marks classes that are no entities in {@link #ENTITY_CLASSES}.
+     */
+    private static final Class<?> NO_ENTITY = Void.class;
+
+    private static final ConcurrentMap<Class<?>, Field> ID_FIELDS = new ConcurrentHashMap<Class<?>, Field>();
+    private static final ConcurrentMap<Class<?>, Field> VERSION_FIELDS = new ConcurrentHashMap<Class<?>, Field>();
+    private static final ConcurrentMap<Class<?>, List<UniqueKey>> UNIQUE_KEYS =
+            new ConcurrentHashMap<Class<?>, List<UniqueKey>>();
+    private static final ConcurrentWeakIdentityMap<Metamodel, ConcurrentMap<Class<?>, Class<?>>> ENTITY_CLASSES =
+            new ConcurrentWeakIdentityMap<Metamodel, ConcurrentMap<Class<?>, Class<?>>>();
+
+    /**
+     * Marks classes without a version field in {@link #VERSION_FIELDS}.
+     */
+    private static final Field NO_VERSION_FIELD;
+
+    static {
+        try {
+            NO_VERSION_FIELD = EntityReflectionUtils.class.getDeclaredField("NO_VERSION_FIELD");
+        } catch (final NoSuchFieldException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private EntityReflectionUtils() {
+        // utility class
+    }
+
+    /**
+     * Determines which field of the given class is annotated with {@link Id},
+     * including the inheritence tree up to {@link Object}.
+     *
+     * @return the Id field, never <code>null</code>.
+     * @throws IllegalArgumentException
+     *             thrown if there's no field annotated with {@link Id}.
+     */
+    public static Field getIdField(final Class<?> entityClass) throws IllegalArgumentException {
+        Field result = ID_FIELDS.get(entityClass);
+        if (result == null) {
+            result = findIdField(entityClass);
+            ID_FIELDS.put(entityClass, result);
+        }
+        return result;
+    }
+
+    @Nonnull
+    private static Field findIdField(final Class<?> entityClass) throws IllegalArgumentException {
+        final Field[] fields = entityClass.getDeclaredFields();
+        for (final Field field : fields) {
+            final Id annotation = field.getAnnotation(Id.class);
+            if (annotation != null) {
+                return field;
+            }
+        }
+        if (entityClass.getSuperclass() != Object.class) {
+            return findIdField(entityClass.getSuperclass());
+        }
+        throw new IllegalArgumentException("No id field found on class " + entityClass);
+    }
+
+    /**
+     * Determines which field of the given class is annotated with
+     * {@link Version}, including the inheritence tree up to {@link Object}.
+     * The field is made accessible.
+     *
+     * @return the version field or <code>null</code> if the class has no
+     *         version field (e.g. if the version is mapped via its getter).
+     */
+    @CheckForNull
+    public static Field getVersionField(@Nonnull final Class<?> entityClass) {
+        Field result = VERSION_FIELDS.get(entityClass);
+        if (result == null) {
+            result = findVersionField(entityClass);
+            VERSION_FIELDS.put(entityClass, result);
+        }
+        return result != NO_VERSION_FIELD ? result : null;
+    }
+
+    @Nonnull
+    private static Field findVersionField(@Nonnull final Class<?> entityClass) {
+        for (Class<?> clazz = entityClass; clazz != null && clazz != Object.class; clazz = clazz.getSuperclass()) {
+            for (final Field field : clazz.getDeclaredFields()) {
+                if (field.isAnnotationPresent(Version.class)) {
+                    field.setAccessible(true);
+                    return field;
+                }
+            }
+        }
+        return NO_VERSION_FIELD;
+    }
+
+    /**
+     * Determines the {@link UniqueKey}s declared on the given class (directly or
+     * via {@link UniqueKey.List}), including the inheritence tree up to
+     * {@link Object}.
+     *
+     * @return the (unmodifiable) list of unique keys, never <code>null</code>.
+     */
+    @Nonnull
+    public static List<UniqueKey> getUniqueKeys(@Nonnull final Class<?> entityClass) {
+        List<UniqueKey> result = UNIQUE_KEYS.get(entityClass);
+        if (result == null) {
+            result = Collections.unmodifiableList(findUniqueKeys(entityClass));
+            UNIQUE_KEYS.put(entityClass, result);
+        }
+        return result;
+    }
+
+    @Nonnull
+    private static List<UniqueKey> findUniqueKeys(@Nonnull final Class<?> entityClass) {
+        final List<UniqueKey> result = new ArrayList<UniqueKey>();
+        for (Class<?> clazz = entityClass; clazz != null && clazz != Object.class; clazz = clazz.getSuperclass()) {
+            final UniqueKey uniqueKey = clazz.getAnnotation(UniqueKey.class);
+            if (uniqueKey != null) {
+                result.add(uniqueKey);
+            }
+            final UniqueKey.List uniqueKeys = clazz.getAnnotation(UniqueKey.List.class);
+            if (uniqueKeys != null) {
+                result.addAll(Arrays.asList(uniqueKeys.value()));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Determines the entity class of the given class, which is the class itself
+     * or - for provider proxies or enhanced subclasses - the nearest superclass
+     * that's an entity according to the given {@link Metamodel}.
+     *
+     * @return the entity class or <code>null</code> if the given class is no
+     *         entity.
+     */
+    @CheckForNull
+    public static Class<?> getEntityClass(@Nonnull final Metamodel metamodel, @Nonnull final Class<?> clazz) {
+        final ConcurrentMap<Class<?>, Class<?>> entityClasses = getEntityClasses(metamodel);
+        Class<?> result = entityClasses.get(clazz);
+        if (result == null) {
+            result = findEntityClass(metamodel, clazz);
+            entityClasses.put(clazz, result);
+        }
+        return result != NO_ENTITY ? result : null;
+    }
+
+    @Nonnull
+    private static ConcurrentMap<Class<?>, Class<?>> getEntityClasses(@Nonnull final Metamodel metamodel) {
+        ConcurrentMap<Class<?>, Class<?>> result = ENTITY_CLASSES.get(metamodel);
+        if (result == null) {
+            result = new ConcurrentHashMap<Class<?>, Class<?>>();
+            final ConcurrentMap<Class<?>, Class<?>> existing = ENTITY_CLASSES.putIfAbsent(metamodel, result);
+            if (existing != null) {
+                result = existing;
+            }
+        }
+        return result;
+    }
+
+    @Nonnull
+    private static Class<?> findEntityClass(@Nonnull final Metamodel metamodel, @Nonnull final Class<?> clazz) {
+        for (Class<?> c = clazz; c != null && c != Object.class; c = c.getSuperclass()) {
+            try {
+                metamodel.entity(c);
+                return c;
+            } catch (final IllegalArgumentException e) {
+                // not an entity, continue with the superclass
+            }
+        }
+        return NO_ENTITY;
+    }
+
+    /**
+     * Determines the name of the id attribute of the given entity type.
+     */
+    @Nonnull
+    public static String getIdAttributeName(@Nonnull final EntityType<?> entityType) {
+        return entityType.getId(entityType.getIdType().getJavaType()).getName();
+    }
+
+}
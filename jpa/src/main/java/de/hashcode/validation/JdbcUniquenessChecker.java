@@ -0,0 +1,263 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import static de.hashcode.validation.EntityReflectionUtils.getIdAttributeName;
+
+import java.lang.reflect.AnnotatedElement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+import javax.persistence.Column;
+import javax.persistence.JoinColumn;
+import javax.persistence.Table;
+import javax.persistence.metamodel.Attribute;
+import javax.persistence.metamodel.Attribute.PersistentAttributeType;
+import javax.persistence.metamodel.EntityType;
+import javax.persistence.metamodel.Metamodel;
+import javax.sql.DataSource;
+
+/**
+ * A {@link UniquenessChecker} that bypasses the jpa provider and queries the
+ * database directly via jdbc.
+ * <p>
+ * The table and columns for an entity/property are determined once via the
+ * {@link Metamodel} and the mapping annotations ({@link Table}, {@link Column}
+ * ), the sql is created once per entity/property. Only basic attributes and (scope)
+ * to-one associations of entities mapped to a single table are supported, but
+ * no nested properties (except the id of a to-one association).
+ * </p>
+ * <p>
+ * Each check borrows a {@link Connection} from the {@link DataSource} and
+ * releases it right after the query, so a pooling {@link DataSource} should be
+ * used (which also reuses the prepared statements, if it supports statement
+ * caching). An instance is thread-safe and can be shared by all validators,
+ * checks run concurrently. After {@link #close()} no more checks are accepted.
+ * </p>
+ * <p>
+ * A query timeout can be set via {@link #setQueryTimeout(long, TimeUnit)}, as
+ * jdbc only supports seconds it's rounded up to full seconds.
+ * </p>
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+public class JdbcUniquenessChecker implements UniquenessChecker, UniqueKeyQueryRenderer {
+
+    private final DataSource dataSource;
+    private final Metamodel metamodel;
+
+    private final ConcurrentMap<String, String> sqlCache = new ConcurrentHashMap<String, String>();
+    private volatile int queryTimeoutSeconds;
+    private volatile boolean closed;
+
+    public JdbcUniquenessChecker(@Nonnull final DataSource dataSource, @Nonnull final Metamodel metamodel) {
+        this.dataSource = dataSource;
+        this.metamodel = metamodel;
+    }
+
+    /**
+     * Sets the timeout for uniqueness queries, <code>0</code> (the default)
+     * means no timeout.
+     */
+    public void setQueryTimeout(final long timeout, final TimeUnit unit) {
+        final long millis = unit.toMillis(timeout);
+        queryTimeoutSeconds = (int) ((millis + 999) / 1000);
+    }
+
+    @Override
+    public boolean exists(final UniqueKeyQuery query) {
+        if (closed) {
+            throw new IllegalStateException("The JdbcUniquenessChecker is closed.");
+        }
+        final String sql = getSql(query);
+        try {
+            final Connection connection = dataSource.getConnection();
+            try {
+                final PreparedStatement statement = connection.prepareStatement(sql);
+                try {
+                    statement.setQueryTimeout(queryTimeoutSeconds);
+                    int index = 1;
+                    for (final Object bindValue : getBindValues(query)) {
+                        statement.setObject(index++, bindValue);
+                    }
+                    final ResultSet resultSet = statement.executeQuery();
+                    try {
+                        return resultSet.next();
+                    } finally {
+                        resultSet.close();
+                    }
+                } finally {
+                    statement.close();
+                }
+            } finally {
+                connection.close();
+            }
+        } catch (final Exception e) {
+            throw new RuntimeException("Could not execute '" + sql + "' for " + query.describeKey() + ".", e);
+        }
+    }
+
+    @Override
+    public String render(final UniqueKeyQuery query, final boolean maskBindValues) {
+        final StringBuilder sb = new StringBuilder(getSql(query)).append(" [");
+        try {
+            final List<Object> bindValues = getBindValues(query);
+            for (int i = 0; i < bindValues.size(); i++) {
+                sb.append(i > 0 ? ", " : "").append(maskBindValues ? "***" : String.valueOf(bindValues.get(i)));
+            }
+        } catch (final Exception e) {
+            sb.append("bind values not available: ").append(e);
+        }
+        return sb.append(']').toString();
+    }
+
+    /**
+     * Closes this checker, subsequent checks fail with an
+     * {@link IllegalStateException}. Connections are only held during a
+     * check, so there's nothing to release.
+     */
+    public void close() {
+        closed = true;
+    }
+
+    @Nonnull
+    private String getSql(@Nonnull final UniqueKeyQuery query) {
+        final StringBuilder sb = new StringBuilder(query.getEntityClass().getName());
+        for (final Entry<String, Object> scope : query.getScope().entrySet()) {
+            sb.append('#').append(scope.getKey()).append('#').append(scope.getValue() != null);
+        }
+        sb.append('#').append(query.getProperty()).append('#').append(query.getValue() != null);
+        sb.append('#').append(query.getIdValue() != null);
+        final String key = sb.toString();
+        String sql = sqlCache.get(key);
+        if (sql == null) {
+            sql = createSql(query);
+            sqlCache.put(key, sql);
+        }
+        return sql;
+    }
+
+    /**
+     * Creates the sql for the given query, by default using the sql:2008
+     * <code>FETCH FIRST</code> clause. The scope predicates come first (in the
+     * order of the scope), so that a composite index can be used. Subclasses
+     * can override this for databases with a different syntax.
+     */
+    @Nonnull
+    protected String createSql(@Nonnull final UniqueKeyQuery query) {
+        final EntityType<?> entityType = metamodel.entity(query.getEntityClass());
+        final StringBuilder sb = new StringBuilder("SELECT 1 FROM ").append(getTableName(entityType));
+        sb.append(" WHERE ");
+        for (final Entry<String, Object> scope : query.getScope().entrySet()) {
+            sb.append(getColumnName(entityType, scope.getKey()));
+            sb.append(scope.getValue() != null ? " = ?" : " IS NULL").append(" AND ");
+        }
+        sb.append(getColumnName(entityType, query.getProperty()));
+        sb.append(query.getValue() != null ? " = ?" : " IS NULL");
+        if (query.getIdValue() != null) {
+            sb.append(" AND ").append(getColumnName(entityType, query.getIdProperty())).append(" <> ?");
+        }
+        sb.append(" FETCH FIRST 1 ROWS ONLY");
+        return sb.toString();
+    }
+
+    @Nonnull
+    private static String getTableName(@Nonnull final EntityType<?> entityType) {
+        final Table table = entityType.getJavaType().getAnnotation(Table.class);
+        if (table != null && table.name().length() > 0) {
+            return table.schema().length() > 0 ? table.schema() + '.' + table.name() : table.name();
+        }
+        return entityType.getName();
+    }
+
+    @Nonnull
+    private String getColumnName(@Nonnull final EntityType<?> entityType, @Nonnull final String property) {
+        final int dot = property.indexOf('.');
+        if (dot >= 0) {
+            // the id of a to-one association is its join column
+            final Attribute<?, ?> association = entityType.getAttribute(property.substring(0, dot));
+            if (association.isAssociation() && !association.isCollection()
+                    && property.substring(dot + 1).equals(getIdAttributeName(metamodel.entity(association
+                            .getJavaType())))) {
+                return getColumnName(entityType, association.getName());
+            }
+            throw new IllegalArgumentException("Nested properties are not supported, use the JpaUniquenessChecker"
+                    + " for '" + property + "' on " + entityType.getJavaType());
+        }
+        final Attribute<?, ?> attribute = entityType.getAttribute(property);
+        final PersistentAttributeType type = attribute.getPersistentAttributeType();
+        final AnnotatedElement member = attribute.getJavaMember() instanceof AnnotatedElement
+                ? (AnnotatedElement) attribute.getJavaMember()
+                : null;
+        if (type == PersistentAttributeType.BASIC) {
+            final Column column = member != null ? member.getAnnotation(Column.class) : null;
+            return column != null && column.name().length() > 0 ? column.name() : attribute.getName();
+        }
+        if (type == PersistentAttributeType.MANY_TO_ONE || type == PersistentAttributeType.ONE_TO_ONE) {
+            final JoinColumn joinColumn = member != null ? member.getAnnotation(JoinColumn.class) : null;
+            if (joinColumn != null && joinColumn.name().length() > 0) {
+                return joinColumn.name();
+            }
+            final EntityType<?> target = metamodel.entity(attribute.getJavaType());
+            return attribute.getName() + '_' + getColumnName(target, getIdAttributeName(target));
+        }
+        throw new IllegalArgumentException("Only basic attributes and to-one associations are supported, '"
+                + property + "' on " + entityType.getJavaType() + " is " + type);
+    }
+
+    /**
+     * Determines the values to bind to the sql created by
+     * {@link #createSql(UniqueKeyQuery)}.
+     */
+    @Nonnull
+    private List<Object> getBindValues(@Nonnull final UniqueKeyQuery query) throws Exception {
+        final List<Object> result = new ArrayList<Object>();
+        final EntityType<?> entityType = metamodel.entity(query.getEntityClass());
+        for (final Entry<String, Object> scope : query.getScope().entrySet()) {
+            if (scope.getValue() != null) {
+                result.add(toJdbcValue(entityType, scope.getKey(), scope.getValue()));
+            }
+        }
+        if (query.getValue() != null) {
+            result.add(query.getValue());
+        }
+        if (query.getIdValue() != null) {
+            result.add(query.getIdValue());
+        }
+        return result;
+    }
+
+    /**
+     * Associated entities are bound by their id.
+     */
+    private Object toJdbcValue(@Nonnull final EntityType<?> entityType, @Nonnull final String property,
+            @Nonnull final Object value) throws Exception {
+        if (property.indexOf('.') >= 0 || !entityType.getAttribute(property).isAssociation()) {
+            return value;
+        }
+        final EntityType<?> target = metamodel.entity(entityType.getAttribute(property).getJavaType());
+        return ReflectionUtils.getPropertyValue(value, getIdAttributeName(target));
+    }
+
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import static de.hashcode.validation.EntityReflectionUtils.getIdAttributeName;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.persistence.Entity;
+import javax.persistence.EntityManager;
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.From;
+import javax.persistence.criteria.JoinType;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.persistence.metamodel.Attribute;
+import javax.persistence.metamodel.Metamodel;
+
+/**
+ * A {@link UniquenessChecker} that uses a jpa criteria query. Scope predicates
+ * come first (in the order of the scope), followed by the unique property and
+ * the id. Nested properties like <code>account.login</code> are resolved via
+ * (left) joins, a join is shared by all properties with the same prefix.
+ * <p>
+ * A query timeout can be set via {@link #setQueryTimeout(long, TimeUnit)}, it's
+ * passed to the jpa provider as <code>javax.persistence.query.timeout</code>
+ * hint.
+ * </p>
+ * <p>
+ * The {@link EntityManager} is obtained from an {@link EntityManagerProvider}
+ * for each check, so an instance is thread-safe if its provider is (like
+ * {@link EntityManagerProviders#perCheck(javax.persistence.EntityManagerFactory)}).
+ * </p>
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+public class JpaUniquenessChecker implements UniquenessChecker, UniqueKeyQueryRenderer {
+
+    private static final String QUERY_TIMEOUT_HINT = "javax.persistence.query.timeout";
+
+    private final EntityManagerProvider entityManagerProvider;
+    private volatile int queryTimeoutMillis;
+
+    /**
+     * Creates a checker that uses the given {@link EntityManager} for all
+     * checks, see {@link EntityManagerProviders#shared(EntityManager)}.
+     */
+    public JpaUniquenessChecker(final EntityManager entityManager) {
+        this(EntityManagerProviders.shared(entityManager));
+    }
+
+    public JpaUniquenessChecker(final EntityManagerProvider entityManagerProvider) {
+        this.entityManagerProvider = entityManagerProvider;
+    }
+
+    /**
+     * Sets the timeout for uniqueness queries, <code>0</code> (the default)
+     * means no timeout.
+     */
+    public void setQueryTimeout(final long timeout, final TimeUnit unit) {
+        queryTimeoutMillis = (int) unit.toMillis(timeout);
+    }
+
+    /**
+     * Returns the {@link EntityManager} if this checker was created with a
+     * single one, otherwise <code>null</code>.
+     */
+    @CheckForNull
+    public EntityManager getEntityManager() {
+        return entityManagerProvider instanceof EntityManagerProviders.SharedEntityManagerProvider
+            ? entityManagerProvider.getEntityManager()
+            : null;
+    }
+
+    @Nonnull
+    public EntityManagerProvider getEntityManagerProvider() {
+        return entityManagerProvider;
+    }
+
+    @Override
+    public boolean exists(final UniqueKeyQuery query) {
+        final EntityManager entityManager = entityManagerProvider.getEntityManager();
+        try {
+            return exists(entityManager, query);
+        } finally {
+            entityManagerProvider.release(entityManager);
+        }
+    }
+
+    private boolean exists(final EntityManager entityManager, final UniqueKeyQuery query) {
+
+        final CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+
+        final CriteriaQuery<Object> criteriaQuery = criteriaBuilder.createQuery();
+
+        final Root<?> root = criteriaQuery.from(query.getEntityClass());
+        final Metamodel metamodel = entityManager.getMetamodel();
+
+        final Map<String, From<?, ?>> joins = new HashMap<String, From<?, ?>>();
+        final List<Predicate> predicates = new ArrayList<Predicate>();
+        for (final Entry<String, Object> scope : query.getScope().entrySet()) {
+            predicates.add(equal(criteriaBuilder, getPath(metamodel, root, joins, scope.getKey()),
+                    scope.getValue()));
+        }
+
+        predicates.add(criteriaBuilder.equal(getPath(metamodel, root, joins, query.getProperty()),
+                query.getValue()));
+
+        if (query.getIdValue() != null) {
+            predicates.add(criteriaBuilder.notEqual(root.get(query.getIdProperty()), query.getIdValue()));
+        }
+
+        criteriaQuery.where(predicates.toArray(new Predicate[predicates.size()]));
+
+        final TypedQuery<Object> typedQuery = entityManager.createQuery(criteriaQuery);
+        if (queryTimeoutMillis > 0) {
+            typedQuery.setHint(QUERY_TIMEOUT_HINT, queryTimeoutMillis);
+        }
+        final List<Object> resultSet = typedQuery.getResultList();
+
+        return !resultSet.isEmpty();
+    }
+
+    /**
+     * Determines the entity name of the given entity class from its
+     * {@link Entity} annotation, so that rendering doesn't need an
+     * {@link EntityManager}.
+     */
+    @Nonnull
+    private static String getEntityName(@Nonnull final Class<?> entityClass) {
+        final Entity entity = entityClass.getAnnotation(Entity.class);
+        return entity != null && entity.name().length() > 0 ? entity.name() : entityClass.getSimpleName();
+    }
+
+    /**
+     * Renders the jpql equivalent of the executed criteria query.
+     */
+    @Override
+    public String render(final UniqueKeyQuery query, final boolean maskBindValues) {
+        final List<Object> bindValues = new ArrayList<Object>();
+        final StringBuilder sb = new StringBuilder("SELECT e FROM ");
+        sb.append(getEntityName(query.getEntityClass())).append(" e WHERE ");
+        for (final Entry<String, Object> scope : query.getScope().entrySet()) {
+            appendEqual(sb, scope.getKey(), scope.getValue(), bindValues);
+            sb.append(" AND ");
+        }
+        appendEqual(sb, query.getProperty(), query.getValue(), bindValues);
+        if (query.getIdValue() != null) {
+            bindValues.add(query.getIdValue());
+            sb.append(" AND e.").append(query.getIdProperty()).append(" <> ?").append(bindValues.size());
+        }
+        sb.append(" [");
+        for (int i = 0; i < bindValues.size(); i++) {
+            sb.append(i > 0 ? ", " : "").append(maskBindValues ? "***" : String.valueOf(bindValues.get(i)));
+        }
+        return sb.append(']').toString();
+    }
+
+    private static void appendEqual(final StringBuilder sb, final String property, final Object value,
+            final List<Object> bindValues) {
+        sb.append("e.").append(property);
+        if (value != null) {
+            bindValues.add(value);
+            sb.append(" = ?").append(bindValues.size());
+        } else {
+            sb.append(" IS NULL");
+        }
+    }
+
+    /**
+     * Resolves the given (possibly nested) property path, joining the
+     * intermediate associations. The id of a to-one association is compared
+     * without a join (i.e. via the foreign key).
+     */
+    private static Path<?> getPath(final Metamodel metamodel, final Root<?> root,
+            final Map<String, From<?, ?>> joins, final String path) {
+        final String[] properties = PropertyPaths.split(path);
+        final int last = properties.length - 1;
+        From<?, ?> from = root;
+        Class<?> type = root.getJavaType();
+        final StringBuilder prefix = new StringBuilder();
+        for (int i = 0; i < last; i++) {
+            final Attribute<?, ?> attribute = metamodel.managedType(type).getAttribute(properties[i]);
+            if (i == last - 1 && isIdOfToOneAssociation(metamodel, attribute, properties[last])) {
+                return from.get(properties[i]).get(properties[last]);
+            }
+            prefix.append(properties[i]).append('.');
+            From<?, ?> join = joins.get(prefix.toString());
+            if (join == null) {
+                join = from.join(properties[i], JoinType.LEFT);
+                joins.put(prefix.toString(), join);
+            }
+            from = join;
+            type = attribute.getJavaType();
+        }
+        return from.get(properties[last]);
+    }
+
+    private static boolean isIdOfToOneAssociation(final Metamodel metamodel, final Attribute<?, ?> attribute,
+            final String property) {
+        return attribute.isAssociation() && !attribute.isCollection()
+                && property.equals(getIdAttributeName(metamodel.entity(attribute.getJavaType())));
+    }
+
+    private static Predicate equal(final CriteriaBuilder criteriaBuilder, final Path<?> path, final Object value) {
+        return value != null ? criteriaBuilder.equal(path, value) : criteriaBuilder.isNull(path);
+    }
+
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+/**
+ * A {@link RecheckPolicy} that rechecks keys on the primary if they were
+ * changed recently, i.e. within the replication lag window. Changes are
+ * received via an {@link UniqueKeyInvalidationChannel} (to which this policy
+ * must be added as listener), as published by the
+ * {@link UniqueKeyLoadedStateListener} - with the
+ * {@link SocketInvalidationChannel} the changes of all nodes are known.
+ * <p>
+ * The lag window should cover the max replication lag plus the time between
+ * the flush and the commit of a transaction, as changes are published on
+ * flush.
+ * </p>
+ * <p>
+ * Changes are indexed by entity class, property and value, so that a check
+ * is a single lookup. Changes that left the lag window are removed on
+ * {@link #onChange(UniqueKeyChange)}, at most once per lag window.
+ * </p>
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+public class LagWindowRecheckPolicy implements RecheckPolicy, UniqueKeyInvalidationChannel.Listener {
+
+    private final long lagWindowNanos;
+    private final ConcurrentMap<UniqueKeyChange, Long> changes = new ConcurrentHashMap<UniqueKeyChange, Long>();
+    /**
+     * The last change per entity class and property (<code>class#property</code>),
+     * for queries of associated ids (<code>property.id</code>), which are
+     * affected by any change of the association.
+     */
+    private final ConcurrentMap<String, Long> propertyChanges = new ConcurrentHashMap<String, Long>();
+    /**
+     * The last change with an unknown value per entity class and property,
+     * which affects all values of the property.
+     */
+    private final ConcurrentMap<String, Long> unknownValueChanges = new ConcurrentHashMap<String, Long>();
+    private final AtomicLong lastExpiry = new AtomicLong(System.nanoTime());
+
+    /**
+     * Creates a new policy.
+     *
+     * @param lagWindow
+     *            the time a changed key is checked on the primary.
+     * @param unit
+     *            the unit of the lag window.
+     */
+    public LagWindowRecheckPolicy(final long lagWindow, @Nonnull final TimeUnit unit) {
+        this.lagWindowNanos = unit.toNanos(lagWindow);
+    }
+
+    @Override
+    public void onChange(final UniqueKeyChange change) {
+        final long now = System.nanoTime();
+        final Long timestamp = Long.valueOf(now);
+        final String propertyKey = propertyKey(change.getEntityClassName(), change.getProperty());
+        if (change.isValueKnown()) {
+            changes.put(change, timestamp);
+        } else {
+            unknownValueChanges.put(propertyKey, timestamp);
+        }
+        propertyChanges.put(propertyKey, timestamp);
+        expire(now);
+    }
+
+    @Override
+    public boolean recheckOnPrimary(final UniqueKeyQuery query, final boolean existsOnReplica) {
+        final long now = System.nanoTime();
+        final String entityClassName = query.getEntityClass().getName();
+        final String property = query.getProperty();
+        if (isRecent(changes.get(new UniqueKeyChange(entityClassName, property, query.getValue())), now)
+                || isRecent(unknownValueChanges.get(propertyKey(entityClassName, property)), now)) {
+            return true;
+        }
+        for (int idx = property.indexOf('.'); idx > 0; idx = property.indexOf('.', idx + 1)) {
+            if (isRecent(propertyChanges.get(propertyKey(entityClassName, property.substring(0, idx))), now)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isRecent(@CheckForNull final Long timestamp, final long now) {
+        return timestamp != null && now - timestamp.longValue() <= lagWindowNanos;
+    }
+
+    private void expire(final long now) {
+        final long last = lastExpiry.get();
+        if (now - last <= lagWindowNanos || !lastExpiry.compareAndSet(last, now)) {
+            return;
+        }
+        expire(changes, now);
+        expire(propertyChanges, now);
+        expire(unknownValueChanges, now);
+    }
+
+    private <K> void expire(final ConcurrentMap<K, Long> timestamps, final long now) {
+        for (final Iterator<Entry<K, Long>> iter = timestamps.entrySet().iterator(); iter.hasNext();) {
+            final Entry<K, Long> entry = iter.next();
+            if (!isRecent(entry.getValue(), now)) {
+                // only remove the entry if it was not updated concurrently
+                timestamps.remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * The number of indexed changes, including expired ones that were not yet
+     * removed.
+     */
+    int size() {
+        return changes.size();
+    }
+
+    @Nonnull
+    private static String propertyKey(@Nonnull final String entityClassName, @Nonnull final String property) {
+        return entityClassName + '#' + property;
+    }
+
+}
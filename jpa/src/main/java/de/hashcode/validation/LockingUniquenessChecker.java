@@ -0,0 +1,65 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+/**
+ * A {@link UniquenessChecker} that locks the checked key (and optionally
+ * reserves it) via the (shared) {@link UniqueKeyLocks}, so that concurrent
+ * transactions can't both pass the check for the same key. The lock is held
+ * until the end of the current lock scope, see {@link UniqueKeyLocks#begin()}.
+ * Outside of a scope all lookups are delegated. If the lock can't be acquired
+ * within the timeout the key is checked without the lock, or reported as taken,
+ * see {@link UniqueKeyLocks#setFailOnTimeout(boolean)}.
+ * <p>
+ * When combined with other decorators (e.g. memoization or caching) this
+ * decorator should be the last one, so that the lock is taken before any
+ * lookup.
+ * </p>
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+public class LockingUniquenessChecker implements UniquenessChecker {
+
+    private final UniquenessChecker delegate;
+    private final UniqueKeyLocks locks;
+
+    public LockingUniquenessChecker(final UniquenessChecker delegate, final UniqueKeyLocks locks) {
+        this.delegate = delegate;
+        this.locks = locks;
+    }
+
+    /**
+     * A {@link UniquenessCheckerDecorator} creating
+     * {@link LockingUniquenessChecker}s that share the given locks.
+     */
+    public static UniquenessCheckerDecorator decorator(final UniqueKeyLocks locks) {
+        return new UniquenessCheckerDecorator() {
+            @Override
+            public UniquenessChecker decorate(final UniquenessChecker uniquenessChecker) {
+                return new LockingUniquenessChecker(uniquenessChecker, locks);
+            }
+        };
+    }
+
+    @Override
+    public boolean exists(final UniqueKeyQuery query) {
+        if (!locks.lock(query) || delegate.exists(query)) {
+            return true;
+        }
+        return !locks.reserve(query);
+    }
+
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * An {@link UniqueKeyInvalidationChannel} that notifies the listeners of the
+ * local jvm only, e.g. for single node deployments and tests.
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+public class LoopbackInvalidationChannel implements UniqueKeyInvalidationChannel {
+
+    private final List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+
+    @Override
+    public void publish(final UniqueKeyChange change) {
+        notifyListeners(listeners, change);
+    }
+
+    @Override
+    public void addListener(final Listener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void close() {
+        listeners.clear();
+    }
+
+    static void notifyListeners(final List<Listener> listeners, final UniqueKeyChange change) {
+        for (final Listener listener : listeners) {
+            listener.onChange(change);
+        }
+    }
+
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+/**
+ * A {@link UniquenessChecker} that remembers the results of its delegate
+ * within the current {@link UniqueKeyValidationScope}, so that identical
+ * lookups (e.g. of an entity that's reachable twice in a validated object
+ * graph) are executed only once. Additionally different entities claiming the
+ * same key within a scope are reported as duplicates without asking the
+ * database.
+ * <p>
+ * Outside of a scope all lookups are delegated.
+ * </p>
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+public class MemoizingUniquenessChecker implements UniquenessChecker {
+
+    private final UniquenessChecker delegate;
+
+    public MemoizingUniquenessChecker(final UniquenessChecker delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * A {@link UniquenessCheckerDecorator} creating
+     * {@link MemoizingUniquenessChecker}s.
+     */
+    public static UniquenessCheckerDecorator decorator() {
+        return new UniquenessCheckerDecorator() {
+            @Override
+            public UniquenessChecker decorate(final UniquenessChecker uniquenessChecker) {
+                return new MemoizingUniquenessChecker(uniquenessChecker);
+            }
+        };
+    }
+
+    @Override
+    public boolean exists(final UniqueKeyQuery query) {
+        final UniqueKeyValidationScope scope = UniqueKeyValidationScope.current();
+        if (scope == null) {
+            return delegate.exists(query);
+        }
+        if (scope.claim(query)) {
+            return true;
+        }
+        Boolean result = scope.getResult(query);
+        if (result == null) {
+            result = delegate.exists(query);
+            scope.putResult(query, result);
+        }
+        return result;
+    }
+
+}
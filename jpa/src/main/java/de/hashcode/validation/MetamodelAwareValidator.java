@@ -0,0 +1,39 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import javax.annotation.CheckForNull;
+import javax.persistence.PersistenceUnitUtil;
+import javax.persistence.metamodel.Metamodel;
+
+/**
+ * Interface for validators that are interested in the {@link Metamodel} (and
+ * {@link PersistenceUnitUtil}) of the persistence unit, e.g. to resolve the
+ * entity class of proxies. Is used by the
+ * {@link ConstraintValidatorFactoryEMFImpl} and the
+ * {@link ConstraintValidatorFactoryJdbcImpl}.
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+public interface MetamodelAwareValidator {
+
+    /**
+     * Set the {@link Metamodel} and the {@link PersistenceUnitUtil}, which may
+     * be <code>null</code> if there's no jpa provider at hand.
+     */
+    void setMetamodel(Metamodel metamodel, @CheckForNull PersistenceUnitUtil persistenceUnitUtil);
+
+}
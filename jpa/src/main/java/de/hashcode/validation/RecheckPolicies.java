@@ -0,0 +1,87 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Factory methods for {@link RecheckPolicy}s.
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+public final class RecheckPolicies {
+
+    private RecheckPolicies() {
+    }
+
+    /**
+     * Every check is repeated on the primary, i.e. the replica doesn't take
+     * any load (e.g. to compare the results while introducing the replica).
+     */
+    @Nonnull
+    public static RecheckPolicy always() {
+        return new RecheckPolicy() {
+            @Override
+            public boolean recheckOnPrimary(final UniqueKeyQuery query, final boolean existsOnReplica) {
+                return true;
+            }
+        };
+    }
+
+    /**
+     * A key that's free on the replica is checked on the primary, a key that's
+     * taken on the replica is considered taken. As a key is usually free
+     * (otherwise the validation fails), this mainly saves the queries of
+     * rejected keys, but never lets a duplicate pass because of replication
+     * lag.
+     * <p>
+     * Note that a key that was freed recently (the entity was removed or its
+     * key changed) may still be taken on a lagging replica, so that it's
+     * rejected wrongly. To recheck such keys combine this policy with a
+     * {@link LagWindowRecheckPolicy}, i.e.
+     * <code>anyOf(whenFree(), lagWindowPolicy)</code>.
+     * </p>
+     */
+    @Nonnull
+    public static RecheckPolicy whenFree() {
+        return new RecheckPolicy() {
+            @Override
+            public boolean recheckOnPrimary(final UniqueKeyQuery query, final boolean existsOnReplica) {
+                return !existsOnReplica;
+            }
+        };
+    }
+
+    /**
+     * Rechecks if any of the given policies demands it, e.g.
+     * <code>anyOf(whenFree(), lagWindowPolicy)</code>.
+     */
+    @Nonnull
+    public static RecheckPolicy anyOf(@Nonnull final RecheckPolicy... policies) {
+        return new RecheckPolicy() {
+            @Override
+            public boolean recheckOnPrimary(final UniqueKeyQuery query, final boolean existsOnReplica) {
+                for (final RecheckPolicy policy : policies) {
+                    if (policy.recheckOnPrimary(query, existsOnReplica)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+        };
+    }
+
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Decides if the result of a uniqueness check on a read replica must be
+ * confirmed by a check on the primary database, see
+ * {@link ReplicaRoutingUniquenessChecker}. Implementations are provided by
+ * {@link RecheckPolicies}, and the {@link LagWindowRecheckPolicy}.
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+public interface RecheckPolicy {
+
+    /**
+     * Determines if the given query must be checked on the primary.
+     *
+     * @param existsOnReplica
+     *            the result of the check on the replica.
+     */
+    boolean recheckOnPrimary(@Nonnull UniqueKeyQuery query, boolean existsOnReplica);
+
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import javax.annotation.Nonnull;
+import javax.persistence.EntityManagerFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link UniquenessChecker} that checks keys on a read replica, and only
+ * (re)checks on the primary if the {@link RecheckPolicy} demands it, or if
+ * the check on the replica failed. This way most of the read traffic of the
+ * validation is moved away from the primary, while correctness is kept by
+ * rechecking keys that may be affected by replication lag (and finally by the
+ * unique index of the primary at commit).
+ * <p>
+ * With the {@link ConstraintValidatorFactoryEMFImpl} this checker is set up
+ * via {@link #decorator(EntityManagerFactory, RecheckPolicy)}, this should be
+ * the first decorator so that it decorates the (primary)
+ * {@link JpaUniquenessChecker} directly:
+ * </p>
+ * <pre>
+ * LagWindowRecheckPolicy lagWindowPolicy = new LagWindowRecheckPolicy(5, TimeUnit.SECONDS);
+ * invalidationChannel.addListener(lagWindowPolicy);
+ * new ConstraintValidatorFactoryEMFImpl(primaryEntityManagerFactory,
+ *         ReplicaRoutingUniquenessChecker.decorator(replicaEntityManagerFactory,
+ *                 RecheckPolicies.anyOf(RecheckPolicies.whenFree(), lagWindowPolicy)));
+ * </pre>
+ * <p>
+ * This way free keys are always confirmed by the primary, and keys that are
+ * taken on the replica are only rechecked if they were changed within the lag
+ * window (see {@link RecheckPolicies#whenFree()}).
+ * </p>
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+public class ReplicaRoutingUniquenessChecker implements UniquenessChecker {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ReplicaRoutingUniquenessChecker.class);
+
+    private final UniquenessChecker replica;
+    private final UniquenessChecker primary;
+    private final RecheckPolicy recheckPolicy;
+
+    public ReplicaRoutingUniquenessChecker(@Nonnull final UniquenessChecker replica,
+            @Nonnull final UniquenessChecker primary, @Nonnull final RecheckPolicy recheckPolicy) {
+        this.replica = replica;
+        this.primary = primary;
+        this.recheckPolicy = recheckPolicy;
+    }
+
+    /**
+     * A {@link UniquenessCheckerDecorator} creating
+     * {@link ReplicaRoutingUniquenessChecker}s that check on the given replica
+     * (via a {@link JpaUniquenessChecker} using an
+     * {@link javax.persistence.EntityManager} per check), and use the
+     * decorated checker for the primary.
+     */
+    @Nonnull
+    public static UniquenessCheckerDecorator decorator(@Nonnull final EntityManagerFactory replica,
+            @Nonnull final RecheckPolicy recheckPolicy) {
+        return new UniquenessCheckerDecorator() {
+            @Override
+            public UniquenessChecker decorate(final UniquenessChecker uniquenessChecker) {
+                return new ReplicaRoutingUniquenessChecker(new JpaUniquenessChecker(EntityManagerProviders
+                        .perCheck(replica)), uniquenessChecker, recheckPolicy);
+            }
+        };
+    }
+
+    @Override
+    public boolean exists(final UniqueKeyQuery query) {
+        final boolean existsOnReplica;
+        try {
+            existsOnReplica = replica.exists(query);
+        } catch (final RuntimeException e) {
+            LOG.warn("Could not check " + query.describeKey() + " on the replica, checking on the primary.", e);
+            return primary.exists(query);
+        }
+        return recheckPolicy.recheckOnPrimary(query, existsOnReplica) ? primary.exists(query) : existsOnReplica;
+    }
+
+}
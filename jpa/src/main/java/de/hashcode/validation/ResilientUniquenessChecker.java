@@ -0,0 +1,92 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link UniquenessChecker} that protects the application from a slow or
+ * unavailable database: the number of concurrent checks is limited and a
+ * circuit breaker stops checking after repeated failures, as configured by the
+ * (shared) {@link UniquenessCheckGuard}. Rejected or failed checks have the
+ * result determined by the {@link UniquenessCheckGuard.DegradedMode}.
+ * <p>
+ * To limit the time of a single check, set a query timeout on the underlying
+ * {@link JpaUniquenessChecker} or {@link JdbcUniquenessChecker} - a timed out
+ * query counts as failure.
+ * </p>
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+public class ResilientUniquenessChecker implements UniquenessChecker {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ResilientUniquenessChecker.class);
+
+    private final UniquenessChecker delegate;
+    private final UniquenessCheckGuard guard;
+
+    public ResilientUniquenessChecker(final UniquenessChecker delegate, final UniquenessCheckGuard guard) {
+        this.delegate = delegate;
+        this.guard = guard;
+    }
+
+    /**
+     * A {@link UniquenessCheckerDecorator} creating
+     * {@link ResilientUniquenessChecker}s that share the given guard.
+     */
+    public static UniquenessCheckerDecorator decorator(final UniquenessCheckGuard guard) {
+        return new UniquenessCheckerDecorator() {
+            @Override
+            public UniquenessChecker decorate(final UniquenessChecker uniquenessChecker) {
+                return new ResilientUniquenessChecker(uniquenessChecker, guard);
+            }
+        };
+    }
+
+    @Override
+    public boolean exists(final UniqueKeyQuery query) {
+        if (!guard.acquire()) {
+            return degraded(query);
+        }
+        boolean success = false;
+        try {
+            final boolean result = delegate.exists(query);
+            success = true;
+            return result;
+        } catch (final RuntimeException e) {
+            LOG.warn("Could not check " + query.describeKey() + ", using degraded mode " + guard.getDegradedMode() + ".", e);
+            return degraded(query);
+        } finally {
+            guard.release(success);
+        }
+    }
+
+    private boolean degraded(final UniqueKeyQuery query) {
+        switch (guard.getDegradedMode()) {
+        case FAIL:
+            return true;
+        case DEFER:
+            if (query.getEntity() != null) {
+                UniqueKeyViolationTranslator.defer(query.getEntity(), query.getDeclaredProperty());
+            }
+            return false;
+        default:
+            return false;
+        }
+    }
+
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import java.util.Set;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import javax.validation.metadata.BeanDescriptor;
+
+/**
+ * A {@link Validator} that runs each validation within a
+ * {@link UniqueKeyValidationScope}, so that a {@link MemoizingUniquenessChecker}
+ * executes identical lookups only once per validation call.
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+public class ScopedValidator implements Validator {
+
+    private final Validator delegate;
+
+    public ScopedValidator(final Validator delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public <T> Set<ConstraintViolation<T>> validate(final T object, final Class<?>... groups) {
+        UniqueKeyValidationScope.begin();
+        try {
+            return delegate.validate(object, groups);
+        } finally {
+            UniqueKeyValidationScope.end();
+        }
+    }
+
+    @Override
+    public <T> Set<ConstraintViolation<T>> validateProperty(final T object, final String propertyName,
+            final Class<?>... groups) {
+        UniqueKeyValidationScope.begin();
+        try {
+            return delegate.validateProperty(object, propertyName, groups);
+        } finally {
+            UniqueKeyValidationScope.end();
+        }
+    }
+
+    @Override
+    public <T> Set<ConstraintViolation<T>> validateValue(final Class<T> beanType, final String propertyName,
+            final Object value, final Class<?>... groups) {
+        UniqueKeyValidationScope.begin();
+        try {
+            return delegate.validateValue(beanType, propertyName, value, groups);
+        } finally {
+            UniqueKeyValidationScope.end();
+        }
+    }
+
+    @Override
+    public BeanDescriptor getConstraintsForClass(final Class<?> clazz) {
+        return delegate.getConstraintsForClass(clazz);
+    }
+
+    @Override
+    public <T> T unwrap(final Class<T> type) {
+        return delegate.unwrap(type);
+    }
+
+}
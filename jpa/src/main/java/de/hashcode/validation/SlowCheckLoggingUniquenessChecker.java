@@ -0,0 +1,137 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link UniquenessChecker} that logs checks of its delegate taking longer
+ * than a threshold, with the entity class, property, if the id predicate was
+ * applied, the elapsed time and - if the delegate is an
+ * {@link UniqueKeyQueryRenderer} - the rendered query with (optionally masked)
+ * bind values.
+ * <p>
+ * Only a sample of the checks is timed (e.g. 0.01 for every 100th check), so
+ * that the overhead is negligible at high rates. To log the time of the actual
+ * queries, this decorator should be applied first, e.g.
+ * <pre>
+ * new ConstraintValidatorFactoryEMFImpl(emf,
+ *     SlowCheckLoggingUniquenessChecker.decorator(100, TimeUnit.MILLISECONDS, 0.01, true),
+ *     MemoizingUniquenessChecker.decorator());
+ * </pre>
+ * </p>
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+public class SlowCheckLoggingUniquenessChecker implements UniquenessChecker {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SlowCheckLoggingUniquenessChecker.class);
+
+    /**
+     * A random per thread, so that sampling doesn't contend on a shared seed
+     * (there's no ThreadLocalRandom in java 6).
+     */
+    private static final ThreadLocal<Random> RANDOM = new ThreadLocal<Random>() {
+        @Override
+        protected Random initialValue() {
+            return new Random();
+        }
+    };
+
+    private final UniquenessChecker delegate;
+    private final long thresholdNanos;
+    private final double sampleRate;
+    private final boolean maskBindValues;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param delegate
+     *            the checker to time.
+     * @param threshold
+     *            the time above which a check is logged.
+     * @param unit
+     *            the unit of the threshold.
+     * @param sampleRate
+     *            the fraction of checks that are timed, between 0 and 1.
+     * @param maskBindValues
+     *            if <code>true</code> bind values are not logged.
+     */
+    public SlowCheckLoggingUniquenessChecker(@Nonnull final UniquenessChecker delegate, final long threshold,
+            @Nonnull final TimeUnit unit, final double sampleRate, final boolean maskBindValues) {
+        if (sampleRate < 0 || sampleRate > 1) {
+            throw new IllegalArgumentException("The sampleRate must be between 0 and 1, but is " + sampleRate);
+        }
+        this.delegate = delegate;
+        this.thresholdNanos = unit.toNanos(threshold);
+        this.sampleRate = sampleRate;
+        this.maskBindValues = maskBindValues;
+    }
+
+    /**
+     * A {@link UniquenessCheckerDecorator} creating
+     * {@link SlowCheckLoggingUniquenessChecker}s with the given configuration.
+     *
+     * @see #SlowCheckLoggingUniquenessChecker(UniquenessChecker, long,
+     *      TimeUnit, double, boolean)
+     */
+    public static UniquenessCheckerDecorator decorator(final long threshold, final TimeUnit unit,
+            final double sampleRate, final boolean maskBindValues) {
+        return new UniquenessCheckerDecorator() {
+            @Override
+            public UniquenessChecker decorate(final UniquenessChecker uniquenessChecker) {
+                return new SlowCheckLoggingUniquenessChecker(uniquenessChecker, threshold, unit, sampleRate,
+                        maskBindValues);
+            }
+        };
+    }
+
+    @Override
+    public boolean exists(final UniqueKeyQuery query) {
+        if (!LOG.isWarnEnabled() || sampleRate < 1 && RANDOM.get().nextDouble() >= sampleRate) {
+            return delegate.exists(query);
+        }
+        final long start = System.nanoTime();
+        try {
+            return delegate.exists(query);
+        } finally {
+            final long elapsed = System.nanoTime() - start;
+            if (elapsed > thresholdNanos) {
+                LOG.warn(createMessage(query, elapsed));
+            }
+        }
+    }
+
+    @Nonnull
+    private String createMessage(@Nonnull final UniqueKeyQuery query, final long elapsedNanos) {
+        final StringBuilder sb = new StringBuilder("Slow uniqueness check took ");
+        sb.append(TimeUnit.NANOSECONDS.toMillis(elapsedNanos)).append(" ms: entity ");
+        sb.append(query.getEntityClass().getName()).append(", property ").append(query.getProperty());
+        sb.append(", scope ").append(query.getScope().keySet());
+        sb.append(", id predicate ").append(query.getIdValue() != null ? "applied" : "not applied");
+        if (delegate instanceof UniqueKeyQueryRenderer) {
+            sb.append(", query: ").append(((UniqueKeyQueryRenderer) delegate).render(query, maskBindValues));
+        }
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,355 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A simple {@link UniqueKeyInvalidationChannel} that sends changes as udp
+ * datagrams to a static list of peers. Delivery is not guaranteed, so caches
+ * should expire their entries additionally (see {@link UniqueKeyCache}).
+ * <p>
+ * Changes are sent in a fixed binary format (no java serialization): the
+ * entity class name, the property and the value, if it's a string, a number,
+ * a boolean, a character, a {@link Date} or an enum constant. Other values
+ * (e.g. associated entities, timestamps or custom value types) are sent as
+ * unknown, so that the receivers treat all values of the property as changed
+ * (see {@link UniqueKeyChange#withUnknownValue(String, String)}). Packets that
+ * don't come from one of the peers or can't be decoded are dropped.
+ * </p>
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+public class SocketInvalidationChannel implements UniqueKeyInvalidationChannel {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SocketInvalidationChannel.class);
+
+    private static final int MAX_PACKET_SIZE = 8192;
+
+    private static final byte FORMAT_VERSION = 1;
+
+    private static final byte TYPE_NULL = 0;
+    private static final byte TYPE_STRING = 1;
+    private static final byte TYPE_LONG = 2;
+    private static final byte TYPE_INTEGER = 3;
+    private static final byte TYPE_SHORT = 4;
+    private static final byte TYPE_BYTE = 5;
+    private static final byte TYPE_BOOLEAN = 6;
+    private static final byte TYPE_CHARACTER = 7;
+    private static final byte TYPE_DOUBLE = 8;
+    private static final byte TYPE_FLOAT = 9;
+    private static final byte TYPE_BIG_DECIMAL = 10;
+    private static final byte TYPE_BIG_INTEGER = 11;
+    private static final byte TYPE_DATE = 12;
+    private static final byte TYPE_ENUM = 13;
+    private static final byte TYPE_UNKNOWN = 14;
+
+    private final DatagramSocket socket;
+    private final List<InetSocketAddress> peers = new CopyOnWriteArrayList<InetSocketAddress>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+
+    /**
+     * Creates a new channel listening on the given port.
+     *
+     * @param port
+     *            the local port, <code>0</code> for an ephemeral port.
+     * @param peers
+     *            the other nodes.
+     */
+    public SocketInvalidationChannel(final int port, @Nonnull final InetSocketAddress... peers)
+            throws SocketException {
+        socket = new DatagramSocket(port);
+        for (final InetSocketAddress peer : peers) {
+            addPeer(peer);
+        }
+        final Thread receiver = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                receive();
+            }
+        }, "SocketInvalidationChannel-" + socket.getLocalPort());
+        receiver.setDaemon(true);
+        receiver.start();
+    }
+
+    /**
+     * Adds another node that changes are published to and accepted from.
+     */
+    public void addPeer(@Nonnull final InetSocketAddress peer) {
+        peers.add(peer);
+    }
+
+    /**
+     * The port this channel is listening on.
+     */
+    public int getLocalPort() {
+        return socket.getLocalPort();
+    }
+
+    @Override
+    public void publish(final UniqueKeyChange change) {
+        LoopbackInvalidationChannel.notifyListeners(listeners, change);
+        final byte[] data;
+        try {
+            data = encode(change);
+        } catch (final IOException e) {
+            LOG.warn("Could not encode the change of " + describe(change) + ", it's not published to other nodes.", e);
+            return;
+        }
+        for (final InetSocketAddress peer : peers) {
+            try {
+                socket.send(new DatagramPacket(data, data.length, peer));
+            } catch (final IOException e) {
+                LOG.warn("Could not publish the change of " + describe(change) + " to " + peer + ".", e);
+            }
+        }
+    }
+
+    /**
+     * The changed key without its value, which must not end up in logs.
+     */
+    @Nonnull
+    private static String describe(@Nonnull final UniqueKeyChange change) {
+        return change.getEntityClassName() + "." + change.getProperty();
+    }
+
+    @Override
+    public void addListener(final Listener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void close() {
+        socket.close();
+        listeners.clear();
+    }
+
+    private void receive() {
+        final byte[] buffer = new byte[MAX_PACKET_SIZE];
+        while (!socket.isClosed()) {
+            final DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+            try {
+                socket.receive(packet);
+                if (!isPeer(packet.getSocketAddress())) {
+                    LOG.warn("Dropped packet from " + packet.getSocketAddress() + ", which is no peer.");
+                    continue;
+                }
+                final UniqueKeyChange change = decode(packet.getData(), packet.getOffset(), packet.getLength());
+                LoopbackInvalidationChannel.notifyListeners(listeners, change);
+            } catch (final SocketException e) {
+                // the socket was closed
+            } catch (final Exception e) {
+                LOG.warn("Could not process packet from " + packet.getSocketAddress() + ".", e);
+            }
+        }
+    }
+
+    private boolean isPeer(@CheckForNull final SocketAddress address) {
+        if (!(address instanceof InetSocketAddress)) {
+            return false;
+        }
+        final InetSocketAddress sender = (InetSocketAddress) address;
+        for (final InetSocketAddress peer : peers) {
+            if (peer.getPort() == sender.getPort() && peer.getAddress() != null
+                    && peer.getAddress().equals(sender.getAddress())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Encodes the given change in the wire format of this channel.
+     */
+    @Nonnull
+    static byte[] encode(@Nonnull final UniqueKeyChange change) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(FORMAT_VERSION);
+        out.writeUTF(change.getEntityClassName());
+        out.writeUTF(change.getProperty());
+        final Object value = change.getValue();
+        if (!change.isValueKnown()) {
+            out.writeByte(TYPE_UNKNOWN);
+        } else if (value == null) {
+            out.writeByte(TYPE_NULL);
+        } else if (value instanceof String) {
+            out.writeByte(TYPE_STRING);
+            out.writeUTF((String) value);
+        } else if (value instanceof Long) {
+            out.writeByte(TYPE_LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(TYPE_INTEGER);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Short) {
+            out.writeByte(TYPE_SHORT);
+            out.writeShort((Short) value);
+        } else if (value instanceof Byte) {
+            out.writeByte(TYPE_BYTE);
+            out.writeByte((Byte) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte(TYPE_BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof Character) {
+            out.writeByte(TYPE_CHARACTER);
+            out.writeChar((Character) value);
+        } else if (value instanceof Double) {
+            out.writeByte(TYPE_DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof Float) {
+            out.writeByte(TYPE_FLOAT);
+            out.writeFloat((Float) value);
+        } else if (value instanceof BigDecimal) {
+            out.writeByte(TYPE_BIG_DECIMAL);
+            out.writeUTF(value.toString());
+        } else if (value instanceof BigInteger) {
+            out.writeByte(TYPE_BIG_INTEGER);
+            out.writeUTF(value.toString());
+        } else if (value.getClass() == Date.class) {
+            out.writeByte(TYPE_DATE);
+            out.writeLong(((Date) value).getTime());
+        } else if (value instanceof Enum<?>) {
+            out.writeByte(TYPE_ENUM);
+            out.writeUTF(((Enum<?>) value).getDeclaringClass().getName());
+            out.writeUTF(((Enum<?>) value).name());
+        } else {
+            out.writeByte(TYPE_UNKNOWN);
+        }
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decodes a change encoded via {@link #encode(UniqueKeyChange)}, no
+     * classes are loaded except for the class of an enum value.
+     *
+     * @throws IOException
+     *             thrown if the data is no valid change.
+     */
+    @Nonnull
+    static UniqueKeyChange decode(@Nonnull final byte[] data, final int offset, final int length) throws IOException {
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, offset, length));
+        final byte version = in.readByte();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported format version " + version + ".");
+        }
+        final String entityClassName = in.readUTF();
+        final String property = in.readUTF();
+        final byte type = in.readByte();
+        if (type == TYPE_UNKNOWN) {
+            if (in.available() > 0) {
+                throw new IOException("Unexpected trailing data.");
+            }
+            return UniqueKeyChange.withUnknownValue(entityClassName, property);
+        }
+        final Object value;
+        switch (type) {
+        case TYPE_NULL:
+            value = null;
+            break;
+        case TYPE_STRING:
+            value = in.readUTF();
+            break;
+        case TYPE_LONG:
+            value = in.readLong();
+            break;
+        case TYPE_INTEGER:
+            value = in.readInt();
+            break;
+        case TYPE_SHORT:
+            value = in.readShort();
+            break;
+        case TYPE_BYTE:
+            value = in.readByte();
+            break;
+        case TYPE_BOOLEAN:
+            value = in.readBoolean();
+            break;
+        case TYPE_CHARACTER:
+            value = in.readChar();
+            break;
+        case TYPE_DOUBLE:
+            value = in.readDouble();
+            break;
+        case TYPE_FLOAT:
+            value = in.readFloat();
+            break;
+        case TYPE_BIG_DECIMAL:
+            value = new BigDecimal(in.readUTF());
+            break;
+        case TYPE_BIG_INTEGER:
+            value = new BigInteger(in.readUTF());
+            break;
+        case TYPE_DATE:
+            value = new Date(in.readLong());
+            break;
+        case TYPE_ENUM:
+            value = toEnum(in.readUTF(), in.readUTF());
+            break;
+        default:
+            throw new IOException("Unsupported value type " + type + ".");
+        }
+        if (in.available() > 0) {
+            throw new IOException("Unexpected trailing data.");
+        }
+        return new UniqueKeyChange(entityClassName, property, value);
+    }
+
+    /**
+     * Resolves the enum constant, the class is not initialized if it's no
+     * enum.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    @Nonnull
+    private static Object toEnum(@Nonnull final String className, @Nonnull final String name) throws IOException {
+        final Class<?> clazz;
+        try {
+            clazz = Class.forName(className, false, SocketInvalidationChannel.class.getClassLoader());
+        } catch (final ClassNotFoundException e) {
+            throw new IOException("Unknown enum class " + className + ".");
+        }
+        if (!clazz.isEnum()) {
+            throw new IOException(className + " is no enum.");
+        }
+        try {
+            return Enum.valueOf((Class) clazz, name);
+        } catch (final IllegalArgumentException e) {
+            throw new IOException("Unknown constant " + name + " of " + className + ".");
+        }
+    }
+
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import javax.validation.Constraint;
+import javax.validation.Payload;
+
+/**
+ * Marks an entity property (field or getter) as unique, like a
+ * {@link UniqueKey} on the entity but checked per property, so that
+ * {@link javax.validation.Validator#validateProperty(Object, String, Class...)}
+ * (e.g. for a partial update) runs only the query of this property.
+ * <p>
+ * <strong>The uniqueness is only checked when validating via an
+ * {@link UniqueCheckingValidator}</strong>: as a property constraint doesn't
+ * know the entity owning the value, the check is done by the
+ * {@link UniqueCheckingValidator} which decorates the
+ * {@link javax.validation.Validator}, the {@link UniqueValidator} itself
+ * accepts any value. If it's validated by another validator whose
+ * {@link javax.validation.ConstraintValidatorFactory} provides a
+ * {@link UniquenessChecker} (e.g. the {@link ConstraintValidatorFactoryEMFImpl}),
+ * the {@link UniqueValidator} fails with an {@link IllegalStateException};
+ * otherwise (e.g. the default validation of the jpa provider on persist) it
+ * logs a warning (once). Use {@link UniqueKey} where the validator can't be
+ * decorated.
+ * <code>null</code> values are valid.
+ * </p>
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+@Constraint(validatedBy = { UniqueValidator.class })
+@Target({ ElementType.FIELD, ElementType.METHOD })
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface Unique {
+
+    /**
+     * @return the properties the value is unique within, e.g. a tenant or
+     *         parent entity, see {@link UniqueKey#scope()}.
+     */
+    String[] scope() default {};
+
+    String message() default "{validation.constraints.UniqueKey.message}";
+
+    Class<?>[] groups() default {};
+
+    Class<? extends Payload>[] payload() default {};
+
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import static de.hashcode.validation.ReflectionUtils.getPropertyValue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.validation.ConstraintViolation;
+import javax.validation.MessageInterpolator;
+import javax.validation.Validator;
+import javax.validation.ValidatorFactory;
+import javax.validation.groups.Default;
+import javax.validation.metadata.BeanDescriptor;
+import javax.validation.metadata.ConstraintDescriptor;
+import javax.validation.metadata.PropertyDescriptor;
+
+/**
+ * A {@link Validator} that checks the {@link Unique} properties of the
+ * validated bean in addition to the constraints checked by the given
+ * validator. The lookups are done by an {@link UniqueKeyValidator} (using its
+ * {@link UniquenessChecker} and {@link javax.persistence.metamodel.Metamodel}),
+ * violations are reported as {@link SimpleConstraintViolation}s.
+ * <ul>
+ * <li>{@link #validate(Object, Class...)} checks all {@link Unique}
+ * properties of the bean (not of cascaded beans).</li>
+ * <li>{@link #validateProperty(Object, String, Class...)} checks only the
+ * given property, i.e. runs at most one query.</li>
+ * <li>{@link #validateValue(Class, String, Object, Class...)} checks the value
+ * like for a new entity (no entity is excluded), scoped properties are not
+ * checked as the scope values are unknown.</li>
+ * </ul>
+ * A property that already violates another constraint is not checked. Groups
+ * are matched including their super interfaces, group sequences are not
+ * supported.
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+public class UniqueCheckingValidator implements Validator {
+
+    private static final Class<?>[] DEFAULT_GROUPS = { Default.class };
+
+    private final Validator delegate;
+    private final MessageInterpolator messageInterpolator;
+    private final UniqueKeyValidator uniqueKeyValidator;
+    private final ConcurrentMap<Class<?>, List<UniqueProperty>> uniqueProperties =
+            new ConcurrentHashMap<Class<?>, List<UniqueProperty>>();
+
+    /**
+     * Creates a validator for the given factory, whose
+     * {@link javax.validation.ConstraintValidatorFactory} (e.g. the
+     * {@link ConstraintValidatorFactoryEMFImpl}) provides the
+     * {@link UniqueKeyValidator} used for the lookups.
+     */
+    public UniqueCheckingValidator(@Nonnull final ValidatorFactory validatorFactory) {
+        this(validatorFactory.getValidator(), validatorFactory.getMessageInterpolator(), validatorFactory
+                .getConstraintValidatorFactory().getInstance(UniqueKeyValidator.class));
+    }
+
+    /**
+     * Creates a validator that decorates the given one.
+     *
+     * @param uniqueKeyValidator
+     *            does the lookups, it must have its {@link UniquenessChecker}
+     *            (and should have its metamodel) set.
+     */
+    public UniqueCheckingValidator(@Nonnull final Validator delegate,
+            @Nonnull final MessageInterpolator messageInterpolator,
+            @Nonnull final UniqueKeyValidator uniqueKeyValidator) {
+        if (uniqueKeyValidator.getUniquenessChecker() == null) {
+            throw new IllegalArgumentException("The UniqueKeyValidator has no UniquenessChecker, create it e.g."
+                    + " via the ConstraintValidatorFactoryEMFImpl.");
+        }
+        this.delegate = delegate;
+        this.messageInterpolator = messageInterpolator;
+        this.uniqueKeyValidator = uniqueKeyValidator;
+    }
+
+    @Override
+    public <T> Set<ConstraintViolation<T>> validate(final T object, final Class<?>... groups) {
+        final boolean nested = UniqueValidator.beginChecked();
+        try {
+            return checkUnique(object, null, delegate.validate(object, groups), groups);
+        } finally {
+            UniqueValidator.endChecked(nested);
+        }
+    }
+
+    @Override
+    public <T> Set<ConstraintViolation<T>> validateProperty(final T object, final String propertyName,
+            final Class<?>... groups) {
+        final boolean nested = UniqueValidator.beginChecked();
+        try {
+            return checkUnique(object, propertyName, delegate.validateProperty(object, propertyName, groups),
+                    groups);
+        } finally {
+            UniqueValidator.endChecked(nested);
+        }
+    }
+
+    @Override
+    public <T> Set<ConstraintViolation<T>> validateValue(final Class<T> beanType, final String propertyName,
+            final Object value, final Class<?>... groups) {
+        final Set<ConstraintViolation<T>> violations;
+        final boolean nested = UniqueValidator.beginChecked();
+        try {
+            violations = delegate.validateValue(beanType, propertyName, value, groups);
+        } finally {
+            UniqueValidator.endChecked(nested);
+        }
+        if (value == null) {
+            return violations;
+        }
+        for (final UniqueProperty property : getUniqueProperties(beanType)) {
+            if (property.name.equals(propertyName) && property.unique.scope().length == 0
+                    && isChecked(property, violations, groups)
+                    && uniqueKeyValidator.exists(beanType, property.name, value)) {
+                return withViolation(violations, property, null, beanType, value);
+            }
+        }
+        return violations;
+    }
+
+    @Override
+    public BeanDescriptor getConstraintsForClass(final Class<?> clazz) {
+        return delegate.getConstraintsForClass(clazz);
+    }
+
+    @Override
+    public <T> T unwrap(final Class<T> type) {
+        return delegate.unwrap(type);
+    }
+
+    /**
+     * Checks the unique properties of the given object.
+     *
+     * @param propertyName
+     *            the only property to check, or <code>null</code> to check
+     *            all.
+     */
+    @Nonnull
+    private <T> Set<ConstraintViolation<T>> checkUnique(@Nonnull final T object,
+            @CheckForNull final String propertyName, @Nonnull final Set<ConstraintViolation<T>> violations,
+            @Nonnull final Class<?>[] groups) {
+        @SuppressWarnings("unchecked")
+        final Class<T> beanClass = (Class<T>) object.getClass();
+        Set<ConstraintViolation<T>> result = violations;
+        for (final UniqueProperty property : getUniqueProperties(beanClass)) {
+            if (propertyName != null && !propertyName.equals(property.name)
+                    || !isChecked(property, violations, groups)) {
+                continue;
+            }
+            final Object value;
+            try {
+                value = getPropertyValue(object, property.name);
+            } catch (final Exception e) {
+                throw new RuntimeException("Could not read the @Unique property '" + property.name + "' of bean "
+                        + beanClass + ".", e);
+            }
+            if (value != null && uniqueKeyValidator.exists(object, property.name, property.unique.scope())) {
+                result = withViolation(result, property, object, beanClass, value);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Determines if the given property must be checked for the given groups,
+     * which is not the case if it already has a violation.
+     */
+    private static boolean isChecked(@Nonnull final UniqueProperty property,
+            @Nonnull final Set<? extends ConstraintViolation<?>> violations, @Nonnull final Class<?>[] groups) {
+        if (!isInGroups(property.descriptor, groups)) {
+            return false;
+        }
+        for (final ConstraintViolation<?> violation : violations) {
+            if (property.name.equals(violation.getPropertyPath().toString())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isInGroups(@Nonnull final ConstraintDescriptor<?> descriptor,
+            @Nonnull final Class<?>[] groups) {
+        for (final Class<?> group : groups.length == 0 ? DEFAULT_GROUPS : groups) {
+            for (final Class<?> constraintGroup : descriptor.getGroups()) {
+                if (constraintGroup.isAssignableFrom(group)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Nonnull
+    private <T> Set<ConstraintViolation<T>> withViolation(@Nonnull final Set<ConstraintViolation<T>> violations,
+            @Nonnull final UniqueProperty property, @CheckForNull final T object, @Nonnull final Class<T> beanClass,
+            @Nonnull final Object value) {
+        final String messageTemplate = property.unique.message();
+        final String message = messageInterpolator.interpolate(messageTemplate,
+                new UniqueKeyViolationTranslator.Context(property.descriptor, value));
+        final Set<ConstraintViolation<T>> result = new HashSet<ConstraintViolation<T>>(violations);
+        result.add(new SimpleConstraintViolation<T>(message, messageTemplate, object, beanClass, property.name,
+                value, property.descriptor));
+        return Collections.unmodifiableSet(result);
+    }
+
+    /**
+     * The {@link Unique} properties of the given class, as determined via the
+     * metadata of the validator.
+     */
+    @Nonnull
+    private List<UniqueProperty> getUniqueProperties(@Nonnull final Class<?> beanClass) {
+        List<UniqueProperty> result = uniqueProperties.get(beanClass);
+        if (result == null) {
+            result = new ArrayList<UniqueProperty>();
+            for (final PropertyDescriptor property : delegate.getConstraintsForClass(beanClass)
+                    .getConstrainedProperties()) {
+                for (final ConstraintDescriptor<?> descriptor : property.getConstraintDescriptors()) {
+                    if (descriptor.getAnnotation() instanceof Unique) {
+                        result.add(new UniqueProperty(property.getPropertyName(), descriptor));
+                    }
+                }
+            }
+            uniqueProperties.put(beanClass, result);
+        }
+        return result;
+    }
+
+    private static final class UniqueProperty {
+
+        private final String name;
+        private final ConstraintDescriptor<?> descriptor;
+        private final Unique unique;
+
+        UniqueProperty(final String name, final ConstraintDescriptor<?> descriptor) {
+            this.name = name;
+            this.descriptor = descriptor;
+            this.unique = (Unique) descriptor.getAnnotation();
+        }
+
+    }
+
+}
@@ -29,6 +29,27 @@ import javax.validation.Payload;
  * entity instances. The validator {@link UniqueKeyValidator} allows the
  * annotated bean to use read-only properties (immutable). Also an update of the
  * entity is allowed.
+ * <p>
+ * A key can be unique within a {@link #scope()}, e.g. the tenant or a parent
+ * entity:
+ * <pre>
+ * &#064;UniqueKey(property = "email", scope = "tenant")
+ * </pre>
+ * The scope predicates are put first in the order given, so that a composite
+ * index like <code>(tenant_id, email)</code> can be used.
+ * </p>
+ * <p>
+ * The property (and scope properties) can be nested paths like
+ * <code>account.login</code>, the {@link JpaUniquenessChecker} joins the
+ * associations so that the key is checked with a single query.
+ * </p>
+ * <p>
+ * With {@link #deferred()} no query is executed during validation, instead
+ * the database unique index is relied upon and the
+ * {@link UniqueKeyViolationTranslator} translates the violation of this index
+ * (identified via {@link #constraintName()}) into a
+ * {@link javax.validation.ConstraintViolationException}.
+ * </p>
  * 
  * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
  */
@@ -39,6 +60,24 @@ public @interface UniqueKey {
 
     String property();
 
+    /**
+     * @return the properties the key is unique within, e.g. a tenant or parent
+     *         entity. The order should match the order of the composite index.
+     */
+    String[] scope() default {};
+
+    /**
+     * @return <code>true</code> if the check is deferred to the database unique
+     *         index, i.e. the {@link UniqueKeyValidator} does nothing.
+     */
+    boolean deferred() default false;
+
+    /**
+     * @return the name of the database unique constraint/index backing this
+     *         key, used to map a violation to this key in deferred mode.
+     */
+    String constraintName() default "";
+
     String message() default "{validation.constraints.UniqueKey.message}";
 
     Class<?>[] groups() default {};
@@ -0,0 +1,396 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import static de.hashcode.validation.EntityReflectionUtils.getIdAttributeName;
+import static de.hashcode.validation.EntityReflectionUtils.getUniqueKeys;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import javax.persistence.Query;
+import javax.persistence.metamodel.Attribute;
+import javax.persistence.metamodel.EntityType;
+import javax.persistence.metamodel.Metamodel;
+
+/**
+ * Finds existing data that violates the {@link UniqueKey}s of an entity class,
+ * e.g. before a unique key (and its unique index) is added to an existing
+ * table.
+ * <p>
+ * Duplicates are determined in the database with an aggregation query per
+ * unique key (<code>GROUP BY &lt;scope&gt;, &lt;property&gt; HAVING COUNT(e) &gt; 1</code>),
+ * no entities are loaded. The duplicate keys are read page by page (see
+ * {@link #setPageSize(int)}), each page with a new {@link EntityManager}
+ * obtained from the {@link EntityManagerProvider}, and passed to the
+ * {@link DuplicateHandler} one by one together with the ids of the affected
+ * entities (limited to {@link #setMaxIdsPerKey(int)}), so that memory usage is
+ * bounded regardless of the table size.
+ * </p>
+ * <p>
+ * Pages are read via keyset paging (the next page starts after the last key
+ * of the previous page, so with an index on the key columns the database
+ * doesn't aggregate the skipped keys again), only keys with a boolean or enum
+ * column are paged by offset. As <code>null</code>s can't be compared, each
+ * combination of <code>null</code> scope values is paged separately. The ids of a page are read with one query (plus
+ * one per key with more than {@link #setMaxIdsPerKey(int)} duplicates), the
+ * unique property values of a page are bound as <code>IN</code> list, so the
+ * page size must not exceed the database's limit for these (e.g. 1000 with
+ * oracle).
+ * </p>
+ * <p>
+ * <code>null</code> values of the unique property are ignored (as by unique
+ * indexes), associated entities are grouped by their id. Nested properties
+ * are navigated with inner joins, so rows where an intermediate association
+ * is <code>null</code> are not considered.
+ * </p>
+ * <p>
+ * There's also a command line interface, printing all duplicates of the given
+ * entity classes:
+ * </p>
+ * <pre>
+ * java de.hashcode.validation.UniqueKeyAuditor &lt;persistenceUnit&gt; &lt;entityClass&gt;...
+ * </pre>
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+public class UniqueKeyAuditor {
+
+    /**
+     * Receives the duplicates found by the {@link UniqueKeyAuditor}.
+     */
+    public interface DuplicateHandler {
+
+        void onDuplicate(@Nonnull UniqueKeyDuplicate duplicate);
+
+    }
+
+    private static final int DEFAULT_PAGE_SIZE = 500;
+    private static final int DEFAULT_MAX_IDS_PER_KEY = 100;
+
+    private final EntityManagerProvider entityManagerProvider;
+    private int pageSize = DEFAULT_PAGE_SIZE;
+    private int maxIdsPerKey = DEFAULT_MAX_IDS_PER_KEY;
+
+    public UniqueKeyAuditor(@Nonnull final EntityManagerFactory entityManagerFactory) {
+        this(EntityManagerProviders.perCheck(entityManagerFactory));
+    }
+
+    /**
+     * Creates an auditor that obtains an {@link EntityManager} for each page
+     * from the given provider.
+     */
+    public UniqueKeyAuditor(@Nonnull final EntityManagerProvider entityManagerProvider) {
+        this.entityManagerProvider = entityManagerProvider;
+    }
+
+    /**
+     * Sets the number of duplicate keys read per query, by default
+     * {@value #DEFAULT_PAGE_SIZE}.
+     */
+    public void setPageSize(final int pageSize) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("The page size must be positive, but was " + pageSize);
+        }
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Sets the maximum number of ids reported per duplicate key, by default
+     * {@value #DEFAULT_MAX_IDS_PER_KEY}.
+     */
+    public void setMaxIdsPerKey(final int maxIdsPerKey) {
+        if (maxIdsPerKey < 0) {
+            throw new IllegalArgumentException("The max ids per key must not be negative, but was "
+                    + maxIdsPerKey);
+        }
+        this.maxIdsPerKey = maxIdsPerKey;
+    }
+
+    /**
+     * Audits all {@link UniqueKey}s declared on the given entity class (and
+     * its superclasses).
+     *
+     * @return the number of duplicate keys passed to the handler.
+     */
+    public long audit(@Nonnull final Class<?> entityClass, @Nonnull final DuplicateHandler handler) {
+        long result = 0;
+        for (final UniqueKey uniqueKey : getUniqueKeys(entityClass)) {
+            result += audit(entityClass, uniqueKey, handler);
+        }
+        return result;
+    }
+
+    /**
+     * Audits the given {@link UniqueKey} of the given entity class.
+     *
+     * @return the number of duplicate keys passed to the handler.
+     */
+    public long audit(@Nonnull final Class<?> entityClass, @Nonnull final UniqueKey uniqueKey,
+            @Nonnull final DuplicateHandler handler) {
+        long result = 0;
+        // each combination of null scope values is paged separately, as nulls can't be compared
+        for (int nullScopes = 0; nullScopes < 1 << uniqueKey.scope().length; nullScopes++) {
+            Object[] lastKey = null;
+            for (int offset = 0;; offset += pageSize) {
+                final List<Object[]> keys = auditPage(entityClass, uniqueKey, nullScopes, lastKey, offset, handler);
+                result += keys.size();
+                if (keys.size() < pageSize) {
+                    break;
+                }
+                lastKey = keys.get(keys.size() - 1);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reads and reports the page of duplicate keys following the given key
+     * (keyset paging) or - if a key column can't be compared with
+     * <code>&gt;</code> in jpql (booleans and enums) - at the given offset.
+     *
+     * @param nullScopes
+     *            the bit mask of the scope properties that are
+     *            <code>null</code> for this page.
+     * @return the values of the grouped key columns of the duplicates.
+     */
+    @Nonnull
+    private List<Object[]> auditPage(final Class<?> entityClass, final UniqueKey uniqueKey, final int nullScopes,
+            @CheckForNull final Object[] lastKey, final int offset, final DuplicateHandler handler) {
+        final EntityManager entityManager = entityManagerProvider.getEntityManager();
+        try {
+            final Metamodel metamodel = entityManager.getMetamodel();
+            final EntityType<?> entityType = metamodel.entity(entityClass);
+            final List<String> scopeProperties = new ArrayList<String>();
+            // the grouped (not null) key columns, the property comes last
+            final List<String> columns = new ArrayList<String>();
+            final StringBuilder where = new StringBuilder();
+            boolean keyset = true;
+            for (int i = 0; i < uniqueKey.scope().length; i++) {
+                final String scopeProperty = toQueryProperty(metamodel, entityClass, uniqueKey.scope()[i]);
+                scopeProperties.add(scopeProperty);
+                final boolean nullScope = (nullScopes & 1 << i) != 0;
+                where.append("e.").append(scopeProperty).append(nullScope ? " IS NULL AND " : " IS NOT NULL AND ");
+                if (!nullScope) {
+                    columns.add(scopeProperty);
+                    keyset &= isOrderable(metamodel, entityClass, scopeProperty);
+                }
+            }
+            final String property = toQueryProperty(metamodel, entityClass, uniqueKey.property());
+            where.append("e.").append(property).append(" IS NOT NULL");
+            columns.add(property);
+            keyset &= isOrderable(metamodel, entityClass, property);
+
+            final StringBuilder select = new StringBuilder();
+            for (final String column : columns) {
+                select.append(select.length() > 0 ? ", " : "").append("e.").append(column);
+            }
+            final StringBuilder jpql = new StringBuilder("SELECT ").append(select).append(", COUNT(e) FROM ")
+                    .append(entityType.getName()).append(" e WHERE ").append(where);
+            if (keyset && lastKey != null) {
+                // (c1 > ?1) OR (c1 = ?1 AND c2 > ?2) OR ...
+                jpql.append(" AND (");
+                for (int i = 0; i < columns.size(); i++) {
+                    jpql.append(i > 0 ? " OR (" : "(");
+                    for (int j = 0; j < i; j++) {
+                        jpql.append("e.").append(columns.get(j)).append(" = ?").append(j + 1).append(" AND ");
+                    }
+                    jpql.append("e.").append(columns.get(i)).append(" > ?").append(i + 1).append(')');
+                }
+                jpql.append(')');
+            }
+            jpql.append(" GROUP BY ").append(select).append(" HAVING COUNT(e) > 1 ORDER BY ").append(select);
+            final Query query = entityManager.createQuery(jpql.toString()).setMaxResults(pageSize);
+            if (!keyset) {
+                query.setFirstResult(offset);
+            } else if (lastKey != null) {
+                for (int i = 0; i < lastKey.length; i++) {
+                    query.setParameter(i + 1, lastKey[i]);
+                }
+            }
+            final List<?> rows = query.getResultList();
+
+            final List<Object[]> keys = new ArrayList<Object[]>(rows.size());
+            final List<Long> counts = new ArrayList<Long>(rows.size());
+            for (final Object row : rows) {
+                final Object[] columnValues = (Object[]) row;
+                final Object[] key = new Object[columns.size()];
+                System.arraycopy(columnValues, 0, key, 0, key.length);
+                keys.add(key);
+                counts.add(((Number) columnValues[key.length]).longValue());
+            }
+            final Map<List<Object>, List<Object>> ids = maxIdsPerKey > 0
+                ? getIds(entityManager, entityType, where.toString(), columns, keys, counts)
+                : Collections.<List<Object>, List<Object>> emptyMap();
+
+            for (int k = 0; k < keys.size(); k++) {
+                final Map<String, Object> values = new LinkedHashMap<String, Object>();
+                int column = 0;
+                for (int i = 0; i < scopeProperties.size(); i++) {
+                    values.put(scopeProperties.get(i), (nullScopes & 1 << i) != 0 ? null : keys.get(k)[column++]);
+                }
+                values.put(property, keys.get(k)[column]);
+                final List<Object> keyIds = ids.get(Arrays.asList(keys.get(k)));
+                handler.onDuplicate(new UniqueKeyDuplicate(entityClass, uniqueKey, values, counts.get(k),
+                        keyIds != null ? keyIds : new ArrayList<Object>()));
+            }
+            return keys;
+        } finally {
+            entityManagerProvider.release(entityManager);
+        }
+    }
+
+    /**
+     * Reads the ids (at most {@link #setMaxIdsPerKey(int)}) of the given keys
+     * of a page. The ids of all keys whose count doesn't exceed the limit are
+     * read with a single query (restricted via <code>IN</code> on the unique
+     * property), keys with more duplicates are queried separately with the
+     * limit applied.
+     *
+     * @param where
+     *            the restriction of the page without keyset predicate.
+     * @return the ids per key (as list of the column values).
+     */
+    @Nonnull
+    private Map<List<Object>, List<Object>> getIds(final EntityManager entityManager,
+            final EntityType<?> entityType, final String where, final List<String> columns,
+            final List<Object[]> keys, final List<Long> counts) {
+        final String idProperty = getIdAttributeName(entityType);
+        final Map<List<Object>, List<Object>> result = new HashMap<List<Object>, List<Object>>();
+        final Set<Object> propertyValues = new LinkedHashSet<Object>();
+        for (int k = 0; k < keys.size(); k++) {
+            final List<Object> key = Arrays.asList(keys.get(k));
+            if (counts.get(k) > maxIdsPerKey) {
+                result.put(key, getIds(entityManager, entityType.getName(), idProperty, where, columns, key));
+            } else {
+                result.put(key, new ArrayList<Object>());
+                propertyValues.add(key.get(key.size() - 1));
+            }
+        }
+        if (propertyValues.isEmpty()) {
+            return result;
+        }
+
+        final StringBuilder select = new StringBuilder();
+        for (final String column : columns) {
+            select.append("e.").append(column).append(", ");
+        }
+        final String jpql = "SELECT " + select + "e." + idProperty + " FROM " + entityType.getName() + " e WHERE "
+                + where + " AND e." + columns.get(columns.size() - 1) + " IN :values ORDER BY e." + idProperty;
+        final List<?> rows = entityManager.createQuery(jpql).setParameter("values", new ArrayList<Object>(propertyValues))
+                .getResultList();
+        for (final Object row : rows) {
+            final Object[] columnValues = (Object[]) row;
+            // rows of other scopes with the same property value are skipped
+            final List<Object> keyIds = result.get(Arrays.asList(columnValues).subList(0, columns.size()));
+            if (keyIds != null && keyIds.size() < maxIdsPerKey) {
+                keyIds.add(columnValues[columns.size()]);
+            }
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Nonnull
+    private List<Object> getIds(final EntityManager entityManager, final String entityName, final String idProperty,
+            final String where, final List<String> columns, final List<Object> key) {
+        final StringBuilder jpql = new StringBuilder("SELECT e.").append(idProperty).append(" FROM ")
+                .append(entityName).append(" e WHERE ").append(where);
+        for (int i = 0; i < columns.size(); i++) {
+            jpql.append(" AND e.").append(columns.get(i)).append(" = ?").append(i + 1);
+        }
+        jpql.append(" ORDER BY e.").append(idProperty);
+        final Query query = entityManager.createQuery(jpql.toString()).setMaxResults(maxIdsPerKey);
+        for (int i = 0; i < key.size(); i++) {
+            query.setParameter(i + 1, key.get(i));
+        }
+        return new ArrayList<Object>(query.getResultList());
+    }
+
+    /**
+     * Determines if the given query property can be compared with
+     * <code>&gt;</code> in jpql, which is not supported for booleans and
+     * enums.
+     */
+    private static boolean isOrderable(final Metamodel metamodel, final Class<?> entityClass,
+            final String queryProperty) {
+        Class<?> type = entityClass;
+        for (final String segment : PropertyPaths.split(queryProperty)) {
+            type = metamodel.managedType(type).getAttribute(segment).getJavaType();
+        }
+        return type != boolean.class && type != Boolean.class && !type.isEnum();
+    }
+
+    /**
+     * Associated entities are grouped by their id, so the query property is
+     * the path to the id of the associated entity.
+     */
+    @Nonnull
+    private static String toQueryProperty(final Metamodel metamodel, final Class<?> entityClass,
+            final String property) {
+        Class<?> type = entityClass;
+        Attribute<?, ?> attribute = null;
+        for (final String segment : PropertyPaths.split(property)) {
+            attribute = metamodel.managedType(type).getAttribute(segment);
+            type = attribute.getJavaType();
+        }
+        if (attribute != null && attribute.isAssociation() && !attribute.isCollection()) {
+            return property + '.' + getIdAttributeName(metamodel.entity(type));
+        }
+        return property;
+    }
+
+    /**
+     * Prints the duplicates of the given entity classes.
+     */
+    public static void main(final String[] args) throws ClassNotFoundException {
+        if (args.length < 2) {
+            System.err.println("Usage: " + UniqueKeyAuditor.class.getName() + " <persistenceUnit> <entityClass>...");
+            System.exit(1);
+        }
+        final EntityManagerFactory entityManagerFactory = Persistence.createEntityManagerFactory(args[0]);
+        long duplicates = 0;
+        try {
+            final UniqueKeyAuditor auditor = new UniqueKeyAuditor(entityManagerFactory);
+            for (int i = 1; i < args.length; i++) {
+                duplicates += auditor.audit(Class.forName(args[i]), new DuplicateHandler() {
+                    @Override
+                    public void onDuplicate(final UniqueKeyDuplicate duplicate) {
+                        System.out.println(duplicate.getEntityClass().getName() + " " + duplicate.getValues()
+                                + " count=" + duplicate.getCount() + " ids=" + duplicate.getIds());
+                    }
+                });
+            }
+        } finally {
+            entityManagerFactory.close();
+        }
+        System.err.println(duplicates + " duplicate keys found.");
+        System.exit(duplicates > 0 ? 2 : 0);
+    }
+
+}
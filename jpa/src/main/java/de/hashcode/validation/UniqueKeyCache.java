@@ -0,0 +1,108 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A node local cache of keys that are known to be taken, used by the
+ * {@link CachingUniquenessChecker}. Entries are removed when a matching
+ * {@link UniqueKeyChange} is received (register the cache at an
+ * {@link UniqueKeyInvalidationChannel}) and expire after a configurable time
+ * to live, in case a change got lost.
+ * <p>
+ * Only taken keys are cached, so a stale entry leads to a false violation
+ * (until it expires) but never lets a duplicate pass.
+ * </p>
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+public class UniqueKeyCache implements UniqueKeyInvalidationChannel.Listener {
+
+    private final ConcurrentMap<UniqueKeyQuery, Long> entries = new ConcurrentHashMap<UniqueKeyQuery, Long>();
+    private final long timeToLiveNanos;
+    private final int maxSize;
+
+    /**
+     * Creates a new cache.
+     *
+     * @param timeToLive
+     *            the time to live of an entry.
+     * @param unit
+     *            the unit of the time to live.
+     * @param maxSize
+     *            the max number of entries, if exceeded the cache is cleared.
+     */
+    public UniqueKeyCache(final long timeToLive, @Nonnull final TimeUnit unit, final int maxSize) {
+        this.timeToLiveNanos = unit.toNanos(timeToLive);
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Determines if the key of the given query is known to be taken.
+     */
+    public boolean isTaken(@Nonnull final UniqueKeyQuery query) {
+        final Long expires = entries.get(query);
+        if (expires == null) {
+            return false;
+        }
+        if (expires.longValue() - System.nanoTime() < 0) {
+            entries.remove(query, expires);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Remembers that the key of the given query is taken.
+     */
+    public void putTaken(@Nonnull final UniqueKeyQuery query) {
+        if (entries.size() >= maxSize) {
+            entries.clear();
+        }
+        // don't keep the validated entity
+        final UniqueKeyQuery key = new UniqueKeyQuery(null, query.getEntityClass(), query.getScope(),
+                query.getDeclaredProperty(), query.getProperty(), query.getValue(), query.getIdProperty(),
+                query.getIdValue());
+        entries.put(key, System.nanoTime() + timeToLiveNanos);
+    }
+
+    @Override
+    public void onChange(final UniqueKeyChange change) {
+        for (final Iterator<UniqueKeyQuery> iter = entries.keySet().iterator(); iter.hasNext();) {
+            if (change.affects(iter.next())) {
+                iter.remove();
+            }
+        }
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import java.io.Serializable;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+/**
+ * The change of a unique key (an entity with the given key was inserted,
+ * updated or removed), as published via an
+ * {@link UniqueKeyInvalidationChannel}.
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+public class UniqueKeyChange implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String entityClassName;
+    private final String property;
+    private final Object value;
+    private final boolean valueKnown;
+
+    public UniqueKeyChange(@Nonnull final String entityClassName, @Nonnull final String property,
+            @CheckForNull final Object value) {
+        this(entityClassName, property, value, true);
+    }
+
+    private UniqueKeyChange(@Nonnull final String entityClassName, @Nonnull final String property,
+            @CheckForNull final Object value, final boolean valueKnown) {
+        this.entityClassName = entityClassName;
+        this.property = property;
+        this.value = value;
+        this.valueKnown = valueKnown;
+    }
+
+    /**
+     * Creates a change of the given property whose value is not known (e.g.
+     * because it could not be transmitted), which affects all values of the
+     * property.
+     */
+    @Nonnull
+    public static UniqueKeyChange withUnknownValue(@Nonnull final String entityClassName,
+            @Nonnull final String property) {
+        return new UniqueKeyChange(entityClassName, property, null, false);
+    }
+
+    @Nonnull
+    public String getEntityClassName() {
+        return entityClassName;
+    }
+
+    @Nonnull
+    public String getProperty() {
+        return property;
+    }
+
+    /**
+     * The changed value, <code>null</code> if the value is <code>null</code>
+     * or not known.
+     */
+    @CheckForNull
+    public Object getValue() {
+        return value;
+    }
+
+    /**
+     * Determines if the value is known, otherwise all values of the property
+     * are affected.
+     */
+    public boolean isValueKnown() {
+        return valueKnown;
+    }
+
+    /**
+     * Determines if the given query is affected by this change. A query for
+     * the id of an associated entity (<code>property.id</code>) is always
+     * affected by a change of the association, a query of the property is
+     * always affected if the value is not known.
+     */
+    public boolean affects(@Nonnull final UniqueKeyQuery query) {
+        if (!entityClassName.equals(query.getEntityClass().getName())) {
+            return false;
+        }
+        if (query.getProperty().startsWith(property + '.')) {
+            return true;
+        }
+        return property.equals(query.getProperty())
+                && (!valueKnown || (value == null ? query.getValue() == null : value.equals(query.getValue())));
+    }
+
+    @Override
+    public int hashCode() {
+        return ((entityClassName.hashCode() * 31 + property.hashCode()) * 31 + (value == null ? 0 : value.hashCode()))
+                * 31 + (valueKnown ? 1 : 0);
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (!(obj instanceof UniqueKeyChange)) {
+            return false;
+        }
+        final UniqueKeyChange other = (UniqueKeyChange) obj;
+        return entityClassName.equals(other.entityClassName) && property.equals(other.property)
+                && (value == null ? other.value == null : value.equals(other.value)) && valueKnown == other.valueKnown;
+    }
+
+    @Override
+    public String toString() {
+        return "UniqueKeyChange [entityClassName=" + entityClassName + ", property=" + property + ", value="
+                + (valueKnown ? value : "<unknown>") + "]";
+    }
+
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A key value that is shared by several entities although it's declared as
+ * {@link UniqueKey}, as found by the {@link UniqueKeyAuditor}.
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+public class UniqueKeyDuplicate {
+
+    private final Class<?> entityClass;
+    private final UniqueKey uniqueKey;
+    private final Map<String, Object> values;
+    private final long count;
+    private final List<Object> ids;
+
+    /**
+     * Creates a new duplicate.
+     *
+     * @param values
+     *            the scope and key properties and their (shared) values, in
+     *            the order of the (composite) index.
+     * @param count
+     *            the number of entities sharing the values.
+     * @param ids
+     *            the ids of the entities sharing the values, possibly limited
+     *            to the first ones (ordered by id).
+     */
+    public UniqueKeyDuplicate(@Nonnull final Class<?> entityClass, @Nonnull final UniqueKey uniqueKey,
+            @Nonnull final Map<String, Object> values, final long count, @Nonnull final List<Object> ids) {
+        this.entityClass = entityClass;
+        this.uniqueKey = uniqueKey;
+        this.values = Collections.unmodifiableMap(new LinkedHashMap<String, Object>(values));
+        this.count = count;
+        this.ids = Collections.unmodifiableList(ids);
+    }
+
+    @Nonnull
+    public Class<?> getEntityClass() {
+        return entityClass;
+    }
+
+    @Nonnull
+    public UniqueKey getUniqueKey() {
+        return uniqueKey;
+    }
+
+    /**
+     * The scope and key properties and their values, in the order of the
+     * (composite) index. Associated entities are represented by their id (the
+     * property is the path to the id, e.g. <code>account.id</code>).
+     */
+    @Nonnull
+    public Map<String, Object> getValues() {
+        return values;
+    }
+
+    /**
+     * The number of entities sharing the values.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * The ids of the entities sharing the values, ordered by id. If the number
+     * of ids is limited (see {@link UniqueKeyAuditor#setMaxIdsPerKey(int)})
+     * this contains less than {@link #getCount()} elements.
+     */
+    @Nonnull
+    public List<Object> getIds() {
+        return ids;
+    }
+
+    @Override
+    public String toString() {
+        return "UniqueKeyDuplicate [entityClass=" + entityClass.getName() + ", values=" + values + ", count="
+                + count + ", ids=" + ids + "]";
+    }
+
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Distributes {@link UniqueKeyChange}s to the nodes of a cluster, so that node
+ * local caches like the {@link UniqueKeyCache} stay coherent. Implementations
+ * are the {@link LoopbackInvalidationChannel} (single jvm) and the
+ * {@link SocketInvalidationChannel}.
+ * <p>
+ * Changes are published by the {@link UniqueKeyLoadedStateListener}, once a
+ * channel is set via
+ * {@link UniqueKeyLoadedStateListener#setInvalidationChannel(UniqueKeyInvalidationChannel)}.
+ * </p>
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+public interface UniqueKeyInvalidationChannel {
+
+    /**
+     * Publishes the given change to all nodes, including the local one.
+     */
+    void publish(@Nonnull UniqueKeyChange change);
+
+    /**
+     * Registers a listener that's notified about changes of all nodes.
+     */
+    void addListener(@Nonnull Listener listener);
+
+    /**
+     * Releases the resources held by this channel.
+     */
+    void close();
+
+    /**
+     * Is notified about {@link UniqueKeyChange}s.
+     */
+    interface Listener {
+
+        void onChange(@Nonnull UniqueKeyChange change);
+
+    }
+
+}
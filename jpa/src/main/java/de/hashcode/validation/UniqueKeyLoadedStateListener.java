@@ -0,0 +1,211 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import static de.hashcode.validation.EntityReflectionUtils.getUniqueKeys;
+import static de.hashcode.validation.ReflectionUtils.getPropertyValue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.persistence.Persistence;
+import javax.persistence.PersistenceUtil;
+import javax.persistence.PostLoad;
+import javax.persistence.PostPersist;
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+
+/**
+ * A jpa entity listener that remembers the {@link UniqueKey} (and scope)
+ * values of an entity as they are stored in the database (i.e. after it was
+ * loaded, persisted or updated). The {@link UniqueKeyValidator} uses this
+ * snapshot to skip the query if an entity is updated without changing its key.
+ * <p>
+ * Register it for the relevant entities via
+ * <code>@EntityListeners(UniqueKeyLoadedStateListener.class)</code> or as a
+ * default entity listener in <code>orm.xml</code>.
+ * </p>
+ * <p>
+ * Snapshots are held weakly per entity instance (compared by identity), so
+ * the instances of different persistence contexts have their own snapshots.
+ * If there's no snapshot for an entity (e.g. a detached copy) the query is
+ * executed.
+ * </p>
+ * <p>
+ * Capturing the snapshot doesn't load anything: nested key or scope paths
+ * (like <code>account.login</code>) that lead through an association that's
+ * not loaded are not captured, for such keys the query is executed.
+ * </p>
+ * <p>
+ * If an {@link UniqueKeyInvalidationChannel} is set, inserted, removed and
+ * changed keys (old and new value) are published as {@link UniqueKeyChange}s.
+ * </p>
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+public class UniqueKeyLoadedStateListener {
+
+    private static final ConcurrentWeakIdentityMap<Object, Map<String, Object>> SNAPSHOTS =
+            new ConcurrentWeakIdentityMap<Object, Map<String, Object>>();
+
+    private static final PersistenceUtil PERSISTENCE_UTIL = Persistence.getPersistenceUtil();
+
+    private static volatile UniqueKeyInvalidationChannel invalidationChannel;
+
+    /**
+     * Sets the channel changes are published to, <code>null</code> to disable
+     * publishing.
+     */
+    public static void setInvalidationChannel(@CheckForNull final UniqueKeyInvalidationChannel channel) {
+        invalidationChannel = channel;
+    }
+
+    @PostLoad
+    public void postLoad(final Object entity) {
+        putSnapshot(entity, capture(entity));
+    }
+
+    @PostPersist
+    public void postPersist(final Object entity) {
+        final Map<String, Object> snapshot = capture(entity);
+        putSnapshot(entity, snapshot);
+        publishChanges(entity, null, snapshot);
+    }
+
+    @PostUpdate
+    public void postUpdate(final Object entity) {
+        final Map<String, Object> snapshot = capture(entity);
+        final Map<String, Object> previous = putSnapshot(entity, snapshot);
+        publishChanges(entity, previous, snapshot);
+    }
+
+    @PostRemove
+    public void postRemove(final Object entity) {
+        // the stored keys are removed, the current values may not be flushed
+        final Map<String, Object> previous = SNAPSHOTS.remove(entity);
+        publishChanges(entity, null, previous != null ? previous : capture(entity));
+    }
+
+    /**
+     * Determines if the given property values equal the loaded state of the
+     * given entity.
+     *
+     * @return <code>true</code> if there's a snapshot for the entity and the
+     *         values are unchanged.
+     */
+    static boolean isUnchanged(@Nonnull final Object entity, @Nonnull final Map<String, Object> values) {
+        final Map<String, Object> snapshot = SNAPSHOTS.get(entity);
+        if (snapshot == null) {
+            return false;
+        }
+        for (final Map.Entry<String, Object> entry : values.entrySet()) {
+            if (!snapshot.containsKey(entry.getKey()) || !equal(snapshot.get(entry.getKey()), entry.getValue())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @CheckForNull
+    private static Map<String, Object> putSnapshot(final Object entity, final Map<String, Object> snapshot) {
+        if (snapshot.isEmpty()) {
+            return null;
+        }
+        return SNAPSHOTS.put(entity, snapshot);
+    }
+
+    @Nonnull
+    private static Map<String, Object> capture(final Object entity) {
+        final Map<String, Object> snapshot = new HashMap<String, Object>();
+        for (final UniqueKey uniqueKey : getUniqueKeys(entity.getClass())) {
+            if (uniqueKey.deferred()) {
+                continue;
+            }
+            capture(entity, uniqueKey.property(), snapshot);
+            for (final String scopeProperty : uniqueKey.scope()) {
+                capture(entity, scopeProperty, snapshot);
+            }
+        }
+        return snapshot;
+    }
+
+    private static void capture(final Object entity, final String property, final Map<String, Object> snapshot) {
+        try {
+            Object value = entity;
+            int start = 0;
+            for (int end = property.indexOf('.'); end > 0; end = property.indexOf('.', start)) {
+                value = getPropertyValue(value, property.substring(start, end));
+                if (value == null) {
+                    snapshot.put(property, null);
+                    return;
+                }
+                if (!PERSISTENCE_UTIL.isLoaded(value)) {
+                    // don't initialize a lazy association, the key is queried then
+                    return;
+                }
+                start = end + 1;
+            }
+            snapshot.put(property, getPropertyValue(value, start == 0 ? property : property.substring(start)));
+        } catch (final Exception e) {
+            throw new RuntimeException("Could not read property '" + property + "' of " + entity.getClass() + ".", e);
+        }
+    }
+
+    /**
+     * Publishes the keys of the current state that differ from the previous
+     * state (all keys if there's no previous state), and the previous values of
+     * changed keys.
+     */
+    private static void publishChanges(final Object entity, @CheckForNull final Map<String, Object> previous,
+            final Map<String, Object> current) {
+        final UniqueKeyInvalidationChannel channel = invalidationChannel;
+        if (channel == null) {
+            return;
+        }
+        final String entityClassName = entity.getClass().getName();
+        for (final UniqueKey uniqueKey : getUniqueKeys(entity.getClass())) {
+            if (uniqueKey.deferred() || previous != null && !isChanged(uniqueKey, previous, current)) {
+                continue;
+            }
+            final Object value = current.get(uniqueKey.property());
+            channel.publish(new UniqueKeyChange(entityClassName, uniqueKey.property(), value));
+            if (previous != null && !equal(value, previous.get(uniqueKey.property()))) {
+                channel.publish(new UniqueKeyChange(entityClassName, uniqueKey.property(), previous.get(uniqueKey
+                        .property())));
+            }
+        }
+    }
+
+    private static boolean isChanged(final UniqueKey uniqueKey, final Map<String, Object> previous,
+            final Map<String, Object> current) {
+        if (!equal(previous.get(uniqueKey.property()), current.get(uniqueKey.property()))) {
+            return true;
+        }
+        for (final String scopeProperty : uniqueKey.scope()) {
+            if (!equal(previous.get(scopeProperty), current.get(scopeProperty))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean equal(final Object a, final Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+}
@@ -0,0 +1,340 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The state shared by {@link LockingUniquenessChecker}s: striped locks on
+ * unique keys (entity type, scope values, property and value) that are held
+ * from the check until the end of the (thread bound) lock scope, i.e. until
+ * the transaction that inserts or updates the validated entities completed:
+ * <pre>
+ * uniqueKeyLocks.begin();
+ * try {
+ *     // validate, persist and commit
+ * } finally {
+ *     uniqueKeyLocks.end();
+ * }
+ * </pre>
+ * This way concurrent transactions of the same node can't both pass the check
+ * for the same key. Different keys only contend if they're mapped to the same
+ * stripe. Scopes can be nested, only the outermost scope is effective. Outside
+ * of a scope no locks are taken.
+ * <p>
+ * Locks are acquired with a timeout, so that transactions locking several keys
+ * in different order can't deadlock. By default the check is executed without
+ * the lock after the timeout (and counted as timeout), so that a concurrent
+ * transaction of the same node may pass the check for the same key: the
+ * guarantee of this node is dropped, the database unique index is the last
+ * line of defense then (and a reservation is still made). With
+ * {@link #setFailOnTimeout(boolean)} the check fails instead, i.e. the key is
+ * reported as taken.
+ * </p>
+ * <p>
+ * To detect races between different nodes as well, {@link UniqueKeyReservations}
+ * can be set: keys that passed the check are reserved in a claim table until
+ * the end of the scope, a key reserved by another node is reported as taken.
+ * </p>
+ * <p>
+ * Keys are identified via the string representation of their values, so
+ * these should be simple values (or associated entities with a meaningful
+ * <code>toString</code>).
+ * </p>
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+public class UniqueKeyLocks {
+
+    private static final Logger LOG = LoggerFactory.getLogger(UniqueKeyLocks.class);
+
+    private final ReentrantLock[] stripes;
+    private final long timeoutNanos;
+    private volatile boolean failOnTimeout;
+    private volatile UniqueKeyReservations reservations;
+
+    private final ThreadLocal<Scope> current = new ThreadLocal<Scope>();
+
+    private final AtomicLong acquisitions = new AtomicLong();
+    private final AtomicLong contentions = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong reservationConflicts = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong totalHoldNanos = new AtomicLong();
+    private final AtomicLong maxHoldNanos = new AtomicLong();
+
+    /**
+     * Creates new locks.
+     *
+     * @param stripes
+     *            the number of locks, rounded up to a power of two.
+     * @param timeout
+     *            the max time to wait for a lock.
+     * @param unit
+     *            the unit of the timeout.
+     */
+    public UniqueKeyLocks(final int stripes, final long timeout, @Nonnull final TimeUnit unit) {
+        if (stripes < 1) {
+            throw new IllegalArgumentException("stripes must be positive.");
+        }
+        int size = 1;
+        while (size < stripes) {
+            size <<= 1;
+        }
+        this.stripes = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+        this.timeoutNanos = unit.toNanos(timeout);
+    }
+
+    /**
+     * Sets the reservations used to detect races with other nodes, by default
+     * there are none.
+     */
+    public void setReservations(@CheckForNull final UniqueKeyReservations reservations) {
+        this.reservations = reservations;
+    }
+
+    /**
+     * Sets whether a key that could not be locked within the timeout is
+     * reported as taken (<code>true</code>), or checked without the lock
+     * (<code>false</code>, the default).
+     */
+    public void setFailOnTimeout(final boolean failOnTimeout) {
+        this.failOnTimeout = failOnTimeout;
+    }
+
+    /**
+     * Begins a new lock scope for the current thread, or joins the current
+     * scope.
+     */
+    public void begin() {
+        Scope scope = current.get();
+        if (scope == null) {
+            scope = new Scope();
+            current.set(scope);
+        }
+        scope.depth++;
+    }
+
+    /**
+     * Ends the current lock scope, if this is the outermost scope all locks
+     * and reservations are released.
+     */
+    public void end() {
+        final Scope scope = current.get();
+        if (scope == null) {
+            throw new IllegalStateException("There's no active scope.");
+        }
+        if (--scope.depth > 0) {
+            return;
+        }
+        current.remove();
+        try {
+            if (!scope.reservedKeys.isEmpty()) {
+                scope.reservations.release(scope.reservedKeys);
+            }
+        } finally {
+            final long now = System.nanoTime();
+            for (final Entry<ReentrantLock, Long> lock : scope.locks.entrySet()) {
+                lock.getKey().unlock();
+                final long holdNanos = now - lock.getValue();
+                totalHoldNanos.addAndGet(holdNanos);
+                long max = maxHoldNanos.get();
+                while (holdNanos > max && !maxHoldNanos.compareAndSet(max, holdNanos)) {
+                    max = maxHoldNanos.get();
+                }
+            }
+        }
+    }
+
+    /**
+     * The number of locks acquired.
+     */
+    public long getAcquisitions() {
+        return acquisitions.get();
+    }
+
+    /**
+     * The number of lock acquisitions that had to wait for another thread.
+     */
+    public long getContentions() {
+        return contentions.get();
+    }
+
+    /**
+     * The number of locks that could not be acquired within the timeout.
+     */
+    public long getTimeouts() {
+        return timeouts.get();
+    }
+
+    /**
+     * The number of keys that were reserved by another node.
+     */
+    public long getReservationConflicts() {
+        return reservationConflicts.get();
+    }
+
+    /**
+     * The total time spent waiting for locks.
+     */
+    public long getTotalWaitTime(@Nonnull final TimeUnit unit) {
+        return unit.convert(totalWaitNanos.get(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * The total time locks were held.
+     */
+    public long getTotalHoldTime(@Nonnull final TimeUnit unit) {
+        return unit.convert(totalHoldNanos.get(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * The max time a lock was held.
+     */
+    public long getMaxHoldTime(@Nonnull final TimeUnit unit) {
+        return unit.convert(maxHoldNanos.get(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Locks the key of the given query for the current scope, if there is
+     * one.
+     *
+     * @return <code>false</code> if the key could not be locked within the
+     *         timeout and timeouts fail the check, see
+     *         {@link #setFailOnTimeout(boolean)}.
+     */
+    boolean lock(@Nonnull final UniqueKeyQuery query) {
+        final Scope scope = current.get();
+        if (scope == null) {
+            return true;
+        }
+        final String key = getKey(query);
+        final ReentrantLock lock = stripes[spread(key.hashCode()) & stripes.length - 1];
+        if (scope.locks.containsKey(lock)) {
+            return true;
+        }
+        if (!lock.tryLock()) {
+            contentions.incrementAndGet();
+            final long start = System.nanoTime();
+            boolean locked;
+            try {
+                locked = lock.tryLock(timeoutNanos, TimeUnit.NANOSECONDS);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                locked = false;
+            }
+            totalWaitNanos.addAndGet(System.nanoTime() - start);
+            if (!locked) {
+                timeouts.incrementAndGet();
+                final boolean fail = failOnTimeout;
+                LOG.warn("Could not lock " + query.describeKey() + " within "
+                        + TimeUnit.NANOSECONDS.toMillis(timeoutNanos) + " ms, "
+                        + (fail ? "reporting the key as taken." : "checking without lock."));
+                return !fail;
+            }
+        }
+        acquisitions.incrementAndGet();
+        scope.locks.put(lock, System.nanoTime());
+        return true;
+    }
+
+    /**
+     * Reserves the key of the given query (locked via
+     * {@link #lock(UniqueKeyQuery)}) for the current scope, if there is one
+     * and reservations are configured.
+     *
+     * @return <code>false</code> if the key is reserved by another node.
+     */
+    boolean reserve(@Nonnull final UniqueKeyQuery query) {
+        final UniqueKeyReservations reservations = this.reservations;
+        final Scope scope = current.get();
+        if (reservations == null || scope == null) {
+            return true;
+        }
+        final String key = getKey(query);
+        if (scope.reservedKeys.contains(key)) {
+            return true;
+        }
+        if (!reservations.reserve(key)) {
+            reservationConflicts.incrementAndGet();
+            return false;
+        }
+        scope.reservations = reservations;
+        scope.reservedKeys.add(key);
+        return true;
+    }
+
+    /**
+     * Creates the key for the given query: a hash of the entity type, scope,
+     * property and value.
+     */
+    @Nonnull
+    static String getKey(@Nonnull final UniqueKeyQuery query) {
+        final StringBuilder sb = new StringBuilder(query.getEntityClass().getName());
+        for (final Entry<String, Object> scope : query.getScope().entrySet()) {
+            sb.append('\0').append(scope.getKey()).append('=').append(scope.getValue());
+        }
+        sb.append('\0').append(query.getProperty()).append('=').append(query.getValue());
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-1").digest(sb.toString().getBytes("UTF-8"));
+            final StringBuilder result = new StringBuilder(digest.length * 2);
+            for (final byte b : digest) {
+                result.append(Character.forDigit(b >> 4 & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return result.toString();
+        } catch (final NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-1 is not supported.", e);
+        } catch (final UnsupportedEncodingException e) {
+            throw new RuntimeException("UTF-8 is not supported.", e);
+        }
+    }
+
+    private static int spread(final int hash) {
+        return hash ^ hash >>> 16;
+    }
+
+    /**
+     * The locks and reservations of a thread.
+     */
+    private static final class Scope {
+
+        private final Map<ReentrantLock, Long> locks = new LinkedHashMap<ReentrantLock, Long>();
+        private final List<String> reservedKeys = new ArrayList<String>();
+        private UniqueKeyReservations reservations;
+        private int depth;
+
+    }
+
+}
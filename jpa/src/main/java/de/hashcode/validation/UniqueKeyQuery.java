@@ -0,0 +1,216 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+/**
+ * Describes a single uniqueness lookup as performed by a
+ * {@link UniquenessChecker}: is there an entity of the given type with the
+ * given property value (and the given scope values), that is not the entity
+ * with the given id?
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+public class UniqueKeyQuery {
+
+    private final Object entity;
+    private final Class<?> entityClass;
+    private final Map<String, Object> scope;
+    private final String declaredProperty;
+    private final String property;
+    private final Object value;
+    private final String idProperty;
+    private final Object idValue;
+
+    /**
+     * Creates a new query.
+     *
+     * @param entityClass
+     *            the entity type to query.
+     * @param property
+     *            the name of the unique property.
+     * @param value
+     *            the value of the unique property, may be <code>null</code>.
+     * @param idProperty
+     *            the name of the id property.
+     * @param idValue
+     *            the id of the validated entity, <code>null</code> if the
+     *            entity was not yet persisted (then no entity is excluded).
+     */
+    public UniqueKeyQuery(@Nonnull final Class<?> entityClass, @Nonnull final String property,
+            @CheckForNull final Object value, @Nonnull final String idProperty, @CheckForNull final Object idValue) {
+        this(null, entityClass, Collections.<String, Object> emptyMap(), property, value, idProperty, idValue);
+    }
+
+    /**
+     * Creates a new query for a key that's unique within the given scope.
+     *
+     * @param scope
+     *            the scope properties and their values, in the order of the
+     *            (composite) index.
+     * @see #UniqueKeyQuery(Class, String, Object, String, Object)
+     */
+    public UniqueKeyQuery(@Nonnull final Class<?> entityClass, @Nonnull final Map<String, Object> scope,
+            @Nonnull final String property, @CheckForNull final Object value, @Nonnull final String idProperty,
+            @CheckForNull final Object idValue) {
+        this(null, entityClass, scope, property, value, idProperty, idValue);
+    }
+
+    /**
+     * Creates a new query for the given (validated) entity.
+     *
+     * @param entity
+     *            the validated entity, may be <code>null</code>. It's not part
+     *            of the query itself (not considered by
+     *            {@link #equals(Object)}), but allows to detect duplicates
+     *            within an object graph.
+     * @see #UniqueKeyQuery(Class, Map, String, Object, String, Object)
+     */
+    public UniqueKeyQuery(@CheckForNull final Object entity, @Nonnull final Class<?> entityClass,
+            @Nonnull final Map<String, Object> scope, @Nonnull final String property,
+            @CheckForNull final Object value, @Nonnull final String idProperty, @CheckForNull final Object idValue) {
+        this(entity, entityClass, scope, property, property, value, idProperty, idValue);
+    }
+
+    /**
+     * Creates a new query for the given (validated) entity, for a key that's
+     * queried via another property than declared (e.g. the id of an
+     * associated entity).
+     *
+     * @param declaredProperty
+     *            the property as declared by the unique key, like
+     *            {@link #getEntity()} it's not part of the query itself.
+     * @param property
+     *            the queried property, e.g. <code>owner.id</code> for the
+     *            declared property <code>owner</code>.
+     * @see #UniqueKeyQuery(Object, Class, Map, String, Object, String, Object)
+     */
+    public UniqueKeyQuery(@CheckForNull final Object entity, @Nonnull final Class<?> entityClass,
+            @Nonnull final Map<String, Object> scope, @Nonnull final String declaredProperty,
+            @Nonnull final String property, @CheckForNull final Object value, @Nonnull final String idProperty,
+            @CheckForNull final Object idValue) {
+        this.entity = entity;
+        this.entityClass = entityClass;
+        this.scope = Collections.unmodifiableMap(new LinkedHashMap<String, Object>(scope));
+        this.declaredProperty = declaredProperty;
+        this.property = property;
+        this.value = value;
+        this.idProperty = idProperty;
+        this.idValue = idValue;
+    }
+
+    /**
+     * The validated entity, if known.
+     */
+    @CheckForNull
+    public Object getEntity() {
+        return entity;
+    }
+
+    @Nonnull
+    public Class<?> getEntityClass() {
+        return entityClass;
+    }
+
+    /**
+     * The scope properties and their values, in the order of the (composite)
+     * index.
+     */
+    @Nonnull
+    public Map<String, Object> getScope() {
+        return scope;
+    }
+
+    /**
+     * The property as declared by the unique key, which differs from the
+     * queried {@link #getProperty() property} if an associated entity is
+     * queried by its id.
+     */
+    @Nonnull
+    public String getDeclaredProperty() {
+        return declaredProperty;
+    }
+
+    @Nonnull
+    public String getProperty() {
+        return property;
+    }
+
+    @CheckForNull
+    public Object getValue() {
+        return value;
+    }
+
+    @Nonnull
+    public String getIdProperty() {
+        return idProperty;
+    }
+
+    @CheckForNull
+    public Object getIdValue() {
+        return idValue;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = entityClass.hashCode();
+        result = 31 * result + scope.hashCode();
+        result = 31 * result + property.hashCode();
+        result = 31 * result + (value == null ? 0 : value.hashCode());
+        result = 31 * result + idProperty.hashCode();
+        result = 31 * result + (idValue == null ? 0 : idValue.hashCode());
+        return result;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof UniqueKeyQuery)) {
+            return false;
+        }
+        final UniqueKeyQuery other = (UniqueKeyQuery) obj;
+        return entityClass.equals(other.entityClass) && scope.equals(other.scope) && property.equals(other.property)
+                && (value == null ? other.value == null : value.equals(other.value))
+                && idProperty.equals(other.idProperty)
+                && (idValue == null ? other.idValue == null : idValue.equals(other.idValue));
+    }
+
+    /**
+     * Describes the queried key without any values (neither the property, the
+     * scope nor the id values), for log and exception messages that must not
+     * contain user data.
+     */
+    @Nonnull
+    public String describeKey() {
+        return "UniqueKeyQuery [entityClass=" + entityClass.getName() + ", scope=" + scope.keySet() + ", property="
+                + property + "]";
+    }
+
+    @Override
+    public String toString() {
+        return "UniqueKeyQuery [entityClass=" + entityClass.getName() + ", scope=" + scope + ", property=" + property
+                + ", value=" + value + ", idProperty=" + idProperty + ", idValue=" + idValue + "]";
+    }
+
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Is implemented by {@link UniquenessChecker}s that can render the query they
+ * execute for an {@link UniqueKeyQuery}, e.g. for logging.
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+public interface UniqueKeyQueryRenderer {
+
+    /**
+     * Renders the (sql or jpql) query executed for the given
+     * {@link UniqueKeyQuery} followed by the bind values.
+     *
+     * @param maskBindValues
+     *            if <code>true</code> the bind values are masked, so that no
+     *            (personal) data is logged.
+     */
+    @Nonnull
+    String render(@Nonnull UniqueKeyQuery query, boolean maskBindValues);
+
+}
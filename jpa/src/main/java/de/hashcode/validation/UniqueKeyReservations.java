@@ -0,0 +1,130 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reserves unique keys in a claim table, so that concurrent checks of the same
+ * key on different nodes can be detected (see {@link UniqueKeyLocks}). The
+ * table must have a primary key (or unique index) on the key column:
+ * <pre>
+ * CREATE TABLE unique_key_claim (claim_key VARCHAR(40) PRIMARY KEY, created_at BIGINT NOT NULL)
+ * </pre>
+ * A key is reserved by inserting a row in a separate, immediately committed
+ * transaction and released by deleting it (after the transaction that
+ * validated the key completed). Reservations of crashed nodes that were never
+ * released are ignored after the expiry (5 minutes by default), which must be
+ * longer than any transaction validating unique keys.
+ * <p>
+ * The {@link EntityManagerProvider} must provide resource local
+ * {@link EntityManager}s that are not used by the application, like
+ * {@link EntityManagerProviders#perCheck(EntityManagerFactory)}.
+ * </p>
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+public class UniqueKeyReservations {
+
+    private static final Logger LOG = LoggerFactory.getLogger(UniqueKeyReservations.class);
+
+    private final EntityManagerProvider entityManagerProvider;
+    private final String insertSql;
+    private final String deleteExpiredSql;
+    private final String deleteSql;
+    private volatile long expiryMillis = TimeUnit.MINUTES.toMillis(5);
+
+    public UniqueKeyReservations(@Nonnull final EntityManagerFactory entityManagerFactory,
+            @Nonnull final String tableName) {
+        this(EntityManagerProviders.perCheck(entityManagerFactory), tableName);
+    }
+
+    public UniqueKeyReservations(@Nonnull final EntityManagerProvider entityManagerProvider,
+            @Nonnull final String tableName) {
+        this.entityManagerProvider = entityManagerProvider;
+        insertSql = "INSERT INTO " + tableName + " (claim_key, created_at) VALUES (?1, ?2)";
+        deleteExpiredSql = "DELETE FROM " + tableName + " WHERE claim_key = ?1 AND created_at < ?2";
+        deleteSql = "DELETE FROM " + tableName + " WHERE claim_key = ?1";
+    }
+
+    /**
+     * Sets the time after which reservations that were not released are
+     * ignored.
+     */
+    public void setExpiry(final long expiry, @Nonnull final TimeUnit unit) {
+        this.expiryMillis = unit.toMillis(expiry);
+    }
+
+    /**
+     * Reserves the given key.
+     *
+     * @return <code>false</code> if the key is already reserved.
+     */
+    boolean reserve(@Nonnull final String key) {
+        final long now = System.currentTimeMillis();
+        final EntityManager entityManager = entityManagerProvider.getEntityManager();
+        try {
+            entityManager.getTransaction().begin();
+            entityManager.createNativeQuery(deleteExpiredSql).setParameter(1, key).setParameter(2,
+                    now - expiryMillis).executeUpdate();
+            entityManager.createNativeQuery(insertSql).setParameter(1, key).setParameter(2, now).executeUpdate();
+            entityManager.getTransaction().commit();
+            return true;
+        } catch (final PersistenceException e) {
+            if (UniqueKeyViolationTranslator.isUniqueViolation(e)) {
+                return false;
+            }
+            throw new RuntimeException("Could not reserve unique key " + key + ".", e);
+        } finally {
+            if (entityManager.getTransaction().isActive()) {
+                entityManager.getTransaction().rollback();
+            }
+            entityManagerProvider.release(entityManager);
+        }
+    }
+
+    /**
+     * Releases the given keys. Failures are logged only, as the reservations
+     * expire anyway.
+     */
+    void release(@Nonnull final Collection<String> keys) {
+        final EntityManager entityManager = entityManagerProvider.getEntityManager();
+        try {
+            entityManager.getTransaction().begin();
+            for (final String key : keys) {
+                entityManager.createNativeQuery(deleteSql).setParameter(1, key).executeUpdate();
+            }
+            entityManager.getTransaction().commit();
+        } catch (final RuntimeException e) {
+            LOG.warn("Could not release unique keys " + keys + ", they expire after " + expiryMillis + " ms.", e);
+        } finally {
+            if (entityManager.getTransaction().isActive()) {
+                entityManager.getTransaction().rollback();
+            }
+            entityManagerProvider.release(entityManager);
+        }
+    }
+
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+/**
+ * A thread bound scope for the {@link MemoizingUniquenessChecker}, e.g. a
+ * single {@link javax.validation.Validator#validate(Object, Class...)} call
+ * (see {@link ScopedValidator}) or a transaction:
+ * <pre>
+ * UniqueKeyValidationScope.begin();
+ * try {
+ *     // validate the object graph(s)
+ * } finally {
+ *     UniqueKeyValidationScope.end();
+ * }
+ * </pre>
+ * Scopes can be nested, only the outermost scope is effective.
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+public final class UniqueKeyValidationScope {
+
+    private static final ThreadLocal<UniqueKeyValidationScope> CURRENT = new ThreadLocal<UniqueKeyValidationScope>();
+
+    private final Map<UniqueKeyQuery, Boolean> results = new HashMap<UniqueKeyQuery, Boolean>();
+    private final Map<Key, UniqueKeyQuery> claims = new HashMap<Key, UniqueKeyQuery>();
+    private int depth;
+
+    private UniqueKeyValidationScope() {
+    }
+
+    /**
+     * Begins a new scope for the current thread, or joins the current scope.
+     */
+    public static void begin() {
+        UniqueKeyValidationScope scope = CURRENT.get();
+        if (scope == null) {
+            scope = new UniqueKeyValidationScope();
+            CURRENT.set(scope);
+        }
+        scope.depth++;
+    }
+
+    /**
+     * Ends the current scope, if this is the outermost scope all results are
+     * discarded.
+     */
+    public static void end() {
+        final UniqueKeyValidationScope scope = CURRENT.get();
+        if (scope == null) {
+            throw new IllegalStateException("There's no active scope.");
+        }
+        if (--scope.depth == 0) {
+            CURRENT.remove();
+        }
+    }
+
+    /**
+     * Returns the scope bound to the current thread.
+     */
+    @CheckForNull
+    static UniqueKeyValidationScope current() {
+        return CURRENT.get();
+    }
+
+    @CheckForNull
+    Boolean getResult(@Nonnull final UniqueKeyQuery query) {
+        return results.get(query);
+    }
+
+    void putResult(@Nonnull final UniqueKeyQuery query, final boolean exists) {
+        results.put(query, exists);
+    }
+
+    /**
+     * Claims the key of the given query for its entity.
+     *
+     * @return <code>true</code> if the key is already claimed by a different
+     *         entity within this scope (a duplicate within the object graph).
+     */
+    boolean claim(@Nonnull final UniqueKeyQuery query) {
+        if (query.getEntity() == null) {
+            return false;
+        }
+        final Key key = new Key(query);
+        final UniqueKeyQuery claim = claims.get(key);
+        if (claim == null) {
+            claims.put(key, query);
+            return false;
+        }
+        return claim.getEntity() != query.getEntity()
+                && (claim.getIdValue() == null || !claim.getIdValue().equals(query.getIdValue()));
+    }
+
+    /**
+     * The key of a query, without the id.
+     */
+    private static final class Key {
+
+        private final UniqueKeyQuery query;
+
+        Key(final UniqueKeyQuery query) {
+            this.query = query;
+        }
+
+        @Override
+        public int hashCode() {
+            return query.getEntityClass().hashCode() * 31 * 31 + query.getScope().hashCode() * 31
+                    + query.getProperty().hashCode() + (query.getValue() == null ? 0 : query.getValue().hashCode());
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            final UniqueKeyQuery other = ((Key) obj).query;
+            return query.getEntityClass().equals(other.getEntityClass()) && query.getScope().equals(other.getScope())
+                    && query.getProperty().equals(other.getProperty())
+                    && (query.getValue() == null ? other.getValue() == null : query.getValue().equals(
+                            other.getValue()));
+        }
+
+    }
+
+}
@@ -0,0 +1,345 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import static de.hashcode.validation.EntityReflectionUtils.getIdAttributeName;
+import static de.hashcode.validation.EntityReflectionUtils.getIdField;
+import static de.hashcode.validation.ReflectionUtils.getPropertyValue;
+
+import java.io.Serializable;
+import java.lang.reflect.Field;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceUnitUtil;
+import javax.persistence.metamodel.Metamodel;
+import javax.validation.ConstraintValidator;
+import javax.validation.ConstraintValidatorContext;
+
+import de.hashcode.validation.ConstraintExecutionPlanner.DeferredCheck;
+import de.hashcode.validation.ValidationEventSink.UniquenessCheck;
+
+/**
+ * The validator for beans annotated with {@link UniqueKey}. The validator
+ * {@link UniqueKeyValidator} allows annotated bean to use read-only properties
+ * (immutable). Also an update of the entity is allowed, without having to use
+ * different validation groups for create/edit.
+ * <p>
+ * The lookup itself is done by a {@link UniquenessChecker}, by default the
+ * {@link JpaUniquenessChecker} using the {@link EntityManager} set via
+ * {@link #setEntityManager(EntityManager)}.
+ * </p>
+ * <p>
+ * If the entity is registered with the {@link UniqueKeyLoadedStateListener},
+ * the query is skipped for updates that don't change the key (or its scope).
+ * </p>
+ * <p>
+ * If the {@link Metamodel} is known (see {@link MetamodelAwareValidator}), the
+ * entity class of provider proxies or enhanced subclasses is resolved via the
+ * metamodel, and associated entities (e.g. a <code>@ManyToOne</code> key or
+ * scope) are compared by their identifier, so that lazy associations are not
+ * initialized.
+ * </p>
+ * <p>
+ * An instance is thread-safe and can be shared by concurrent validations: the
+ * {@link UniquenessChecker} and the {@link Metamodel} must be set before
+ * {@link #initialize(UniqueKey)} (which binds the instance to a single
+ * constraint), afterwards the validator is immutable. The default
+ * {@link JpaUniquenessChecker} obtains its {@link EntityManager} per check from
+ * an {@link EntityManagerProvider}, see
+ * {@link #UniqueKeyValidator(EntityManagerProvider)}. A validator created with
+ * a single {@link EntityManager} is only thread-safe if this
+ * {@link EntityManager} is.
+ * </p>
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+public class UniqueKeyValidator implements ConstraintValidator<UniqueKey, Serializable>, EntityManagerAwareValidator,
+        UniquenessCheckerAwareValidator, MetamodelAwareValidator, IoBoundValidator {
+
+    private volatile UniquenessChecker uniquenessChecker;
+    private volatile Metamodel metamodel;
+    private volatile PersistenceUnitUtil persistenceUnitUtil;
+    private volatile UniqueKey constraintAnnotation;
+
+    public UniqueKeyValidator() {
+    }
+
+    public UniqueKeyValidator(final EntityManager entityManager) {
+        setEntityManager(entityManager);
+    }
+
+    /**
+     * Creates a validator that obtains an {@link EntityManager} from the given
+     * provider for each check, so that it can be shared by concurrent threads.
+     */
+    public UniqueKeyValidator(final EntityManagerProvider entityManagerProvider) {
+        this.uniquenessChecker = new JpaUniquenessChecker(entityManagerProvider);
+        final EntityManager entityManager = entityManagerProvider.getEntityManager();
+        try {
+            setMetamodel(entityManager);
+        } finally {
+            entityManagerProvider.release(entityManager);
+        }
+    }
+
+    public UniqueKeyValidator(final UniquenessChecker uniquenessChecker) {
+        this.uniquenessChecker = uniquenessChecker;
+    }
+
+    @Override
+    public void setEntityManager(final EntityManager entityManager) {
+        checkNotInitialized();
+        this.uniquenessChecker = entityManager != null ? new JpaUniquenessChecker(entityManager) : null;
+        if (entityManager != null) {
+            setMetamodel(entityManager);
+        }
+    }
+
+    private void setMetamodel(final EntityManager entityManager) {
+        setMetamodel(entityManager.getMetamodel(), entityManager.getEntityManagerFactory().getPersistenceUnitUtil());
+    }
+
+    @Override
+    public void setMetamodel(final Metamodel metamodel, final PersistenceUnitUtil persistenceUnitUtil) {
+        checkNotInitialized();
+        this.metamodel = metamodel;
+        this.persistenceUnitUtil = persistenceUnitUtil;
+    }
+
+    /**
+     * Returns the {@link EntityManager} if the (undecorated)
+     * {@link JpaUniquenessChecker} is used, otherwise <code>null</code>.
+     */
+    public EntityManager getEntityManager() {
+        return uniquenessChecker instanceof JpaUniquenessChecker ? ((JpaUniquenessChecker) uniquenessChecker)
+                .getEntityManager() : null;
+    }
+
+    @Override
+    public void setUniquenessChecker(final UniquenessChecker uniquenessChecker) {
+        checkNotInitialized();
+        this.uniquenessChecker = uniquenessChecker;
+    }
+
+    @Override
+    public UniquenessChecker getUniquenessChecker() {
+        return uniquenessChecker;
+    }
+
+    /**
+     * Binds this validator to the given constraint, afterwards it's immutable.
+     *
+     * @throws IllegalStateException
+     *             if this validator is already initialized for another
+     *             constraint, e.g. because a single instance is provided for
+     *             all constraints (like a singleton bound in guice).
+     */
+    @Override
+    public void initialize(final UniqueKey constraintAnnotation) throws IllegalStateException {
+        final UniqueKey current = this.constraintAnnotation;
+        if (current != null && !current.equals(constraintAnnotation)) {
+            throw new IllegalStateException("This " + getClass().getSimpleName() + " is already initialized for "
+                    + current + ", cannot initialize it for " + constraintAnnotation
+                    + ". Validators must not be shared by different constraints.");
+        }
+        this.constraintAnnotation = constraintAnnotation;
+    }
+
+    private void checkNotInitialized() throws IllegalStateException {
+        if (constraintAnnotation != null) {
+            throw new IllegalStateException("This " + getClass().getSimpleName()
+                    + " is already initialized and therefore must not be modified.");
+        }
+    }
+
+    @Override
+    public boolean isValid(final Serializable target, final ConstraintValidatorContext context) {
+        final UniqueKey constraintAnnotation = this.constraintAnnotation;
+
+        if (constraintAnnotation.deferred()) {
+            // the database unique index does the job, see
+            // UniqueKeyViolationTranslator
+            return true;
+        }
+
+        if (uniquenessChecker == null) {
+            // the jpa provider (eclipselink, hibernate) may validate an entity
+            // on prePersist/preUpdate with its own validator factory. In this
+            // case we don't want to and we cannot check anything (the
+            // uniqueness checker is not set).
+            //
+            // Alternatively, you can disable bean validation during jpa
+            // operations by adding the property
+            // "javax.persistence.validation.mode" with value "NONE" to
+            // persistence.xml
+            return true;
+        }
+
+        final Boolean result = ConstraintExecutionPlanner.defer(new DeferredCheck() {
+            @Override
+            public boolean isValid() {
+                return !exists(target, constraintAnnotation.property(), constraintAnnotation.scope());
+            }
+        });
+        if (Boolean.TRUE.equals(result) || result == null && ConstraintExecutionPlanner.skipIoBound()) {
+            return true;
+        }
+
+        if (result != null || exists(target, constraintAnnotation.property(), constraintAnnotation.scope())) {
+            ConstraintExecutionPlanner.ioBoundViolation();
+            PropertyPaths.addViolation(context, constraintAnnotation.message(), constraintAnnotation.property())
+                    .disableDefaultConstraintViolation();
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Determines if the given key of the given entity is taken by another
+     * entity. The query is skipped for updates that don't change the key, if
+     * the entity is registered with the {@link UniqueKeyLoadedStateListener},
+     * and for keys that were already validated and are unchanged, if it's
+     * registered with the {@link ValidatedStateListener}.
+     * Also used for the property level {@link Unique} constraint.
+     *
+     * @param property
+     *            the unique property (path).
+     * @param scopeProperties
+     *            the properties the key is unique within.
+     */
+    boolean exists(@Nonnull final Object target, @Nonnull final String property,
+            @Nonnull final String[] scopeProperties) {
+        final Class<?> entityClass = getEntityClass(target);
+
+        // the values as read from the entity, and the values for the query
+        final Map<String, Object> values = new LinkedHashMap<String, Object>();
+        final UniqueKeyQuery query;
+        try {
+            final Map<String, Object> scope = new LinkedHashMap<String, Object>();
+            for (final String scopeProperty : scopeProperties) {
+                final Object scopeValue = getPropertyValue(target, scopeProperty);
+                values.put(scopeProperty, scopeValue);
+                scope.put(toQueryProperty(scopeProperty, scopeValue), toQueryValue(scopeValue));
+            }
+
+            final Object propertyValue = getPropertyValue(target, property);
+            values.put(property, propertyValue);
+
+            final Field idField = getIdField(entityClass);
+            final String idProperty = idField.getName();
+            // a proxy is read via its getters, which don't initialize it for the id
+            final Object idValue = getPropertyValue(target, idProperty);
+
+            query = new UniqueKeyQuery(target, entityClass, scope, property, toQueryProperty(property,
+                    propertyValue), toQueryValue(propertyValue), idProperty, idValue);
+
+        } catch (final Exception e) {
+            throw new RuntimeException("An error occurred when trying to create the query for the unique key '"
+                    + property + "' on bean " + entityClass + ".", e);
+        }
+
+        if (query.getIdValue() != null && UniqueKeyLoadedStateListener.isUnchanged(target, values)) {
+            // an update that doesn't touch the key
+            return false;
+        }
+
+        if (ValidatedStateListener.isValidated(target, values)) {
+            // already validated and unchanged since
+            return false;
+        }
+
+        final boolean exists = exists(query, property);
+        if (!exists) {
+            ValidatedStateListener.validated(target, values);
+        }
+        return exists;
+    }
+
+    /**
+     * Determines if the given value of the given (unscoped) property is taken
+     * by any entity of the given type, i.e. it's checked like for a new
+     * entity.
+     */
+    boolean exists(@Nonnull final Class<?> entityClass, @Nonnull final String property,
+            @CheckForNull final Object value) {
+        final UniqueKeyQuery query;
+        try {
+            query = new UniqueKeyQuery(entityClass, toQueryProperty(property, value), toQueryValue(value),
+                    getIdField(entityClass).getName(), null);
+        } catch (final Exception e) {
+            throw new RuntimeException("An error occurred when trying to create the query for the unique key '"
+                    + property + "' on bean " + entityClass + ".", e);
+        }
+        return exists(query, property);
+    }
+
+    private boolean exists(@Nonnull final UniqueKeyQuery query, @Nonnull final String property) {
+        final UniquenessCheck event = ValidationEvents.beginUniquenessCheck();
+        final boolean exists = uniquenessChecker.exists(query);
+        if (event != null) {
+            event.complete(query.getEntityClass(), property, exists);
+        }
+        return exists;
+    }
+
+    /**
+     * Determines the entity class of the given target, which is not the class
+     * of the target if it's a proxy.
+     */
+    @Nonnull
+    private Class<?> getEntityClass(@Nonnull final Object target) {
+        final Class<?> result = metamodel != null ? EntityReflectionUtils.getEntityClass(metamodel, target
+                .getClass()) : null;
+        return result != null ? result : target.getClass();
+    }
+
+    /**
+     * Associated entities are compared by their id, so the query property is
+     * the path to the id of the associated entity.
+     */
+    @Nonnull
+    private String toQueryProperty(@Nonnull final String property, @CheckForNull final Object value) {
+        final Class<?> associatedClass = getAssociatedEntityClass(value);
+        return associatedClass != null ? property + '.' + getIdAttributeName(metamodel.entity(associatedClass))
+                : property;
+    }
+
+    /**
+     * Associated entities are compared by their id, which is determined
+     * without initializing a lazy association.
+     */
+    @CheckForNull
+    private Object toQueryValue(@CheckForNull final Object value) throws Exception {
+        final Class<?> associatedClass = getAssociatedEntityClass(value);
+        if (associatedClass == null) {
+            return value;
+        }
+        return persistenceUnitUtil != null ? persistenceUnitUtil.getIdentifier(value) : getPropertyValue(value,
+                getIdAttributeName(metamodel.entity(associatedClass)));
+    }
+
+    @CheckForNull
+    private Class<?> getAssociatedEntityClass(@CheckForNull final Object value) {
+        return value != null && metamodel != null ? EntityReflectionUtils.getEntityClass(metamodel, value
+                .getClass()) : null;
+    }
+
+}
@@ -0,0 +1,333 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import static de.hashcode.validation.EntityReflectionUtils.getUniqueKeys;
+import static de.hashcode.validation.ReflectionUtils.getPropertyValue;
+
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceException;
+import javax.validation.ConstraintViolation;
+import javax.validation.ConstraintViolationException;
+import javax.validation.MessageInterpolator;
+import javax.validation.ValidatorFactory;
+import javax.validation.metadata.ConstraintDescriptor;
+
+/**
+ * Translates the violation of a database unique constraint into a
+ * {@link ConstraintViolationException}, for {@link UniqueKey}s in
+ * {@link UniqueKey#deferred() deferred} mode. The resulting
+ * {@link ConstraintViolation} has the same message and property path as if it
+ * was reported by the {@link UniqueKeyValidator}.
+ * <p>
+ * Only unique violations (see {@link #isUniqueViolation(Throwable)}) are
+ * translated, other integrity constraint violations (e.g. of a foreign key,
+ * not null or check constraint) are never reported as a {@link UniqueKey}
+ * violation. The violated constraint is mapped to a {@link UniqueKey} via its
+ * {@link UniqueKey#constraintName() constraintName}, which is looked up as a
+ * whole identifier in the messages of the exception (so that
+ * <code>UK_EMAIL</code> doesn't match <code>UK_EMAIL_TENANT</code>), the
+ * longest matching name wins. If there's no such match but there's exactly
+ * one deferred {@link UniqueKey} without a constraint name, this one is
+ * used.
+ * </p>
+ * <p>
+ * Non deferred {@link UniqueKey}s are handled as deferred as well, if their
+ * check was skipped by a {@link ResilientUniquenessChecker} in
+ * {@link UniquenessCheckGuard.DegradedMode#DEFER} mode. These marks are kept
+ * per entity instance (compared by identity, as the id is usually assigned
+ * on flush) and are cleared by {@link #flush(EntityManager, Object...)} and
+ * {@link #translate(RuntimeException, Object...)} for the given entities.
+ * </p>
+ * Usage:
+ * <pre>
+ * em.persist(user);
+ * translator.flush(em, user); // throws ConstraintViolationException
+ * </pre>
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+public class UniqueKeyViolationTranslator {
+
+    private static final String INTEGRITY_CONSTRAINT_VIOLATION_STATE = "23";
+
+    /**
+     * The sql state of a unique violation (e.g. postgresql, h2, hsqldb, derby,
+     * db2).
+     */
+    private static final String UNIQUE_VIOLATION_STATE = "23505";
+
+    /**
+     * Vendor codes of unique violations of databases that report them with the
+     * generic sql state 23000: mysql/mariadb (1062), oracle (ORA-00001) and sql
+     * server (2627 for constraints, 2601 for unique indexes).
+     */
+    private static final int[] UNIQUE_VIOLATION_VENDOR_CODES = { 1062, 1, 2627, 2601 };
+
+    private static final ConcurrentWeakIdentityMap<Object, Set<String>> DEFERRED =
+            new ConcurrentWeakIdentityMap<Object, Set<String>>();
+
+    private final ValidatorFactory validatorFactory;
+
+    public UniqueKeyViolationTranslator(@Nonnull final ValidatorFactory validatorFactory) {
+        this.validatorFactory = validatorFactory;
+    }
+
+    /**
+     * Flushes the given {@link EntityManager}, a unique constraint violation
+     * caused by one of the given entities is translated.
+     *
+     * @throws ConstraintViolationException
+     *             if a deferred {@link UniqueKey} of one of the given entities
+     *             is violated.
+     */
+    public void flush(@Nonnull final EntityManager entityManager, @Nonnull final Object... entities)
+            throws ConstraintViolationException {
+        try {
+            entityManager.flush();
+            undefer(entities);
+        } catch (final PersistenceException e) {
+            final ConstraintViolationException translated = translate(e, entities);
+            if (translated != null) {
+                throw translated;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Translates the given exception into a
+     * {@link ConstraintViolationException}, if it is caused by the violation of
+     * a deferred {@link UniqueKey} of one of the given entities. The deferred
+     * marks of the given entities are cleared, as the failed flush is not
+     * repeated.
+     *
+     * @return the {@link ConstraintViolationException} or <code>null</code> if
+     *         the exception cannot be mapped to a deferred {@link UniqueKey}.
+     */
+    @CheckForNull
+    public ConstraintViolationException translate(@Nonnull final RuntimeException e,
+            @Nonnull final Object... entities) {
+        try {
+            return doTranslate(e, entities);
+        } finally {
+            undefer(entities);
+        }
+    }
+
+    @CheckForNull
+    private ConstraintViolationException doTranslate(@Nonnull final RuntimeException e,
+            @Nonnull final Object... entities) {
+        final String message = getIntegrityViolationMessage(e);
+        if (message == null || !isUniqueViolation(e)) {
+            return null;
+        }
+
+        Object namedEntity = null;
+        UniqueKey namedKey = null;
+        Object fallbackEntity = null;
+        UniqueKey fallbackKey = null;
+        int unnamedKeys = 0;
+        for (final Object entity : entities) {
+            for (final UniqueKey uniqueKey : getUniqueKeys(entity.getClass())) {
+                if (!uniqueKey.deferred() && !isDeferred(entity, uniqueKey.property())) {
+                    continue;
+                }
+                if (uniqueKey.constraintName().length() == 0) {
+                    fallbackEntity = entity;
+                    fallbackKey = uniqueKey;
+                    unnamedKeys++;
+                } else if ((namedKey == null || uniqueKey.constraintName().length() > namedKey.constraintName()
+                        .length()) && containsIdentifier(message, uniqueKey.constraintName().toUpperCase(
+                        Locale.ENGLISH))) {
+                    namedEntity = entity;
+                    namedKey = uniqueKey;
+                }
+            }
+        }
+        if (namedKey != null) {
+            return createException(namedEntity, namedKey, e);
+        }
+        return unnamedKeys == 1 ? createException(fallbackEntity, fallbackKey, e) : null;
+    }
+
+    /**
+     * Determines if the given message contains the given identifier, i.e. not
+     * as part of a longer identifier.
+     */
+    static boolean containsIdentifier(@Nonnull final String message, @Nonnull final String identifier) {
+        for (int idx = message.indexOf(identifier); idx >= 0; idx = message.indexOf(identifier, idx + 1)) {
+            final int end = idx + identifier.length();
+            if ((idx == 0 || !isIdentifierPart(message.charAt(idx - 1)))
+                    && (end == message.length() || !isIdentifierPart(message.charAt(end)))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isIdentifierPart(final char c) {
+        return c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '_';
+    }
+
+    /**
+     * Determines if the given exception is caused by the violation of a unique
+     * constraint or index, according to the sql state (23505) or the vendor
+     * code (mysql 1062, oracle ORA-00001, sql server 2627/2601) of a
+     * {@link SQLException} with sql state class 23.
+     */
+    public static boolean isUniqueViolation(@Nonnull final Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause() != cause ? cause.getCause() : null) {
+            if (cause instanceof SQLException && isUniqueViolation((SQLException) cause)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isUniqueViolation(@Nonnull final SQLException e) {
+        final String state = e.getSQLState();
+        if (UNIQUE_VIOLATION_STATE.equals(state)) {
+            return true;
+        }
+        if (state == null || !state.startsWith(INTEGRITY_CONSTRAINT_VIOLATION_STATE)) {
+            return false;
+        }
+        for (final int vendorCode : UNIQUE_VIOLATION_VENDOR_CODES) {
+            if (e.getErrorCode() == vendorCode) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Marks the given unique property of the given entity as deferred, because
+     * it could not be checked during validation.
+     */
+    static void defer(@Nonnull final Object entity, @Nonnull final String property) {
+        Set<String> properties = DEFERRED.get(entity);
+        if (properties == null) {
+            properties = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+            final Set<String> existing = DEFERRED.putIfAbsent(entity, properties);
+            if (existing != null) {
+                properties = existing;
+            }
+        }
+        properties.add(property);
+    }
+
+    static boolean isDeferred(@Nonnull final Object entity, @Nonnull final String property) {
+        final Set<String> properties = DEFERRED.get(entity);
+        return properties != null && properties.contains(property);
+    }
+
+    private static void undefer(@Nonnull final Object... entities) {
+        for (final Object entity : entities) {
+            DEFERRED.remove(entity);
+        }
+    }
+
+    @Nonnull
+    private <T> ConstraintViolationException createException(@Nonnull final T entity,
+            @Nonnull final UniqueKey uniqueKey, @Nonnull final RuntimeException cause) {
+        @SuppressWarnings("unchecked")
+        final Class<T> entityClass = (Class<T>) entity.getClass();
+        final ConstraintDescriptor<?> descriptor = getConstraintDescriptor(entityClass, uniqueKey);
+        final String message = descriptor != null ? validatorFactory.getMessageInterpolator().interpolate(
+                uniqueKey.message(), new Context(descriptor, entity)) : uniqueKey.message();
+        final Object invalidValue;
+        try {
+            invalidValue = getPropertyValue(entity, uniqueKey.property());
+        } catch (final Exception e) {
+            throw new RuntimeException("Could not read the @UniqueKey '" + uniqueKey.property() + "' on bean "
+                    + entityClass + ".", e);
+        }
+        final Set<ConstraintViolation<?>> violations = new HashSet<ConstraintViolation<?>>();
+        violations.add(new SimpleConstraintViolation<T>(message, uniqueKey.message(), entity, entityClass,
+                uniqueKey.property(), invalidValue, descriptor));
+        final ConstraintViolationException result = new ConstraintViolationException(message,
+                Collections.unmodifiableSet(violations));
+        result.initCause(cause);
+        return result;
+    }
+
+    @CheckForNull
+    private ConstraintDescriptor<?> getConstraintDescriptor(@Nonnull final Class<?> entityClass,
+            @Nonnull final UniqueKey uniqueKey) {
+        for (final ConstraintDescriptor<?> descriptor : validatorFactory.getValidator()
+                .getConstraintsForClass(entityClass).getConstraintDescriptors()) {
+            if (uniqueKey.equals(descriptor.getAnnotation())) {
+                return descriptor;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Determines the (upper case) messages of the causes of the given exception,
+     * if it was caused by an integrity constraint violation.
+     */
+    @CheckForNull
+    static String getIntegrityViolationMessage(@Nonnull final Throwable e) {
+        boolean integrityViolation = false;
+        final StringBuilder messages = new StringBuilder();
+        for (Throwable cause = e; cause != null; cause = cause.getCause() != cause ? cause.getCause() : null) {
+            if (cause instanceof SQLIntegrityConstraintViolationException
+                    || cause instanceof SQLException && ((SQLException) cause).getSQLState() != null
+                    && ((SQLException) cause).getSQLState().startsWith(INTEGRITY_CONSTRAINT_VIOLATION_STATE)) {
+                integrityViolation = true;
+            }
+            if (cause.getMessage() != null) {
+                messages.append(cause.getMessage()).append('\n');
+            }
+        }
+        return integrityViolation ? messages.toString().toUpperCase(Locale.ENGLISH) : null;
+    }
+
+    static final class Context implements MessageInterpolator.Context {
+
+        private final ConstraintDescriptor<?> constraintDescriptor;
+        private final Object validatedValue;
+
+        Context(final ConstraintDescriptor<?> constraintDescriptor, final Object validatedValue) {
+            this.constraintDescriptor = constraintDescriptor;
+            this.validatedValue = validatedValue;
+        }
+
+        @Override
+        public ConstraintDescriptor<?> getConstraintDescriptor() {
+            return constraintDescriptor;
+        }
+
+        @Override
+        public Object getValidatedValue() {
+            return validatedValue;
+        }
+
+    }
+
+}
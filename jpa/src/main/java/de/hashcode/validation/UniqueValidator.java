@@ -0,0 +1,117 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.validation.ConstraintValidator;
+import javax.validation.ConstraintValidatorContext;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The constraint validator of {@link Unique}, which accepts any value: the
+ * check needs the entity owning the value and is therefore done by the
+ * {@link UniqueCheckingValidator}. If a {@link Unique} property is validated
+ * by another validator, the uniqueness is not checked: if a
+ * {@link UniquenessChecker} was set (i.e. the validator is configured for
+ * uniqueness checks but not decorated) an {@link IllegalStateException} is
+ * thrown, otherwise (e.g. by the default validation of the jpa provider on
+ * persist) a warning is logged once.
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+public class UniqueValidator implements ConstraintValidator<Unique, Object>, UniquenessCheckerAwareValidator {
+
+    private static final Logger LOG = LoggerFactory.getLogger(UniqueValidator.class);
+
+    private static final AtomicBoolean WARNED = new AtomicBoolean();
+
+    /**
+     * Set while the current thread validates via an
+     * {@link UniqueCheckingValidator}.
+     */
+    private static final ThreadLocal<Boolean> CHECKED = new ThreadLocal<Boolean>();
+
+    private volatile UniquenessChecker uniquenessChecker;
+
+    @Override
+    public void initialize(final Unique constraintAnnotation) {
+    }
+
+    @Override
+    public boolean isValid(final Object value, final ConstraintValidatorContext context) {
+        if (value == null || CHECKED.get() != null) {
+            return true;
+        }
+        if (uniquenessChecker != null) {
+            throw new IllegalStateException("A @Unique property (of type " + value.getClass().getName()
+                    + ") is validated without an " + UniqueCheckingValidator.class.getSimpleName()
+                    + ", so its uniqueness would not be checked. Validate via an "
+                    + UniqueCheckingValidator.class.getSimpleName() + " (e.g. new "
+                    + UniqueCheckingValidator.class.getSimpleName() + "(validatorFactory)) or use @UniqueKey"
+                    + " instead.");
+        }
+        if (WARNED.compareAndSet(false, true)) {
+            LOG.warn("A @Unique property (of type " + value.getClass().getName() + ") is validated without an "
+                    + UniqueCheckingValidator.class.getSimpleName() + ", so its uniqueness is not checked. Validate"
+                    + " via an " + UniqueCheckingValidator.class.getSimpleName() + " or use @UniqueKey instead."
+                    + " This is logged only once.");
+        }
+        return true;
+    }
+
+    @Override
+    public void setUniquenessChecker(final UniquenessChecker uniquenessChecker) {
+        this.uniquenessChecker = uniquenessChecker;
+    }
+
+    @Override
+    public UniquenessChecker getUniquenessChecker() {
+        return uniquenessChecker;
+    }
+
+    /**
+     * Marks that the current thread validates via an
+     * {@link UniqueCheckingValidator}.
+     *
+     * @return <code>true</code> if this was already marked, i.e.
+     *         {@link #endChecked(boolean)} must not unmark it.
+     */
+    static boolean beginChecked() {
+        if (CHECKED.get() != null) {
+            return true;
+        }
+        CHECKED.set(Boolean.TRUE);
+        return false;
+    }
+
+    static void endChecked(final boolean nested) {
+        if (!nested) {
+            CHECKED.remove();
+        }
+    }
+
+    /**
+     * Determines if the warning about an unchecked {@link Unique} property was
+     * logged.
+     */
+    static boolean isWarned() {
+        return WARNED.get();
+    }
+
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.annotation.Nonnull;
+
+/**
+ * The state shared by {@link ResilientUniquenessChecker}s: a bulkhead that
+ * limits the number of concurrent uniqueness queries, a circuit breaker and the
+ * {@link DegradedMode} that determines the result of a check that could not be
+ * executed. It also provides metrics about trips and rejections.
+ * <p>
+ * The circuit breaker opens after the given number of consecutive failures.
+ * While it's open, checks are not executed at all. After the given open time a
+ * single trial check is let through (half open): if it succeeds the breaker is
+ * closed again, otherwise it's opened again.
+ * </p>
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+public class UniquenessCheckGuard {
+
+    /**
+     * Determines the result of a check that was rejected or failed.
+     */
+    public enum DegradedMode {
+        /**
+         * The key is considered unique, the validation passes.
+         */
+        PASS,
+        /**
+         * The key is considered taken, the validation fails.
+         */
+        FAIL,
+        /**
+         * The validation passes, the key is handled as
+         * {@link UniqueKey#deferred() deferred}, i.e. a violation of the
+         * database unique constraint is translated by the
+         * {@link UniqueKeyViolationTranslator}.
+         */
+        DEFER
+    }
+
+    /**
+     * The state of the circuit breaker.
+     */
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final Semaphore bulkhead;
+    private final int failureThreshold;
+    private final long openTimeNanos;
+    private final DegradedMode degradedMode;
+
+    private final AtomicReference<State> state = new AtomicReference<State>(State.CLOSED);
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private volatile long openedAt;
+
+    private final AtomicLong trips = new AtomicLong();
+    private final AtomicLong rejections = new AtomicLong();
+    private final AtomicLong shortCircuits = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    /**
+     * Creates a new guard.
+     *
+     * @param maxConcurrentChecks
+     *            the max number of uniqueness queries in flight, further
+     *            checks are rejected.
+     * @param failureThreshold
+     *            the number of consecutive failures that open the circuit
+     *            breaker.
+     * @param openTime
+     *            the time the circuit breaker stays open before a trial check
+     *            is let through.
+     * @param unit
+     *            the unit of the open time.
+     * @param degradedMode
+     *            the result of rejected or failed checks.
+     */
+    public UniquenessCheckGuard(final int maxConcurrentChecks, final int failureThreshold, final long openTime,
+            @Nonnull final TimeUnit unit, @Nonnull final DegradedMode degradedMode) {
+        if (maxConcurrentChecks < 1 || failureThreshold < 1) {
+            throw new IllegalArgumentException("maxConcurrentChecks and failureThreshold must be positive.");
+        }
+        this.bulkhead = new Semaphore(maxConcurrentChecks);
+        this.failureThreshold = failureThreshold;
+        this.openTimeNanos = unit.toNanos(openTime);
+        this.degradedMode = degradedMode;
+    }
+
+    @Nonnull
+    public DegradedMode getDegradedMode() {
+        return degradedMode;
+    }
+
+    @Nonnull
+    public State getState() {
+        return state.get();
+    }
+
+    /**
+     * The number of times the circuit breaker was opened.
+     */
+    public long getTrips() {
+        return trips.get();
+    }
+
+    /**
+     * The number of checks rejected because of the bulkhead.
+     */
+    public long getRejections() {
+        return rejections.get();
+    }
+
+    /**
+     * The number of checks not executed because of an open circuit breaker.
+     */
+    public long getShortCircuits() {
+        return shortCircuits.get();
+    }
+
+    /**
+     * The number of failed checks.
+     */
+    public long getFailures() {
+        return failures.get();
+    }
+
+    /**
+     * Determines if a check may be executed, if so {@link #release(boolean)}
+     * must be invoked afterwards.
+     */
+    boolean acquire() {
+        if (!allowRequest()) {
+            shortCircuits.incrementAndGet();
+            return false;
+        }
+        if (!bulkhead.tryAcquire()) {
+            rejections.incrementAndGet();
+            if (state.get() == State.HALF_OPEN) {
+                // give the next check the chance to close the breaker
+                state.compareAndSet(State.HALF_OPEN, State.OPEN);
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Releases the permit got by {@link #acquire()}.
+     *
+     * @param success
+     *            <code>false</code> if the check failed.
+     */
+    void release(final boolean success) {
+        bulkhead.release();
+        if (success) {
+            consecutiveFailures.set(0);
+            state.set(State.CLOSED);
+        } else {
+            failures.incrementAndGet();
+            if (consecutiveFailures.incrementAndGet() >= failureThreshold || state.get() == State.HALF_OPEN) {
+                open();
+            }
+        }
+    }
+
+    private boolean allowRequest() {
+        switch (state.get()) {
+        case CLOSED:
+            return true;
+        case OPEN:
+            return System.nanoTime() - openedAt >= openTimeNanos
+                    && state.compareAndSet(State.OPEN, State.HALF_OPEN);
+        default:
+            // the trial check is in flight
+            return false;
+        }
+    }
+
+    private void open() {
+        openedAt = System.nanoTime();
+        if (state.getAndSet(State.OPEN) != State.OPEN) {
+            trips.incrementAndGet();
+        }
+    }
+
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import javax.annotation.Nonnull;
+
+/**
+ * The backend used by the {@link UniqueKeyValidator} to find out if a key is
+ * already taken. The default implementation is the {@link JpaUniquenessChecker},
+ * the {@link JdbcUniquenessChecker} queries the database directly.
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+public interface UniquenessChecker {
+
+    /**
+     * Determines if there's another entity matching the given query.
+     *
+     * @return <code>true</code> if the key is already taken by another entity.
+     */
+    boolean exists(@Nonnull UniqueKeyQuery query);
+
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+/**
+ * Interface for validators that use a {@link UniquenessChecker}, so that the
+ * checker can be provided by a {@link javax.validation.ConstraintValidatorFactory}
+ * like the {@link ConstraintValidatorFactoryJdbcImpl}.
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+public interface UniquenessCheckerAwareValidator {
+
+    /**
+     * Set the {@link UniquenessChecker}.
+     */
+    void setUniquenessChecker(UniquenessChecker uniquenessChecker);
+
+    /**
+     * Returns the {@link UniquenessChecker}, may be <code>null</code>.
+     */
+    UniquenessChecker getUniquenessChecker();
+
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Allows to add behaviour to the {@link UniquenessChecker}s that are created
+ * by a {@link javax.validation.ConstraintValidatorFactory} like the
+ * {@link ConstraintValidatorFactoryEMFImpl}, e.g. memoization via
+ * {@link MemoizingUniquenessChecker#decorator()}.
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+public interface UniquenessCheckerDecorator {
+
+    /**
+     * Decorates the given {@link UniquenessChecker}.
+     *
+     * @return the decorating checker, never <code>null</code>.
+     */
+    @Nonnull
+    UniquenessChecker decorate(@Nonnull UniquenessChecker uniquenessChecker);
+
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import static de.hashcode.validation.EntityReflectionUtils.getVersionField;
+
+import java.lang.reflect.Field;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.persistence.PostLoad;
+import javax.persistence.PostPersist;
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+import javax.persistence.PrePersist;
+
+/**
+ * A jpa entity listener that keeps a record of the {@link UniqueKey} (and
+ * scope) values that were successfully validated for an entity instance,
+ * together with the entity's {@link javax.persistence.Version} at that time.
+ * The {@link UniqueKeyValidator} (and thereby {@link Unique}) skips the check
+ * for entities that were already validated and are unchanged since, so that
+ * entities that are validated again and again (e.g. with each flush of a long
+ * conversation or a batch) don't query the database each time.
+ * <p>
+ * Register it for the relevant entities via
+ * <code>@EntityListeners(ValidatedStateListener.class)</code> or as a default
+ * entity listener in <code>orm.xml</code>. Only entities with a version field
+ * are tracked, from the time they're persisted or loaded until they're
+ * removed. Records are held weakly per entity instance (compared by identity,
+ * not via <code>equals</code>), so they're not shared by the instances of
+ * different persistence contexts.
+ * </p>
+ * <p>
+ * Records are discarded whenever the entity is persisted or (re)loaded, and
+ * are bound to its version: they are carried over to the version written by a
+ * flush (which wrote the validated state), but are ignored if the entity
+ * otherwise gets a different version.
+ * </p>
+ * <p>
+ * Skipped checks don't reach the {@link UniquenessChecker} and its decorators
+ * (memoization, locks, reservations): a key taken by another transaction after
+ * the validation is only detected by the database unique index, which should
+ * be translated via the {@link UniqueKeyViolationTranslator}.
+ * </p>
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+public class ValidatedStateListener {
+
+    private static final ConcurrentWeakIdentityMap<Object, ValidatedState> STATES =
+            new ConcurrentWeakIdentityMap<Object, ValidatedState>();
+
+    @PrePersist
+    public void prePersist(final Object entity) {
+        reset(entity);
+    }
+
+    @PostLoad
+    public void postLoad(final Object entity) {
+        reset(entity);
+    }
+
+    @PostPersist
+    public void postPersist(final Object entity) {
+        flushed(entity);
+    }
+
+    @PostUpdate
+    public void postUpdate(final Object entity) {
+        flushed(entity);
+    }
+
+    @PostRemove
+    public void postRemove(final Object entity) {
+        STATES.remove(entity);
+    }
+
+    /**
+     * Determines if the given key values were already validated for the given
+     * entity at its current version.
+     *
+     * @param values
+     *            the key and scope values as read from the entity.
+     * @return <code>true</code> if the entity is tracked and the values are
+     *         unchanged since they were validated.
+     */
+    static boolean isValidated(@Nonnull final Object entity, @Nonnull final Map<String, Object> values) {
+        final ValidatedState state = STATES.get(entity);
+        if (state == null) {
+            return false;
+        }
+        final Object version = getVersion(entity);
+        synchronized (state) {
+            return equal(state.version, version) && values.equals(state.records.get(values.keySet()));
+        }
+    }
+
+    /**
+     * Records that the given key values were successfully validated for the
+     * given entity, if the entity is tracked.
+     */
+    static void validated(@Nonnull final Object entity, @Nonnull final Map<String, Object> values) {
+        final ValidatedState state = STATES.get(entity);
+        if (state == null) {
+            return;
+        }
+        final Object version = getVersion(entity);
+        synchronized (state) {
+            if (equal(state.version, version)) {
+                final Map<String, Object> record = new HashMap<String, Object>(values);
+                state.records.put(record.keySet(), record);
+            }
+        }
+    }
+
+    /**
+     * Starts tracking the given entity (if it's versioned) without records.
+     */
+    private static void reset(final Object entity) {
+        if (getVersionField(entity.getClass()) != null) {
+            STATES.put(entity, new ValidatedState(getVersion(entity)));
+        }
+    }
+
+    /**
+     * Carries the records of the given entity over to the version written by
+     * the flush.
+     */
+    private static void flushed(final Object entity) {
+        final ValidatedState state = STATES.get(entity);
+        if (state == null) {
+            reset(entity);
+            return;
+        }
+        final Object version = getVersion(entity);
+        synchronized (state) {
+            state.version = version;
+        }
+    }
+
+    @CheckForNull
+    private static Object getVersion(final Object entity) {
+        final Field versionField = getVersionField(entity.getClass());
+        if (versionField == null) {
+            return null;
+        }
+        try {
+            return versionField.get(entity);
+        } catch (final IllegalAccessException e) {
+            throw new RuntimeException("Could not read the version of " + entity.getClass() + ".", e);
+        }
+    }
+
+    private static boolean equal(final Object a, final Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /**
+     * The version of a tracked entity and the validated values per key (the
+     * key and scope properties), guarded by the state itself.
+     */
+    private static final class ValidatedState {
+
+        private Object version;
+        private final Map<Set<String>, Map<String, Object>> records = new HashMap<Set<String>, Map<String, Object>>();
+
+        ValidatedState(@CheckForNull final Object version) {
+            this.version = version;
+        }
+
+    }
+
+}
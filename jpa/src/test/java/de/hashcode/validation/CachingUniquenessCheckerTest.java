@@ -0,0 +1,176 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.math.BigDecimal;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.sql.Timestamp;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test for the {@link CachingUniquenessChecker} and the
+ * {@link UniqueKeyInvalidationChannel}s.
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+public class CachingUniquenessCheckerTest {
+
+    private CountingUniquenessChecker delegate;
+
+    @Before
+    public void beforeMethod() {
+        delegate = new CountingUniquenessChecker();
+        delegate.setResult(true);
+    }
+
+    @Test
+    public void testTakenKeyIsCachedUntilChanged() {
+        final LoopbackInvalidationChannel channel = new LoopbackInvalidationChannel();
+        final UniqueKeyCache cache = new UniqueKeyCache(1, TimeUnit.HOURS, 100);
+        channel.addListener(cache);
+        final CachingUniquenessChecker checker = new CachingUniquenessChecker(delegate, cache);
+
+        final UniqueKeyQuery query = new UniqueKeyQuery(Entity1.class, "prop1", "val1", "id", 1L);
+        assertTrue(checker.exists(query));
+        assertTrue(checker.exists(query));
+        assertEquals("Unexpected number of queries.", 1, delegate.getCount());
+
+        channel.publish(new UniqueKeyChange(Entity1.class.getName(), "prop1", "other"));
+        assertTrue(checker.exists(query));
+        assertEquals("Unexpected number of queries.", 1, delegate.getCount());
+
+        channel.publish(new UniqueKeyChange(Entity1.class.getName(), "prop1", "val1"));
+        assertTrue(checker.exists(query));
+        assertEquals("Unexpected number of queries.", 2, delegate.getCount());
+    }
+
+    @Test
+    public void testEntriesExpire() {
+        final CachingUniquenessChecker checker = new CachingUniquenessChecker(delegate, new UniqueKeyCache(0,
+                TimeUnit.NANOSECONDS, 100));
+        final UniqueKeyQuery query = new UniqueKeyQuery(Entity1.class, "prop1", "val1", "id", 1L);
+        checker.exists(query);
+        checker.exists(query);
+        assertEquals("Unexpected number of queries.", 2, delegate.getCount());
+    }
+
+    @Test
+    public void testSocketChannelPublishesToPeers() throws Exception {
+        final SocketInvalidationChannel channel1 = new SocketInvalidationChannel(0);
+        final SocketInvalidationChannel channel2 = new SocketInvalidationChannel(0, new InetSocketAddress(
+                "localhost", channel1.getLocalPort()));
+        channel1.addPeer(new InetSocketAddress("localhost", channel2.getLocalPort()));
+        try {
+            final CountDownLatch received = new CountDownLatch(1);
+            final UniqueKeyChange change = new UniqueKeyChange(Entity1.class.getName(), "prop1", "val1");
+            channel1.addListener(new UniqueKeyInvalidationChannel.Listener() {
+                @Override
+                public void onChange(final UniqueKeyChange c) {
+                    if (change.equals(c)) {
+                        received.countDown();
+                    }
+                }
+            });
+            channel2.publish(change);
+            assertTrue("Change was not received.", received.await(5, TimeUnit.SECONDS));
+        } finally {
+            channel1.close();
+            channel2.close();
+        }
+    }
+
+    @Test
+    public void testSocketChannelDropsPacketsOfOtherSenders() throws Exception {
+        final SocketInvalidationChannel channel = new SocketInvalidationChannel(0);
+        final DatagramSocket sender = new DatagramSocket();
+        try {
+            final CountDownLatch received = new CountDownLatch(1);
+            channel.addListener(new UniqueKeyInvalidationChannel.Listener() {
+                @Override
+                public void onChange(final UniqueKeyChange c) {
+                    received.countDown();
+                }
+            });
+            final byte[] data = SocketInvalidationChannel.encode(new UniqueKeyChange(Entity1.class.getName(),
+                    "prop1", "val1"));
+            sender.send(new DatagramPacket(data, data.length, new InetSocketAddress("localhost", channel
+                    .getLocalPort())));
+            assertFalse("Change of an unknown sender was received.", received.await(500, TimeUnit.MILLISECONDS));
+        } finally {
+            sender.close();
+            channel.close();
+        }
+    }
+
+    @Test
+    public void testWireFormat() throws Exception {
+        assertRoundTrip(new UniqueKeyChange(Entity1.class.getName(), "prop1", "val1"));
+        assertRoundTrip(new UniqueKeyChange(Entity1.class.getName(), "prop1", null));
+        assertRoundTrip(new UniqueKeyChange(Entity1.class.getName(), "prop1", 42L));
+        assertRoundTrip(new UniqueKeyChange(Entity1.class.getName(), "prop1", new BigDecimal("1.50")));
+        assertRoundTrip(new UniqueKeyChange(Entity1.class.getName(), "prop1", TimeUnit.SECONDS));
+
+        assertRoundTrip(UniqueKeyChange.withUnknownValue(Entity1.class.getName(), "prop1"));
+
+        // other values are sent as unknown
+        final UniqueKeyChange unknown = UniqueKeyChange.withUnknownValue(Entity1.class.getName(), "prop1");
+        assertEquals(unknown, decode(SocketInvalidationChannel.encode(new UniqueKeyChange(Entity1.class.getName(),
+                "prop1", new Entity1()))));
+        assertEquals(unknown, decode(SocketInvalidationChannel.encode(new UniqueKeyChange(Entity1.class.getName(),
+                "prop1", new Timestamp(0)))));
+    }
+
+    @Test
+    public void testUnknownValueAffectsAllValues() {
+        final UniqueKeyChange unknown = UniqueKeyChange.withUnknownValue(Entity1.class.getName(), "prop1");
+        assertTrue(unknown.affects(new UniqueKeyQuery(Entity1.class, "prop1", "val1", "id", null)));
+        assertTrue(unknown.affects(new UniqueKeyQuery(Entity1.class, "prop1", null, "id", null)));
+        assertFalse(unknown.affects(new UniqueKeyQuery(Entity1.class, "prop2", "val1", "id", null)));
+        assertFalse("A null value is known.", new UniqueKeyChange(Entity1.class.getName(), "prop1", null)
+                .affects(new UniqueKeyQuery(Entity1.class, "prop1", "val1", "id", null)));
+    }
+
+    @Test(expected = IOException.class)
+    public void testSerializedObjectsAreRejected() throws Exception {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(new UniqueKeyChange(Entity1.class.getName(), "prop1", "val1"));
+        out.close();
+        decode(bytes.toByteArray());
+    }
+
+    private static void assertRoundTrip(final UniqueKeyChange change) throws IOException {
+        assertEquals(change, decode(SocketInvalidationChannel.encode(change)));
+    }
+
+    private static UniqueKeyChange decode(final byte[] data) throws IOException {
+        return SocketInvalidationChannel.decode(data, 0, data.length);
+    }
+
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import static de.hashcode.validation.TestUtils.getByPropertyPath;
+import static de.hashcode.validation.TestUtils.newConstraintValidatorContext;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import javax.validation.ConstraintViolation;
+import javax.validation.Validation;
+import javax.validation.Validator;
+import javax.validation.ValidatorContext;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Stress test that validates from many threads concurrently, using shared
+ * validator instances.
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+public class ConcurrentValidationTest {
+
+    private static final int THREADS = 16;
+    private static final int ITERATIONS = 200;
+    private static final int TAKEN = 10;
+
+    private EntityManagerFactory entityManagerFactory;
+    private EntityManager em;
+    private List<Entity1> persisted;
+
+    @Before
+    public void beforeMethod() {
+        entityManagerFactory = Persistence.createEntityManagerFactory("test");
+        em = entityManagerFactory.createEntityManager();
+        persisted = new ArrayList<Entity1>();
+        em.getTransaction().begin();
+        for (int i = 0; i < TAKEN; i++) {
+            final Entity1 entity = new Entity1("taken-" + i);
+            em.persist(entity);
+            persisted.add(entity);
+        }
+        em.getTransaction().commit();
+    }
+
+    @After
+    public void afterMethod() {
+        em.getTransaction().begin();
+        for (final Entity1 entity : persisted) {
+            em.remove(entity);
+        }
+        em.getTransaction().commit();
+    }
+
+    @Test
+    public void testValidatorUnderConcurrentLoad() throws Exception {
+        final ValidatorContext validatorContext = Validation.buildDefaultValidatorFactory().usingContext();
+        validatorContext.constraintValidatorFactory(new ConstraintValidatorFactoryEMFImpl(entityManagerFactory));
+        final Validator validator = validatorContext.getValidator();
+
+        runConcurrently(new Task() {
+            @Override
+            public String run(final int thread, final int iteration) {
+                final String key = iteration % 2 == 0 ? "taken-" + iteration % TAKEN : "free-" + thread + "-"
+                        + iteration;
+                final Set<ConstraintViolation<Entity1>> violations = validator.validate(new Entity1(key));
+                final int expected = key.startsWith("taken") ? 1 : 0;
+                if (violations.size() != expected || expected == 1 && getByPropertyPath(violations, "prop1") == null) {
+                    return "Unexpected violations for " + key + ": " + violations;
+                }
+                final Set<ConstraintViolation<Entity6>> matchViolations = validator.validate(new Entity6(key
+                        + "@example.org", iteration % 3 == 0 ? "other@example.org" : key + "@example.org", key));
+                if (matchViolations.size() != (iteration % 3 == 0 ? 1 : 0)) {
+                    return "Unexpected violations for " + key + ": " + matchViolations;
+                }
+                return null;
+            }
+        });
+    }
+
+    @Test
+    public void testSingleInstancesSharedByThreads() throws Exception {
+        final UniqueKeyValidator uniqueKeyValidator = new UniqueKeyValidator(EntityManagerProviders
+                .perCheck(entityManagerFactory));
+        uniqueKeyValidator.initialize(Entity1.class.getAnnotation(UniqueKey.class));
+        final FieldsMatchValidator fieldsMatchValidator = new FieldsMatchValidator();
+        fieldsMatchValidator.initialize(Entity6.class.getAnnotation(FieldsMatch.class));
+
+        runConcurrently(new Task() {
+            @Override
+            public String run(final int thread, final int iteration) {
+                final boolean taken = iteration % 2 == 0;
+                final String key = taken ? "taken-" + iteration % TAKEN : "free-" + thread + "-" + iteration;
+                if (uniqueKeyValidator.isValid(new Entity1(key), newConstraintValidatorContext()) == taken) {
+                    return "Unexpected result of the UniqueKeyValidator for " + key;
+                }
+                final boolean match = iteration % 3 != 0;
+                final Entity6 entity = new Entity6(key, match ? key : key + "-other", key);
+                if (fieldsMatchValidator.isValid(entity, newConstraintValidatorContext()) != match) {
+                    return "Unexpected result of the FieldsMatchValidator for " + key;
+                }
+                return null;
+            }
+        });
+    }
+
+    @Test
+    public void testValidatorIsImmutableAfterInitialize() {
+        final UniqueKeyValidator validator = new UniqueKeyValidator(new CountingUniquenessChecker());
+        validator.initialize(Entity1.class.getAnnotation(UniqueKey.class));
+        // initializing again for the same constraint is fine
+        validator.initialize(Entity1.class.getAnnotation(UniqueKey.class));
+        try {
+            validator.setUniquenessChecker(new CountingUniquenessChecker());
+            fail("An initialized validator must not be modified.");
+        } catch (final IllegalStateException e) {
+            // expected
+        }
+        try {
+            validator.initialize(Entity6.class.getAnnotation(UniqueKey.List.class).value()[1]);
+            fail("An initialized validator must not be bound to another constraint.");
+        } catch (final IllegalStateException e) {
+            assertNotNull(e.getMessage());
+        }
+    }
+
+    /**
+     * Runs the given task {@link #ITERATIONS} times in each of {@link #THREADS}
+     * threads, all threads are started at once. Fails if any run returned an
+     * error message or threw an exception.
+     */
+    private void runConcurrently(final Task task) throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        final CountDownLatch start = new CountDownLatch(1);
+        final Queue<String> errors = new ConcurrentLinkedQueue<String>();
+        final List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (int i = 0; i < THREADS; i++) {
+            final int thread = i;
+            futures.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    start.await();
+                    for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+                        final String error = task.run(thread, iteration);
+                        if (error != null) {
+                            errors.add(error);
+                        }
+                    }
+                    return null;
+                }
+            }));
+        }
+        start.countDown();
+        for (final Future<?> future : futures) {
+            // rethrows any exception of a task
+            future.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+        assertTrue("Errors: " + errors, errors.isEmpty());
+    }
+
+    private interface Task {
+        /**
+         * @return an error message or <code>null</code>.
+         */
+        String run(int thread, int iteration);
+    }
+
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import static junit.framework.Assert.assertEquals;
+
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import javax.persistence.Transient;
+import javax.validation.ConstraintViolation;
+import javax.validation.Validation;
+import javax.validation.Validator;
+import javax.validation.ValidatorContext;
+import javax.validation.metadata.BeanDescriptor;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test for {@link ConstraintExecutionPlanner}.
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+public class ConstraintExecutionPlannerTest {
+
+    private CountingUniquenessChecker checker;
+    private Validator validator;
+
+    @Before
+    public void beforeMethod() {
+        checker = new CountingUniquenessChecker();
+        final EntityManagerFactory entityManagerFactory = Persistence.createEntityManagerFactory("test");
+        final ValidatorContext validatorContext = Validation.buildDefaultValidatorFactory().usingContext();
+        validatorContext.constraintValidatorFactory(new ConstraintValidatorFactoryEMFImpl(entityManagerFactory,
+                new UniquenessCheckerDecorator() {
+                    @Override
+                    public UniquenessChecker decorate(final UniquenessChecker delegate) {
+                        return checker;
+                    }
+                }));
+        validator = validatorContext.getValidator();
+    }
+
+    @Test
+    public void testIoBoundConstraintsAreSkippedIfCheapConstraintsFail() {
+        checker.setResult(true);
+        final Set<ConstraintViolation<Entity6>> violations = new ConstraintExecutionPlanner(validator, true)
+                .validate(new Entity6("foo@example.org", "bar@example.org", "foo"));
+        assertEquals("Unexpected violations: " + violations + ".", 1, violations.size());
+        assertEquals("emailConfirmation", violations.iterator().next().getPropertyPath().toString());
+        assertEquals("Unexpected number of queries.", 0, checker.getCount());
+    }
+
+    @Test
+    public void testIoBoundConstraintsFailFast() {
+        checker.setResult(true);
+        final Set<ConstraintViolation<Entity6>> violations = new ConstraintExecutionPlanner(validator, true)
+                .validate(new Entity6("foo@example.org", "foo@example.org", "foo"));
+        assertEquals("Unexpected violations: " + violations + ".", 1, violations.size());
+        assertEquals("Unexpected number of queries.", 1, checker.getCount());
+    }
+
+    @Test
+    public void testAllConstraintsAreValidatedWithoutFailFast() {
+        checker.setResult(true);
+        final Set<ConstraintViolation<Entity6>> violations = new ConstraintExecutionPlanner(validator, false)
+                .validate(new Entity6("foo@example.org", "bar@example.org", "foo"));
+        assertEquals("Unexpected violations: " + violations + ".", 3, violations.size());
+        assertEquals("Unexpected number of queries.", 2, checker.getCount());
+    }
+
+    @Test
+    public void testValidEntity() {
+        final Set<ConstraintViolation<Entity6>> violations = new ConstraintExecutionPlanner(validator, true)
+                .validate(new Entity6("foo@example.org", "foo@example.org", "foo"));
+        assertEquals("Unexpected violations: " + violations + ".", 0, violations.size());
+        assertEquals("Unexpected number of queries.", 2, checker.getCount());
+    }
+
+    @Test
+    public void testValidEntityIsValidatedOnce() {
+        final AtomicInteger validations = new AtomicInteger();
+        final Set<ConstraintViolation<Entity6>> violations = new ConstraintExecutionPlanner(counting(validator,
+                validations), true).validate(new Entity6("foo@example.org", "foo@example.org", "foo"));
+        assertEquals("Unexpected violations: " + violations + ".", 0, violations.size());
+        assertEquals("Unexpected number of validations.", 1, validations.get());
+        assertEquals("Unexpected number of queries.", 2, checker.getCount());
+    }
+
+    @Test
+    public void testFailedDeferredCheckIsNotRepeated() {
+        checker.setResult(true);
+        final AtomicInteger validations = new AtomicInteger();
+        final Set<ConstraintViolation<Entity6>> violations = new ConstraintExecutionPlanner(counting(validator,
+                validations), true).validate(new Entity6("foo@example.org", "foo@example.org", "foo"));
+        assertEquals("Unexpected violations: " + violations + ".", 1, violations.size());
+        assertEquals("Unexpected number of validations.", 2, validations.get());
+        assertEquals("Unexpected number of queries.", 1, checker.getCount());
+    }
+
+    /**
+     * Wraps the given validator, counting the invocations of validate.
+     */
+    private static Validator counting(final Validator delegate, final AtomicInteger validations) {
+        return new Validator() {
+
+            @Override
+            public <T> Set<ConstraintViolation<T>> validate(final T object, final Class<?>... groups) {
+                validations.incrementAndGet();
+                return delegate.validate(object, groups);
+            }
+
+            @Override
+            public <T> Set<ConstraintViolation<T>> validateProperty(final T object, final String propertyName,
+                    final Class<?>... groups) {
+                return delegate.validateProperty(object, propertyName, groups);
+            }
+
+            @Override
+            public <T> Set<ConstraintViolation<T>> validateValue(final Class<T> beanType,
+                    final String propertyName, final Object value, final Class<?>... groups) {
+                return delegate.validateValue(beanType, propertyName, value, groups);
+            }
+
+            @Override
+            public BeanDescriptor getConstraintsForClass(final Class<?> clazz) {
+                return delegate.getConstraintsForClass(clazz);
+            }
+
+            @Override
+            public <T> T unwrap(final Class<T> type) {
+                return delegate.unwrap(type);
+            }
+        };
+    }
+
+}
+
+@SuppressWarnings("serial")
+@Entity
+@FieldsMatch(first = "email", second = "emailConfirmation")
+@UniqueKey.List({ @UniqueKey(property = "email"), @UniqueKey(property = "login") })
+class Entity6 extends EntityBase {
+
+    @Column
+    private String email;
+    @Transient
+    private String emailConfirmation;
+    @Column
+    private String login;
+
+    public Entity6() {
+    }
+
+    public Entity6(final String email, final String emailConfirmation, final String login) {
+        this.email = email;
+        this.emailConfirmation = emailConfirmation;
+        this.login = login;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public String getEmailConfirmation() {
+        return emailConfirmation;
+    }
+
+    public String getLogin() {
+        return login;
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import org.junit.Ignore;
+
+/**
+ * A {@link UniquenessChecker} that counts the lookups, and delegates them (if
+ * a delegate is given) or returns a fixed result (by default every key is
+ * free).
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+@Ignore
+class CountingUniquenessChecker implements UniquenessChecker {
+
+    private final UniquenessChecker delegate;
+    private int count;
+    private boolean result;
+
+    CountingUniquenessChecker() {
+        this(null);
+    }
+
+    CountingUniquenessChecker(final UniquenessChecker delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public boolean exists(final UniqueKeyQuery query) {
+        count++;
+        return delegate != null ? delegate.exists(query) : result;
+    }
+
+    void setResult(final boolean result) {
+        this.result = result;
+    }
+
+    int getCount() {
+        return count;
+    }
+
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import static de.hashcode.validation.TestUtils.assertPropertyPath;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import javax.sql.DataSource;
+import javax.validation.ConstraintViolation;
+import javax.validation.Validation;
+import javax.validation.Validator;
+import javax.validation.ValidatorContext;
+import javax.validation.ValidatorFactory;
+
+import org.hsqldb.jdbc.JDBCDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test for {@link JdbcUniquenessChecker}.
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+public class JdbcUniquenessCheckerTest {
+
+    private Validator validator;
+    private EntityManager em;
+    private JDBCDataSource dataSource;
+    private EntityManagerFactory entityManagerFactory;
+    private List<Object> objectsToRemove;
+
+    @Before
+    public void beforeMethod() {
+        entityManagerFactory = Persistence.createEntityManagerFactory("test");
+
+        dataSource = new JDBCDataSource();
+        dataSource.setDatabase("jdbc:hsqldb:mem:unit-testing-jpa");
+        dataSource.setUser("sa");
+        dataSource.setPassword("");
+
+        final ValidatorFactory validatorFactory = Validation.buildDefaultValidatorFactory();
+        final ValidatorContext validatorContext = validatorFactory.usingContext();
+        validatorContext.constraintValidatorFactory(new ConstraintValidatorFactoryJdbcImpl(dataSource,
+                entityManagerFactory.getMetamodel()));
+        validator = validatorContext.getValidator();
+
+        em = entityManagerFactory.createEntityManager();
+
+        objectsToRemove = new ArrayList<Object>();
+    }
+
+    @After
+    public void afterMethod() {
+        for (final Object entity : objectsToRemove) {
+            em.getTransaction().begin();
+            em.remove(entity);
+            em.getTransaction().commit();
+        }
+    }
+
+    @Test
+    public void testUniqueKey() {
+
+        final Entity1 obj1 = new Entity1("val1", "someValue");
+
+        Set<? extends ConstraintViolation<?>> violations = validator.validate(obj1);
+        assertEquals("Unexpected violations: " + violations + ".", 0, violations.size());
+
+        em.getTransaction().begin();
+        em.persist(obj1);
+        em.getTransaction().commit();
+        objectsToRemove.add(obj1);
+
+        final Entity1 obj2 = new Entity1(obj1.getProp1(), "someValue");
+
+        violations = validator.validate(obj2);
+        assertEquals("Unexpected violations: " + violations + ".", 1, violations.size());
+        assertPropertyPath(violations.iterator().next(), "prop1");
+    }
+
+    @Test
+    public void testUniqueKeyAllowsUpdate() {
+
+        final Entity1 obj1 = new Entity1("val1", "someValue");
+
+        em.getTransaction().begin();
+        em.persist(obj1);
+        em.getTransaction().commit();
+        objectsToRemove.add(obj1);
+
+        final Set<? extends ConstraintViolation<?>> violations = validator.validate(obj1);
+        assertEquals("Unexpected violations: " + violations + ".", 0, violations.size());
+    }
+
+    @Test
+    public void testCheckerReleasesConnectionAfterEachCheck() {
+        final AtomicInteger borrowed = new AtomicInteger();
+        final AtomicInteger open = new AtomicInteger();
+        final JdbcUniquenessChecker checker = new JdbcUniquenessChecker(countingDataSource(dataSource, borrowed,
+                open), entityManagerFactory.getMetamodel());
+        try {
+            final UniqueKeyQuery query = new UniqueKeyQuery(Entity1.class, "prop1", "val1", "id", null);
+            assertFalse(checker.exists(query));
+
+            final Entity1 obj1 = new Entity1("val1", "someValue");
+            em.getTransaction().begin();
+            em.persist(obj1);
+            em.getTransaction().commit();
+            objectsToRemove.add(obj1);
+
+            assertTrue(checker.exists(query));
+            assertFalse(checker.exists(new UniqueKeyQuery(Entity1.class, "prop1", "val1", "id", obj1.getId())));
+            assertEquals("Unexpected number of borrowed connections.", 3, borrowed.get());
+            assertEquals("Connections were not released.", 0, open.get());
+        } finally {
+            checker.close();
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testClosedCheckerFails() {
+        final JdbcUniquenessChecker checker = new JdbcUniquenessChecker(dataSource,
+                entityManagerFactory.getMetamodel());
+        checker.close();
+        checker.exists(new UniqueKeyQuery(Entity1.class, "prop1", "val1", "id", null));
+    }
+
+    @Test
+    public void testRenderQuery() {
+        final JdbcUniquenessChecker checker = new JdbcUniquenessChecker(dataSource,
+                entityManagerFactory.getMetamodel());
+        final UniqueKeyQuery query = new UniqueKeyQuery(Entity1.class, "prop1", "val1", "id", 42L);
+        final String rendered = checker.render(query, false);
+        assertTrue(rendered, rendered.startsWith("SELECT 1 FROM "));
+        assertTrue(rendered, rendered.contains(" <> ?"));
+        assertTrue(rendered, rendered.endsWith(" [val1, 42]"));
+        final String masked = checker.render(query, true);
+        assertTrue(masked, masked.endsWith(" [***, ***]"));
+    }
+
+    /**
+     * Wraps the given data source, counting the borrowed connections and the
+     * connections that are not closed yet.
+     */
+    private static DataSource countingDataSource(final DataSource dataSource, final AtomicInteger borrowed,
+            final AtomicInteger open) {
+        return (DataSource) Proxy.newProxyInstance(DataSource.class.getClassLoader(),
+                new Class<?>[] { DataSource.class }, new InvocationHandler() {
+                    @Override
+                    public Object invoke(final Object proxy, final Method method, final Object[] args)
+                            throws Throwable {
+                        final Object result = invokeUnwrapped(dataSource, method, args);
+                        if (!(result instanceof Connection)) {
+                            return result;
+                        }
+                        borrowed.incrementAndGet();
+                        open.incrementAndGet();
+                        final Connection connection = (Connection) result;
+                        return Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                                new Class<?>[] { Connection.class }, new InvocationHandler() {
+                                    @Override
+                                    public Object invoke(final Object proxy, final Method method,
+                                            final Object[] args) throws Throwable {
+                                        if ("close".equals(method.getName())) {
+                                            open.decrementAndGet();
+                                        }
+                                        return invokeUnwrapped(connection, method, args);
+                                    }
+                                });
+                    }
+                });
+    }
+
+    private static Object invokeUnwrapped(final Object target, final Method method, final Object[] args)
+            throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (final InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+
+import org.junit.Test;
+
+/**
+ * Test for {@link LockingUniquenessChecker} and the {@link UniqueKeyLocks}.
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+public class LockingUniquenessCheckerTest {
+
+    @Test
+    public void testConcurrentCheckWaitsForEndOfScope() throws InterruptedException {
+        final UniqueKeyLocks locks = new UniqueKeyLocks(16, 1, TimeUnit.MINUTES);
+        final LockingUniquenessChecker checker = new LockingUniquenessChecker(new CountingUniquenessChecker(), locks);
+
+        locks.begin();
+        assertFalse(checker.exists(query(new Entity1("val1"))));
+
+        final Thread concurrent = startInScope(locks, checker, new Entity1("val1"));
+        concurrent.join(200);
+        assertTrue("The concurrent check should wait for the lock.", concurrent.isAlive());
+
+        locks.end();
+        concurrent.join(5000);
+        assertFalse(concurrent.isAlive());
+        assertEquals(2, locks.getAcquisitions());
+        assertEquals(1, locks.getContentions());
+        assertEquals(0, locks.getTimeouts());
+        assertTrue(locks.getMaxHoldTime(TimeUnit.MILLISECONDS) >= 200);
+    }
+
+    @Test
+    public void testDifferentKeysDontWait() throws InterruptedException {
+        final UniqueKeyLocks locks = new UniqueKeyLocks(1024, 1, TimeUnit.MINUTES);
+        final LockingUniquenessChecker checker = new LockingUniquenessChecker(new CountingUniquenessChecker(), locks);
+
+        locks.begin();
+        try {
+            assertFalse(checker.exists(query(new Entity1("val1"))));
+            final Thread concurrent = startInScope(locks, checker, new Entity1("val2"));
+            concurrent.join(5000);
+            assertFalse(concurrent.isAlive());
+        } finally {
+            locks.end();
+        }
+        assertEquals(0, locks.getContentions());
+    }
+
+    @Test
+    public void testNoLocksOutsideOfScope() throws InterruptedException {
+        final UniqueKeyLocks locks = new UniqueKeyLocks(16, 1, TimeUnit.MINUTES);
+        final LockingUniquenessChecker checker = new LockingUniquenessChecker(new CountingUniquenessChecker(), locks);
+
+        assertFalse(checker.exists(query(new Entity1("val1"))));
+        assertFalse(checker.exists(query(new Entity1("val1"))));
+        assertEquals(0, locks.getAcquisitions());
+    }
+
+    @Test
+    public void testTimeoutChecksWithoutLock() throws InterruptedException {
+        final UniqueKeyLocks locks = new UniqueKeyLocks(16, 10, TimeUnit.MILLISECONDS);
+        final CountingUniquenessChecker delegate = new CountingUniquenessChecker();
+        final LockingUniquenessChecker checker = new LockingUniquenessChecker(delegate, locks);
+
+        locks.begin();
+        try {
+            assertFalse(checker.exists(query(new Entity1("val1"))));
+            final Thread concurrent = startInScope(locks, checker, new Entity1("val1"));
+            concurrent.join(5000);
+            assertFalse(concurrent.isAlive());
+        } finally {
+            locks.end();
+        }
+        assertEquals(2, delegate.getCount());
+        assertEquals(1, locks.getTimeouts());
+    }
+
+    @Test
+    public void testTimeoutFailsCheckIfConfigured() throws InterruptedException {
+        final UniqueKeyLocks locks = new UniqueKeyLocks(16, 10, TimeUnit.MILLISECONDS);
+        locks.setFailOnTimeout(true);
+        final CountingUniquenessChecker delegate = new CountingUniquenessChecker();
+        final LockingUniquenessChecker checker = new LockingUniquenessChecker(delegate, locks);
+        final AtomicBoolean concurrentResult = new AtomicBoolean();
+
+        locks.begin();
+        try {
+            assertFalse(checker.exists(query(new Entity1("val1"))));
+            final Thread concurrent = new Thread() {
+                @Override
+                public void run() {
+                    locks.begin();
+                    try {
+                        concurrentResult.set(checker.exists(query(new Entity1("val1"))));
+                    } finally {
+                        locks.end();
+                    }
+                }
+            };
+            concurrent.start();
+            concurrent.join(5000);
+            assertFalse(concurrent.isAlive());
+        } finally {
+            locks.end();
+        }
+        assertTrue("The key must be reported as taken.", concurrentResult.get());
+        assertEquals(1, delegate.getCount());
+        assertEquals(1, locks.getTimeouts());
+    }
+
+    @Test
+    public void testReservationDetectsRaceWithOtherNode() {
+        final EntityManagerFactory entityManagerFactory = Persistence.createEntityManagerFactory("test");
+        executeUpdate(entityManagerFactory,
+                "CREATE TABLE unique_key_claim (claim_key VARCHAR(40) PRIMARY KEY, created_at BIGINT NOT NULL)");
+        try {
+            final UniqueKeyReservations reservations = new UniqueKeyReservations(entityManagerFactory,
+                    "unique_key_claim");
+            final UniqueKeyLocks node1 = new UniqueKeyLocks(16, 1, TimeUnit.MINUTES);
+            node1.setReservations(reservations);
+            final UniqueKeyLocks node2 = new UniqueKeyLocks(16, 1, TimeUnit.MINUTES);
+            node2.setReservations(reservations);
+            final LockingUniquenessChecker checker1 = new LockingUniquenessChecker(new CountingUniquenessChecker(),
+                    node1);
+            final LockingUniquenessChecker checker2 = new LockingUniquenessChecker(new CountingUniquenessChecker(),
+                    node2);
+
+            node1.begin();
+            node2.begin();
+            try {
+                assertFalse(checker1.exists(query(new Entity1("val1"))));
+                assertTrue(checker2.exists(query(new Entity1("val1"))));
+                assertFalse(checker2.exists(query(new Entity1("val2"))));
+            } finally {
+                node2.end();
+                node1.end();
+            }
+            assertEquals(1, node2.getReservationConflicts());
+
+            node2.begin();
+            try {
+                assertFalse("The reservation should be released.", checker2.exists(query(new Entity1("val1"))));
+            } finally {
+                node2.end();
+            }
+        } finally {
+            executeUpdate(entityManagerFactory, "DROP TABLE unique_key_claim");
+            entityManagerFactory.close();
+        }
+    }
+
+    private static Thread startInScope(final UniqueKeyLocks locks, final UniquenessChecker checker,
+            final Entity1 entity) {
+        final Thread thread = new Thread() {
+            @Override
+            public void run() {
+                locks.begin();
+                try {
+                    checker.exists(query(entity));
+                } finally {
+                    locks.end();
+                }
+            }
+        };
+        thread.start();
+        return thread;
+    }
+
+    private static void executeUpdate(final EntityManagerFactory entityManagerFactory, final String sql) {
+        final EntityManager em = entityManagerFactory.createEntityManager();
+        try {
+            em.getTransaction().begin();
+            em.createNativeQuery(sql).executeUpdate();
+            em.getTransaction().commit();
+        } finally {
+            em.close();
+        }
+    }
+
+    private static UniqueKeyQuery query(final Entity1 entity) {
+        return new UniqueKeyQuery(entity, Entity1.class, Collections.<String, Object> emptyMap(), "prop1",
+                entity.getProp1(), "id", null);
+    }
+
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import javax.validation.ConstraintViolation;
+import javax.validation.Valid;
+import javax.validation.Validation;
+import javax.validation.Validator;
+import javax.validation.ValidatorContext;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Test for {@link MemoizingUniquenessChecker} and the
+ * {@link UniqueKeyValidationScope}.
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+public class MemoizingUniquenessCheckerTest {
+
+    private final CountingUniquenessChecker delegate = new CountingUniquenessChecker();
+    private final MemoizingUniquenessChecker checker = new MemoizingUniquenessChecker(delegate);
+
+    @After
+    public void afterMethod() {
+        while (UniqueKeyValidationScope.current() != null) {
+            UniqueKeyValidationScope.end();
+        }
+    }
+
+    @Test
+    public void testIdenticalLookupsAreExecutedOncePerScope() {
+        final Entity1 entity = new Entity1("val1");
+        UniqueKeyValidationScope.begin();
+        assertFalse(checker.exists(query(entity)));
+        assertFalse(checker.exists(query(entity)));
+        assertEquals("Unexpected number of queries.", 1, delegate.getCount());
+        UniqueKeyValidationScope.end();
+
+        UniqueKeyValidationScope.begin();
+        assertFalse(checker.exists(query(entity)));
+        assertEquals("Unexpected number of queries.", 2, delegate.getCount());
+    }
+
+    @Test
+    public void testLookupsAreDelegatedOutsideOfScope() {
+        final Entity1 entity = new Entity1("val1");
+        assertFalse(checker.exists(query(entity)));
+        assertFalse(checker.exists(query(entity)));
+        assertEquals("Unexpected number of queries.", 2, delegate.getCount());
+    }
+
+    @Test
+    public void testDuplicatesWithinScopeAreDetected() {
+        UniqueKeyValidationScope.begin();
+        assertFalse(checker.exists(query(new Entity1("val1"))));
+        assertTrue(checker.exists(query(new Entity1("val1"))));
+        assertFalse(checker.exists(query(new Entity1("val2"))));
+        assertEquals("Unexpected number of queries.", 2, delegate.getCount());
+    }
+
+    @Test
+    public void testScopedValidatorDetectsDuplicatesInObjectGraph() {
+        final EntityManagerFactory entityManagerFactory = Persistence.createEntityManagerFactory("test");
+        final ValidatorContext validatorContext = Validation.buildDefaultValidatorFactory().usingContext();
+        validatorContext.constraintValidatorFactory(new ConstraintValidatorFactoryEMFImpl(entityManagerFactory,
+                MemoizingUniquenessChecker.decorator()));
+        final Validator validator = new ScopedValidator(validatorContext.getValidator());
+
+        final Graph graph = new Graph(new Entity1("val1", "someValue"), new Entity1("val1", "someValue"));
+        final Set<ConstraintViolation<Graph>> violations = validator.validate(graph);
+        assertEquals("Unexpected violations: " + violations + ".", 1, violations.size());
+
+        final Graph graph2 = new Graph(new Entity1("val1", "someValue"), new Entity1("val2", "someValue"));
+        assertTrue(validator.validate(graph2).isEmpty());
+    }
+
+    private static UniqueKeyQuery query(final Entity1 entity) {
+        return new UniqueKeyQuery(entity, Entity1.class, Collections.<String, Object> emptyMap(), "prop1",
+                entity.getProp1(), "id", null);
+    }
+
+    static class Graph {
+
+        @Valid
+        private final List<Entity1> entities;
+
+        Graph(final Entity1... entities) {
+            this.entities = Arrays.asList(entities);
+        }
+
+        public List<Entity1> getEntities() {
+            return entities;
+        }
+    }
+
+}
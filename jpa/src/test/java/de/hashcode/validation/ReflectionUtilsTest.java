@@ -0,0 +1,184 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import javax.persistence.Access;
+import javax.persistence.AccessType;
+import javax.persistence.Id;
+import javax.persistence.MappedSuperclass;
+import javax.persistence.metamodel.Metamodel;
+
+import org.junit.Test;
+
+/**
+ * Test for the access mode detection of {@link ReflectionUtils}, here as it
+ * needs jpa annotations.
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+public class ReflectionUtilsTest {
+
+    @Test
+    public void testFieldAccessIsDetectedFromIdPlacement() throws Exception {
+        assertTrue(ReflectionUtils.isFieldAccess(FieldAccessEntity.class));
+        assertEquals("field", ReflectionUtils.getPropertyValue(new FieldAccessEntity(), "name"));
+        // fields of superclasses are found as well
+        assertTrue(ReflectionUtils.isFieldAccess(Entity2.class));
+        assertEquals("val1", ReflectionUtils.getPropertyValue(new Entity2("val1"), "prop1"));
+    }
+
+    @Test
+    public void testProxiesAreReadViaGetters() throws Exception {
+        assertFalse(ReflectionUtils.isFieldAccess(FieldAccessEntityProxy.class));
+        assertEquals("proxy", ReflectionUtils.getPropertyValue(new FieldAccessEntityProxy(), "name"));
+    }
+
+    @Test
+    public void testNestedProxiesAreReadViaGetters() throws Exception {
+        // the declared type of the association uses field access, the value is a proxy
+        assertEquals("proxy", ReflectionUtils.getPropertyValue(new Owner(new FieldAccessEntityProxy()),
+                "child.name"));
+        assertEquals("field", ReflectionUtils.getPropertyValue(new Owner(new FieldAccessEntity()), "child.name"));
+    }
+
+    @Test
+    public void testPropertyAccess() throws Exception {
+        assertFalse(ReflectionUtils.isFieldAccess(PropertyAccessEntity.class));
+        assertEquals("getter", ReflectionUtils.getPropertyValue(new PropertyAccessEntity(), "name"));
+        assertFalse(ReflectionUtils.isFieldAccess(ExplicitPropertyAccessEntity.class));
+        assertEquals("getter", ReflectionUtils.getPropertyValue(new ExplicitPropertyAccessEntity(), "name"));
+    }
+
+    @Test
+    public void testNonEntitiesUseGetters() throws Exception {
+        assertFalse(ReflectionUtils.isFieldAccess(String.class));
+        assertEquals("String", ReflectionUtils.getPropertyValue("foo", "class.simpleName"));
+    }
+
+    @Test
+    public void testEntityClassesAreCachedPerMetamodel() {
+        final Metamodel withEntity2 = metamodel(Entity2.class);
+        final Metamodel withoutEntities = metamodel();
+        assertEquals(Entity2.class, EntityReflectionUtils.getEntityClass(withEntity2, Entity2.class));
+        assertNull(EntityReflectionUtils.getEntityClass(withoutEntities, Entity2.class));
+        assertEquals(Entity2.class, EntityReflectionUtils.getEntityClass(withEntity2, Entity2.class));
+    }
+
+    /**
+     * A metamodel that only knows whether a class is one of the given entities.
+     */
+    private static Metamodel metamodel(final Class<?>... entities) {
+        return (Metamodel) Proxy.newProxyInstance(Metamodel.class.getClassLoader(), new Class<?>[] { Metamodel.class },
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                        if (method.getName().equals("entity")) {
+                            for (final Class<?> entity : entities) {
+                                if (entity == args[0]) {
+                                    return null;
+                                }
+                            }
+                            throw new IllegalArgumentException("Not an entity: " + args[0]);
+                        }
+                        if (method.getName().equals("hashCode")) {
+                            return System.identityHashCode(proxy);
+                        }
+                        if (method.getName().equals("equals")) {
+                            return proxy == args[0];
+                        }
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    @MappedSuperclass
+    static class FieldAccessEntity {
+        @Id
+        private long id;
+        private final String name = "field";
+
+        public long getId() {
+            return id;
+        }
+
+        public String getName() {
+            throw new IllegalStateException("The getter must not be invoked with field access.");
+        }
+    }
+
+    /**
+     * Like a provider proxy, an unmapped subclass whose getters delegate.
+     */
+    static class FieldAccessEntityProxy extends FieldAccessEntity {
+        @Override
+        public String getName() {
+            return "proxy";
+        }
+    }
+
+    static class Owner {
+        private final FieldAccessEntity child;
+
+        Owner(final FieldAccessEntity child) {
+            this.child = child;
+        }
+
+        public FieldAccessEntity getChild() {
+            return child;
+        }
+    }
+
+    @MappedSuperclass
+    static class PropertyAccessEntity {
+        private long id;
+        private final String name = "field";
+
+        @Id
+        public long getId() {
+            return id;
+        }
+
+        public String getName() {
+            return "getter";
+        }
+    }
+
+    @MappedSuperclass
+    @Access(AccessType.PROPERTY)
+    static class ExplicitPropertyAccessEntity {
+        @Id
+        private long id;
+        private final String name = "field";
+
+        public long getId() {
+            return id;
+        }
+
+        public String getName() {
+            return "getter";
+        }
+    }
+
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Test for {@link ReplicaRoutingUniquenessChecker} and the
+ * {@link RecheckPolicy}s.
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+public class ReplicaRoutingUniquenessCheckerTest {
+
+    @Test
+    public void testWhenFreeRechecksFreeKeysOnly() {
+        final CountingUniquenessChecker replica = new CountingUniquenessChecker();
+        final CountingUniquenessChecker primary = new CountingUniquenessChecker();
+        final ReplicaRoutingUniquenessChecker checker = new ReplicaRoutingUniquenessChecker(replica, primary,
+                RecheckPolicies.whenFree());
+
+        primary.setResult(true);
+        assertTrue("The key was inserted on the primary but not yet replicated.", checker.exists(query("val1")));
+        assertEquals(1, primary.getCount());
+
+        replica.setResult(true);
+        assertTrue(checker.exists(query("val1")));
+        assertEquals(2, replica.getCount());
+        assertEquals("A key taken on the replica should not be rechecked.", 1, primary.getCount());
+    }
+
+    @Test
+    public void testLagWindowRechecksRecentlyChangedKeys() throws InterruptedException {
+        final CountingUniquenessChecker replica = new CountingUniquenessChecker();
+        final CountingUniquenessChecker primary = new CountingUniquenessChecker();
+        final LagWindowRecheckPolicy policy = new LagWindowRecheckPolicy(100, TimeUnit.MILLISECONDS);
+        final UniqueKeyInvalidationChannel channel = new LoopbackInvalidationChannel();
+        channel.addListener(policy);
+        final ReplicaRoutingUniquenessChecker checker = new ReplicaRoutingUniquenessChecker(replica, primary,
+                policy);
+
+        assertFalse(checker.exists(query("val1")));
+        assertEquals(0, primary.getCount());
+
+        channel.publish(new UniqueKeyChange(Entity1.class.getName(), "prop1", "val1"));
+        primary.setResult(true);
+        assertTrue(checker.exists(query("val1")));
+        assertFalse("Another key is not affected.", checker.exists(query("val2")));
+        assertEquals(1, primary.getCount());
+
+        Thread.sleep(150);
+        assertFalse("The lag window is over.", checker.exists(query("val1")));
+        assertEquals(1, primary.getCount());
+    }
+
+    @Test
+    public void testLagWindowRechecksAssociationIds() {
+        final LagWindowRecheckPolicy policy = new LagWindowRecheckPolicy(1, TimeUnit.MINUTES);
+        policy.onChange(new UniqueKeyChange(Entity1.class.getName(), "owner", null));
+        assertTrue(policy.recheckOnPrimary(new UniqueKeyQuery(Entity1.class, "owner.id", 1L, "id", null), true));
+        assertFalse(policy.recheckOnPrimary(new UniqueKeyQuery(Entity1.class, "prop1", "val1", "id", null), true));
+    }
+
+    @Test
+    public void testLagWindowRechecksAllValuesOfUnknownChanges() {
+        final LagWindowRecheckPolicy policy = new LagWindowRecheckPolicy(1, TimeUnit.MINUTES);
+        policy.onChange(UniqueKeyChange.withUnknownValue(Entity1.class.getName(), "prop1"));
+        assertTrue(policy.recheckOnPrimary(query("val1"), true));
+        assertTrue(policy.recheckOnPrimary(query("val2"), true));
+        assertFalse(policy.recheckOnPrimary(new UniqueKeyQuery(Entity1.class, "prop2", "val1", "id", null), true));
+    }
+
+    @Test
+    public void testLagWindowExpiresChanges() throws InterruptedException {
+        final LagWindowRecheckPolicy policy = new LagWindowRecheckPolicy(50, TimeUnit.MILLISECONDS);
+        policy.onChange(new UniqueKeyChange(Entity1.class.getName(), "prop1", "val1"));
+        policy.onChange(new UniqueKeyChange(Entity1.class.getName(), "prop1", "val2"));
+        assertEquals(2, policy.size());
+
+        Thread.sleep(100);
+        policy.onChange(new UniqueKeyChange(Entity1.class.getName(), "prop1", "val3"));
+        assertEquals("Expired changes are removed.", 1, policy.size());
+        assertFalse(policy.recheckOnPrimary(query("val1"), true));
+        assertTrue(policy.recheckOnPrimary(query("val3"), true));
+    }
+
+    @Test
+    public void testFailingReplicaFallsBackToPrimary() {
+        final CountingUniquenessChecker primary = new CountingUniquenessChecker();
+        primary.setResult(true);
+        final ReplicaRoutingUniquenessChecker checker = new ReplicaRoutingUniquenessChecker(
+                new UniquenessChecker() {
+                    @Override
+                    public boolean exists(final UniqueKeyQuery query) {
+                        throw new RuntimeException("Replica not available.");
+                    }
+                }, primary, RecheckPolicies.whenFree());
+
+        assertTrue(checker.exists(query("val1")));
+        assertEquals(1, primary.getCount());
+    }
+
+    @Test
+    public void testAnyOf() {
+        final RecheckPolicy policy = RecheckPolicies.anyOf(RecheckPolicies.whenFree(), new LagWindowRecheckPolicy(1,
+                TimeUnit.MINUTES));
+        assertTrue(policy.recheckOnPrimary(query("val1"), false));
+        assertFalse(policy.recheckOnPrimary(query("val1"), true));
+    }
+
+    private static UniqueKeyQuery query(final String value) {
+        return new UniqueKeyQuery(null, Entity1.class, Collections.<String, Object> emptyMap(), "prop1", value, "id",
+                null);
+    }
+
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.PersistenceException;
+import javax.validation.Validation;
+
+import org.junit.Test;
+
+import de.hashcode.validation.UniquenessCheckGuard.DegradedMode;
+import de.hashcode.validation.UniquenessCheckGuard.State;
+
+/**
+ * Test for {@link ResilientUniquenessChecker} and the
+ * {@link UniquenessCheckGuard}.
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+public class ResilientUniquenessCheckerTest {
+
+    @Test
+    public void testCircuitBreakerOpensAfterConsecutiveFailures() {
+        final UniquenessCheckGuard guard = new UniquenessCheckGuard(1, 2, 1, TimeUnit.HOURS, DegradedMode.FAIL);
+        final FailingUniquenessChecker delegate = new FailingUniquenessChecker(Integer.MAX_VALUE);
+        final ResilientUniquenessChecker checker = new ResilientUniquenessChecker(delegate, guard);
+
+        assertTrue(checker.exists(query(new Entity1("val1"))));
+        assertEquals(State.CLOSED, guard.getState());
+        assertTrue(checker.exists(query(new Entity1("val1"))));
+        assertEquals(State.OPEN, guard.getState());
+        assertTrue(checker.exists(query(new Entity1("val1"))));
+
+        assertEquals("Unexpected number of queries.", 2, delegate.count);
+        assertEquals(2, guard.getFailures());
+        assertEquals(1, guard.getTrips());
+        assertEquals(1, guard.getShortCircuits());
+    }
+
+    @Test
+    public void testCircuitBreakerClosesAfterSuccessfulTrial() {
+        final UniquenessCheckGuard guard = new UniquenessCheckGuard(1, 1, 0, TimeUnit.MILLISECONDS,
+                DegradedMode.PASS);
+        final FailingUniquenessChecker delegate = new FailingUniquenessChecker(1);
+        final ResilientUniquenessChecker checker = new ResilientUniquenessChecker(delegate, guard);
+
+        assertFalse(checker.exists(query(new Entity1("val1"))));
+        assertEquals(State.OPEN, guard.getState());
+        assertTrue(checker.exists(query(new Entity1("val1"))));
+        assertEquals(State.CLOSED, guard.getState());
+        assertEquals("Unexpected number of queries.", 2, delegate.count);
+    }
+
+    @Test
+    public void testBulkheadRejectsChecksAboveLimit() {
+        final UniquenessCheckGuard guard = new UniquenessCheckGuard(1, 1, 1, TimeUnit.HOURS, DegradedMode.FAIL);
+        final ResilientUniquenessChecker[] checker = new ResilientUniquenessChecker[1];
+        checker[0] = new ResilientUniquenessChecker(new UniquenessChecker() {
+            @Override
+            public boolean exists(final UniqueKeyQuery query) {
+                // a concurrent check while this one is in flight
+                assertTrue(checker[0].exists(query));
+                return false;
+            }
+        }, guard);
+
+        assertFalse(checker[0].exists(query(new Entity1("val1"))));
+        assertEquals(1, guard.getRejections());
+        assertEquals(State.CLOSED, guard.getState());
+    }
+
+    @Test
+    public void testDeferredModeTranslatesUniqueConstraintViolation() {
+        final UniquenessCheckGuard guard = new UniquenessCheckGuard(1, 1, 1, TimeUnit.HOURS, DegradedMode.DEFER);
+        final ResilientUniquenessChecker checker = new ResilientUniquenessChecker(new FailingUniquenessChecker(
+                Integer.MAX_VALUE), guard);
+        final Entity1 entity = new Entity1("val1");
+        assertFalse(checker.exists(query(entity)));
+
+        final UniqueKeyViolationTranslator translator = new UniqueKeyViolationTranslator(Validation
+                .buildDefaultValidatorFactory());
+        assertNotNull(translator.translate(uniqueViolation(), entity));
+    }
+
+    @Test
+    public void testDeferredModeUsesDeclaredPropertyOfAssociations() {
+        final UniquenessCheckGuard guard = new UniquenessCheckGuard(1, 1, 1, TimeUnit.HOURS, DegradedMode.DEFER);
+        final ResilientUniquenessChecker checker = new ResilientUniquenessChecker(new FailingUniquenessChecker(
+                Integer.MAX_VALUE), guard);
+        final Entity8 entity = new Entity8(new Entity7Account("login1"));
+        // the association is queried by the id of the associated entity
+        assertFalse(checker.exists(new UniqueKeyQuery(entity, Entity8.class, Collections.<String, Object> emptyMap(),
+                "account", "account.id", 1L, "id", null)));
+
+        final UniqueKeyViolationTranslator translator = new UniqueKeyViolationTranslator(Validation
+                .buildDefaultValidatorFactory());
+        assertNotNull(translator.translate(uniqueViolation(), entity));
+    }
+
+    @Test
+    public void testDeferredMarksArePerInstanceAndClearedOnTranslate() {
+        final IdentifiedBean bean = new IdentifiedBean();
+        UniqueKeyViolationTranslator.defer(bean, "prop1");
+        // the id is assigned on flush, which changes the hashCode
+        bean.id = 1L;
+        assertTrue(UniqueKeyViolationTranslator.isDeferred(bean, "prop1"));
+        final IdentifiedBean equal = new IdentifiedBean();
+        equal.id = 1L;
+        assertFalse("An equal instance must not share the marks.", UniqueKeyViolationTranslator.isDeferred(equal,
+                "prop1"));
+
+        final UniqueKeyViolationTranslator translator = new UniqueKeyViolationTranslator(Validation
+                .buildDefaultValidatorFactory());
+        assertNull(translator.translate(new PersistenceException("Connection lost."), bean));
+        assertFalse("The marks must be cleared after a failed flush.", UniqueKeyViolationTranslator.isDeferred(
+                bean, "prop1"));
+    }
+
+    @Test
+    public void testDescribedKeyContainsNoValues() {
+        final String description = new UniqueKeyQuery(Entity1.class, Collections.<String, Object> singletonMap(
+                "tenant", "secret-tenant"), "prop1", "secret-value", "id", 42L).describeKey();
+        assertTrue(description, description.contains("prop1") && description.contains("tenant"));
+        assertFalse(description, description.contains("secret") || description.contains("42"));
+    }
+
+    private static PersistenceException uniqueViolation() {
+        return new PersistenceException(new SQLIntegrityConstraintViolationException(
+                "unique constraint or index violation", "23505"));
+    }
+
+    private static UniqueKeyQuery query(final Entity1 entity) {
+        return new UniqueKeyQuery(entity, Entity1.class, Collections.<String, Object> emptyMap(), "prop1",
+                entity.getProp1(), "id", null);
+    }
+
+    /**
+     * Fails the given number of times, afterwards reports every key as taken.
+     */
+    private static class FailingUniquenessChecker implements UniquenessChecker {
+
+        private final int failures;
+        private int count;
+
+        FailingUniquenessChecker(final int failures) {
+            this.failures = failures;
+        }
+
+        @Override
+        public boolean exists(final UniqueKeyQuery query) {
+            if (count++ < failures) {
+                throw new RuntimeException("Query timed out.");
+            }
+            return true;
+        }
+    }
+
+    /**
+     * A bean with an id based <code>equals</code>/<code>hashCode</code>.
+     */
+    private static class IdentifiedBean {
+
+        private Long id;
+
+        @Override
+        public int hashCode() {
+            return id == null ? 0 : id.hashCode();
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            return obj instanceof IdentifiedBean && id != null && id.equals(((IdentifiedBean) obj).id);
+        }
+    }
+
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.hashcode.validation.UniqueKeyInvalidationChannel.Listener;
+
+/**
+ * Starts a {@link SocketInvalidationChannel} for manual tests with several
+ * local jvms, e.g.
+ * <code>SocketInvalidationChannelMain 4711 localhost:4712 localhost:4713</code>
+ * . Received changes are logged, each line read from stdin is published as
+ * the value of a change.
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+public class SocketInvalidationChannelMain {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SocketInvalidationChannelMain.class);
+
+    public static void main(final String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: SocketInvalidationChannelMain <port> [<host>:<port>...]");
+            System.exit(1);
+        }
+        final SocketInvalidationChannel channel = new SocketInvalidationChannel(Integer.parseInt(args[0]));
+        for (int i = 1; i < args.length; i++) {
+            final int idx = args[i].lastIndexOf(':');
+            channel.addPeer(new InetSocketAddress(args[i].substring(0, idx), Integer.parseInt(args[i]
+                    .substring(idx + 1))));
+        }
+        channel.addListener(new Listener() {
+            @Override
+            public void onChange(final UniqueKeyChange change) {
+                LOG.info("Received {}", change);
+            }
+        });
+        final BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+        String line;
+        while ((line = in.readLine()) != null) {
+            channel.publish(new UniqueKeyChange(Object.class.getName(), "value", line));
+        }
+        channel.close();
+    }
+
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Persistence;
+import javax.validation.ConstraintViolation;
+import javax.validation.Validation;
+import javax.validation.ValidationException;
+import javax.validation.Validator;
+import javax.validation.ValidatorContext;
+import javax.validation.ValidatorFactory;
+import javax.validation.constraints.Size;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test for the {@link Unique} property constraint, checked by the
+ * {@link UniqueCheckingValidator}.
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+public class UniqueCheckingValidatorTest {
+
+    private EntityManagerFactory entityManagerFactory;
+    private EntityManager em;
+    private CountingUniquenessChecker checker;
+    private UniqueCheckingValidator validator;
+    private List<Object> objectsToRemove;
+
+    @Before
+    public void beforeMethod() {
+        entityManagerFactory = Persistence.createEntityManagerFactory("test");
+        em = entityManagerFactory.createEntityManager();
+
+        checker = new CountingUniquenessChecker(new JpaUniquenessChecker(EntityManagerProviders
+                .perCheck(entityManagerFactory)));
+        final UniqueKeyValidator uniqueKeyValidator = new UniqueKeyValidator(checker);
+        uniqueKeyValidator.setMetamodel(entityManagerFactory.getMetamodel(), entityManagerFactory
+                .getPersistenceUnitUtil());
+        final ValidatorFactory validatorFactory = Validation.buildDefaultValidatorFactory();
+        validator = new UniqueCheckingValidator(validatorFactory.getValidator(), validatorFactory
+                .getMessageInterpolator(), uniqueKeyValidator);
+
+        objectsToRemove = new ArrayList<Object>();
+    }
+
+    @After
+    public void afterMethod() {
+        for (final Object entity : objectsToRemove) {
+            em.getTransaction().begin();
+            em.remove(entity);
+            em.getTransaction().commit();
+        }
+        em.close();
+        entityManagerFactory.close();
+    }
+
+    @Test
+    public void testValidatePropertyRunsOnlyTheQueryOfTheProperty() {
+        persist(new Entity9("login1", "mail1", "tenant1"));
+
+        final Entity9 entity = new Entity9("login1", "mail1", "tenant1");
+        final Set<ConstraintViolation<Entity9>> violations = validator.validateProperty(entity, "login");
+        assertEquals("Unexpected violations: " + violations + ".", 1, violations.size());
+        final ConstraintViolation<Entity9> violation = violations.iterator().next();
+        assertEquals("login", violation.getPropertyPath().toString());
+        assertEquals("must be unique", violation.getMessage());
+        assertEquals(Unique.class, violation.getConstraintDescriptor().getAnnotation().annotationType());
+        assertEquals(1, checker.getCount());
+    }
+
+    @Test
+    public void testPlainValidatorWarnsAboutUncheckedUniqueProperties() {
+        persist(new Entity9("login1", "mail1", "tenant1"));
+
+        final Set<ConstraintViolation<Entity9>> violations = Validation.buildDefaultValidatorFactory()
+                .getValidator().validate(new Entity9("login1", "mail1", "tenant1"));
+        assertEquals("The plain validator doesn't check @Unique.", 0, violations.size());
+        assertTrue(UniqueValidator.isWarned());
+    }
+
+    @Test
+    public void testPlainValidatorWithUniquenessCheckerFailsForUniqueProperties() {
+        final ValidatorFactory validatorFactory = Validation.buildDefaultValidatorFactory();
+        final ValidatorContext validatorContext = validatorFactory.usingContext();
+        validatorContext.constraintValidatorFactory(new ConstraintValidatorFactoryEMFImpl(entityManagerFactory));
+        final Validator plainValidator = validatorContext.getValidator();
+        try {
+            plainValidator.validate(new Entity9("login1", "mail1", "tenant1"));
+            fail("The plain validator must not silently skip @Unique.");
+        } catch (final ValidationException e) {
+            assertTrue(String.valueOf(e), hasCause(e, IllegalStateException.class));
+        }
+
+        final UniqueKeyValidator uniqueKeyValidator = new UniqueKeyValidator(checker);
+        uniqueKeyValidator.setMetamodel(entityManagerFactory.getMetamodel(), entityManagerFactory
+                .getPersistenceUnitUtil());
+        final Validator decorated = new UniqueCheckingValidator(plainValidator, validatorFactory
+                .getMessageInterpolator(), uniqueKeyValidator);
+        assertTrue(decorated.validate(new Entity9("login1", "mail1", "tenant1")).isEmpty());
+    }
+
+    @Test
+    public void testValidateChecksAllUniqueProperties() {
+        persist(new Entity9("login1", "mail1", "tenant1"));
+
+        assertEquals(2, validator.validate(new Entity9("login1", "mail1", "tenant1")).size());
+        assertEquals(2, checker.getCount());
+
+        assertEquals("The email is unique per tenant.", 0, validator.validate(
+                new Entity9("login2", "mail1", "tenant2")).size());
+    }
+
+    @Test
+    public void testUpdateExcludesEntity() {
+        final Entity9 entity = persist(new Entity9("login1", "mail1", "tenant1"));
+        assertEquals(0, validator.validateProperty(entity, "login").size());
+        assertEquals(0, validator.validateProperty(entity, "email").size());
+    }
+
+    @Test
+    public void testNoQueryForOtherwiseInvalidOrNullProperty() {
+        assertEquals(1, validator.validateProperty(new Entity9("login-that-is-too-long", "mail1", "tenant1"),
+                "login").size());
+        assertEquals(0, validator.validateProperty(new Entity9(null, "mail1", "tenant1"), "login").size());
+        assertEquals(0, checker.getCount());
+    }
+
+    @Test
+    public void testValidateValue() {
+        persist(new Entity9("login1", "mail1", "tenant1"));
+
+        assertEquals(1, validator.validateValue(Entity9.class, "login", "login1").size());
+        assertEquals(0, validator.validateValue(Entity9.class, "login", "login2").size());
+        assertEquals("Scoped properties are not checked by value.", 0, validator.validateValue(Entity9.class,
+                "email", "mail1").size());
+        assertEquals(2, checker.getCount());
+    }
+
+    @Test
+    public void testGroups() {
+        persist(new Entity9("login1", "mail1", "tenant1"));
+
+        assertEquals(0, validator.validateProperty(new Entity9("login1", "mail1", "tenant1"), "login",
+                Entity9.Partial.class).size());
+        assertEquals(0, checker.getCount());
+    }
+
+    private static boolean hasCause(final Throwable e, final Class<? extends Throwable> type) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (type.isInstance(cause)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Entity9 persist(final Entity9 entity) {
+        em.getTransaction().begin();
+        em.persist(entity);
+        em.getTransaction().commit();
+        objectsToRemove.add(entity);
+        return entity;
+    }
+
+}
+
+@SuppressWarnings("serial")
+@Entity
+class Entity9 implements Serializable {
+
+    interface Partial {
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE)
+    private long id;
+
+    @Column
+    @Unique
+    @Size(max = 10)
+    private String login;
+    @Column
+    @Unique(scope = "tenant")
+    private String email;
+    @Column
+    private String tenant;
+
+    public Entity9() {
+    }
+
+    public Entity9(final String login, final String email, final String tenant) {
+        this.login = login;
+        this.email = email;
+        this.tenant = tenant;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getLogin() {
+        return login;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public String getTenant() {
+        return tenant;
+    }
+
+}
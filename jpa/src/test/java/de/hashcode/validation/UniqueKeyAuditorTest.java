@@ -0,0 +1,159 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test for {@link UniqueKeyAuditor}.
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+public class UniqueKeyAuditorTest {
+
+    private EntityManagerFactory entityManagerFactory;
+    private EntityManager em;
+    private List<Object> objectsToRemove;
+    private UniqueKeyAuditor auditor;
+
+    @Before
+    public void beforeMethod() {
+        entityManagerFactory = Persistence.createEntityManagerFactory("test");
+        em = entityManagerFactory.createEntityManager();
+        objectsToRemove = new ArrayList<Object>();
+        auditor = new UniqueKeyAuditor(entityManagerFactory);
+    }
+
+    @After
+    public void afterMethod() {
+        em.getTransaction().begin();
+        // in reverse order, so that referencing entities are removed first
+        for (int i = objectsToRemove.size() - 1; i >= 0; i--) {
+            em.remove(objectsToRemove.get(i));
+        }
+        em.getTransaction().commit();
+    }
+
+    @Test
+    public void testDuplicatesAreReportedPageByPage() {
+        persist(new Entity1("audit-a"), new Entity1("audit-a"), new Entity1("audit-a"), new Entity1("audit-b"),
+                new Entity1("audit-b"), new Entity1("audit-c"), new Entity1(null), new Entity1(null));
+        auditor.setPageSize(1);
+        auditor.setMaxIdsPerKey(2);
+
+        final List<UniqueKeyDuplicate> duplicates = new ArrayList<UniqueKeyDuplicate>();
+        final long found = auditor.audit(Entity1.class, new UniqueKeyAuditor.DuplicateHandler() {
+            @Override
+            public void onDuplicate(final UniqueKeyDuplicate duplicate) {
+                duplicates.add(duplicate);
+            }
+        });
+
+        assertEquals("Unexpected duplicates: " + duplicates, 2, found);
+        assertEquals(2, duplicates.size());
+
+        final UniqueKeyDuplicate first = duplicates.get(0);
+        assertEquals(Entity1.class, first.getEntityClass());
+        assertEquals("audit-a", first.getValues().get("prop1"));
+        assertEquals(3, first.getCount());
+        assertEquals(2, first.getIds().size());
+        assertEquals(Arrays.<Object> asList(((Entity1) objectsToRemove.get(0)).getId(), ((Entity1) objectsToRemove
+                .get(1)).getId()), first.getIds());
+
+        final UniqueKeyDuplicate second = duplicates.get(1);
+        assertEquals("audit-b", second.getValues().get("prop1"));
+        assertEquals(2, second.getCount());
+        assertEquals(2, second.getIds().size());
+    }
+
+    @Test
+    public void testNoDuplicates() {
+        persist(new Entity1("audit-a"), new Entity1("audit-b"));
+        assertEquals(0, auditor.audit(Entity1.class, new UniqueKeyAuditor.DuplicateHandler() {
+            @Override
+            public void onDuplicate(final UniqueKeyDuplicate duplicate) {
+                throw new AssertionError("Unexpected duplicate " + duplicate);
+            }
+        }));
+    }
+
+    @Test
+    public void testAssociationsAreGroupedById() {
+        final Entity7Account account = new Entity7Account("audit");
+        persist(account, new Entity8(account), new Entity8(account));
+
+        final List<UniqueKeyDuplicate> duplicates = new ArrayList<UniqueKeyDuplicate>();
+        auditor.audit(Entity8.class, new UniqueKeyAuditor.DuplicateHandler() {
+            @Override
+            public void onDuplicate(final UniqueKeyDuplicate duplicate) {
+                duplicates.add(duplicate);
+            }
+        });
+        assertEquals("Unexpected duplicates: " + duplicates, 1, duplicates.size());
+        assertEquals(account.getId(), duplicates.get(0).getValues().get("account.id"));
+        assertTrue(duplicates.get(0).getIds().size() == 2);
+    }
+
+    @Test
+    public void testScopedKeysArePagedPerNullScope() {
+        persist(new Entity4("t1", "audit-a"), new Entity4("t1", "audit-a"), new Entity4("t2", "audit-a"),
+                new Entity4("t2", "audit-a"), new Entity4(null, "audit-a"), new Entity4(null, "audit-a"),
+                new Entity4("t1", "audit-b"));
+        auditor.setPageSize(1);
+
+        final List<UniqueKeyDuplicate> duplicates = new ArrayList<UniqueKeyDuplicate>();
+        final long found = auditor.audit(Entity4.class, new UniqueKeyAuditor.DuplicateHandler() {
+            @Override
+            public void onDuplicate(final UniqueKeyDuplicate duplicate) {
+                duplicates.add(duplicate);
+            }
+        });
+
+        assertEquals("Unexpected duplicates: " + duplicates, 3, found);
+        assertEquals("t1", duplicates.get(0).getValues().get("tenant"));
+        assertEquals("t2", duplicates.get(1).getValues().get("tenant"));
+        assertEquals(null, duplicates.get(2).getValues().get("tenant"));
+        for (final UniqueKeyDuplicate duplicate : duplicates) {
+            assertEquals("audit-a", duplicate.getValues().get("email"));
+            assertEquals(2, duplicate.getCount());
+            // the ids of the same email in the other tenants are not included
+            assertEquals(2, duplicate.getIds().size());
+        }
+    }
+
+    private void persist(final Object... entities) {
+        em.getTransaction().begin();
+        for (final Object entity : entities) {
+            em.persist(entity);
+        }
+        em.getTransaction().commit();
+        objectsToRemove.addAll(Arrays.asList(entities));
+    }
+
+}
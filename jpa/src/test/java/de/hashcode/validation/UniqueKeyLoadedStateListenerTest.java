@@ -0,0 +1,184 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import static de.hashcode.validation.TestUtils.newConstraintValidatorContext;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EntityListeners;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Persistence;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test for {@link UniqueKeyLoadedStateListener}: updates that don't change the
+ * key must not query the database.
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+public class UniqueKeyLoadedStateListenerTest {
+
+    private EntityManagerFactory entityManagerFactory;
+    private EntityManager em;
+    private CountingUniquenessChecker checker;
+    private UniqueKeyValidator validator;
+    private Entity5 persisted;
+
+    @Before
+    public void beforeMethod() {
+        entityManagerFactory = Persistence.createEntityManagerFactory("test");
+        em = entityManagerFactory.createEntityManager();
+
+        checker = new CountingUniquenessChecker(new JpaUniquenessChecker(em));
+        validator = new UniqueKeyValidator(checker);
+        validator.initialize(Entity5.class.getAnnotation(UniqueKey.class));
+
+        persisted = new Entity5("val1", "other");
+        em.getTransaction().begin();
+        em.persist(persisted);
+        em.getTransaction().commit();
+    }
+
+    @After
+    public void afterMethod() {
+        em.getTransaction().begin();
+        em.remove(em.merge(persisted));
+        em.getTransaction().commit();
+    }
+
+    @Test
+    public void testUnchangedKeyDoesNotQuery() {
+        final EntityManager em2 = entityManagerFactory.createEntityManager();
+        final Entity5 loaded = em2.find(Entity5.class, persisted.getId());
+        loaded.setProp2("changed");
+
+        assertTrue(validator.isValid(loaded, null));
+        assertEquals("Unexpected number of queries.", 0, checker.getCount());
+    }
+
+    @Test
+    public void testChangedKeyIsQueried() {
+        final EntityManager em2 = entityManagerFactory.createEntityManager();
+        final Entity5 loaded = em2.find(Entity5.class, persisted.getId());
+        loaded.setProp1("val2");
+
+        assertTrue(validator.isValid(loaded, null));
+        assertEquals("Unexpected number of queries.", 1, checker.getCount());
+    }
+
+    @Test
+    public void testSnapshotsArePerInstance() {
+        final EntityManager em2 = entityManagerFactory.createEntityManager();
+        final Entity5 loaded = em2.find(Entity5.class, persisted.getId());
+        final Entity5 copy = new Entity5("val1", "other");
+
+        final Map<String, Object> values = Collections.<String, Object> singletonMap("prop1", "val1");
+        assertTrue(UniqueKeyLoadedStateListener.isUnchanged(loaded, values));
+        assertFalse("Another instance has no snapshot.", UniqueKeyLoadedStateListener.isUnchanged(copy, values));
+    }
+
+    @Test
+    public void testRemovePublishesStoredKeyOnce() {
+        final List<UniqueKeyChange> changes = new ArrayList<UniqueKeyChange>();
+        final LoopbackInvalidationChannel channel = new LoopbackInvalidationChannel();
+        channel.addListener(new UniqueKeyInvalidationChannel.Listener() {
+            @Override
+            public void onChange(final UniqueKeyChange change) {
+                changes.add(change);
+            }
+        });
+        UniqueKeyLoadedStateListener.setInvalidationChannel(channel);
+        try {
+            final UniqueKeyLoadedStateListener listener = new UniqueKeyLoadedStateListener();
+            final Entity5 entity = new Entity5("val1", "other");
+            listener.postLoad(entity);
+            entity.setProp1("val2");
+            listener.postRemove(entity);
+        } finally {
+            UniqueKeyLoadedStateListener.setInvalidationChannel(null);
+        }
+        assertEquals(Arrays.asList(new UniqueKeyChange(Entity5.class.getName(), "prop1", "val1")), changes);
+    }
+
+    @Test
+    public void testNewEntityIsQueried() {
+        assertFalse(validator.isValid(new Entity5("val1", "other"), newConstraintValidatorContext()));
+        assertEquals("Unexpected number of queries.", 1, checker.getCount());
+    }
+
+}
+
+@SuppressWarnings("serial")
+@Entity
+@EntityListeners(UniqueKeyLoadedStateListener.class)
+@UniqueKey(property = "prop1")
+class Entity5 implements Serializable {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE)
+    private long id;
+
+    @Column
+    private String prop1;
+    @Column
+    private String prop2;
+
+    public Entity5() {
+    }
+
+    public Entity5(final String prop1, final String prop2) {
+        this.prop1 = prop1;
+        this.prop2 = prop2;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getProp1() {
+        return prop1;
+    }
+
+    public void setProp1(final String prop1) {
+        this.prop1 = prop1;
+    }
+
+    public String getProp2() {
+        return prop2;
+    }
+
+    public void setProp2(final String prop2) {
+        this.prop2 = prop2;
+    }
+}
@@ -17,8 +17,10 @@ package de.hashcode.validation;
 
 import static de.hashcode.validation.TestUtils.assertPropertyPath;
 import static de.hashcode.validation.TestUtils.getByPropertyPath;
+import static de.hashcode.validation.TestUtils.newConstraintValidatorContext;
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertTrue;
 
 import java.io.Serializable;
 import java.util.ArrayList;
@@ -29,9 +31,11 @@ import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
+import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.ManyToOne;
 import javax.persistence.MappedSuperclass;
 import javax.persistence.Persistence;
 import javax.validation.ConstraintViolation;
@@ -55,12 +59,13 @@ import de.hashcode.validation.UniqueKey;
 public class UniqueKeyValidatorTest {
 
     private Validator validator;
+    private EntityManagerFactory entityManagerFactory;
     private EntityManager em;
     private List<Object> objectsToRemove;
 
     @Before
     public void beforeMethod() {
-        final EntityManagerFactory entityManagerFactory = Persistence.createEntityManagerFactory("test");
+        entityManagerFactory = Persistence.createEntityManagerFactory("test");
 
         final ValidatorFactory validatorFactory = Validation.buildDefaultValidatorFactory();
         final ValidatorContext validatorContext = validatorFactory.usingContext();
@@ -151,6 +156,94 @@ public class UniqueKeyValidatorTest {
         assertEquals("Unexpected violations: " + violations + ".", 0, violations.size());
     }
 
+    @Test
+    public void testScopedUniqueKey() {
+
+        final Entity4 obj1 = new Entity4("tenant1", "foo@example.org");
+
+        em.getTransaction().begin();
+        em.persist(obj1);
+        em.getTransaction().commit();
+        objectsToRemove.add(obj1);
+
+        // the same key in another scope is fine
+        Set<? extends ConstraintViolation<?>> violations = validator.validate(new Entity4("tenant2", obj1.getEmail()));
+        assertEquals("Unexpected violations: " + violations + ".", 0, violations.size());
+
+        violations = validator.validate(new Entity4(obj1.getTenant(), obj1.getEmail()));
+        assertEquals("Unexpected violations: " + violations + ".", 1, violations.size());
+        assertPropertyPath(violations.iterator().next(), "email");
+    }
+
+    @Test
+    public void testNestedUniqueKey() {
+
+        final Entity7Account account = new Entity7Account("foo");
+        final Entity7 obj1 = new Entity7(account);
+
+        em.getTransaction().begin();
+        em.persist(account);
+        em.persist(obj1);
+        em.getTransaction().commit();
+        objectsToRemove.add(obj1);
+        objectsToRemove.add(account);
+
+        Set<? extends ConstraintViolation<?>> violations = validator.validate(new Entity7(new Entity7Account("bar")));
+        assertEquals("Unexpected violations: " + violations + ".", 0, violations.size());
+
+        // null safe
+        violations = validator.validate(new Entity7(null));
+        assertEquals("Unexpected violations: " + violations + ".", 0, violations.size());
+
+        violations = validator.validate(new Entity7(new Entity7Account("foo")));
+        assertEquals("Unexpected violations: " + violations + ".", 1, violations.size());
+        assertPropertyPath(violations.iterator().next(), "account.login");
+    }
+
+    @Test
+    public void testProxiesAndAssociationsAreResolvedViaMetamodel() {
+
+        final Entity7Account account = new Entity7Account("foo");
+        em.getTransaction().begin();
+        em.persist(account);
+        em.getTransaction().commit();
+        objectsToRemove.add(account);
+
+        final UniqueKeyQuery[] query = new UniqueKeyQuery[1];
+        final UniqueKeyValidator uniqueKeyValidator = new UniqueKeyValidator(new UniquenessChecker() {
+            @Override
+            public boolean exists(final UniqueKeyQuery q) {
+                query[0] = q;
+                return false;
+            }
+        });
+        uniqueKeyValidator.setMetamodel(entityManagerFactory.getMetamodel(), entityManagerFactory
+                .getPersistenceUnitUtil());
+        uniqueKeyValidator.initialize(Entity8.class.getAnnotation(UniqueKey.class));
+
+        assertTrue(uniqueKeyValidator.isValid(new Entity8Proxy(account), newConstraintValidatorContext()));
+        assertEquals(Entity8.class, query[0].getEntityClass());
+        assertEquals("account.id", query[0].getProperty());
+        assertEquals(account.getId(), query[0].getValue());
+    }
+
+    @Test
+    public void testUniqueKeyOnAssociation() {
+
+        final Entity7Account account = new Entity7Account("foo");
+        final Entity8 obj1 = new Entity8(account);
+        em.getTransaction().begin();
+        em.persist(account);
+        em.persist(obj1);
+        em.getTransaction().commit();
+        objectsToRemove.add(obj1);
+        objectsToRemove.add(account);
+
+        final Set<? extends ConstraintViolation<?>> violations = validator.validate(new Entity8(account));
+        assertEquals("Unexpected violations: " + violations + ".", 1, violations.size());
+        assertPropertyPath(violations.iterator().next(), "account");
+    }
+
     /**
      * Checks equality of two {@link ConstraintViolation}s, as the impl class
      * (of hibernate validator) seems to have no suitable equals implementation.
@@ -205,3 +298,100 @@ class Entity2 extends EntityBase {
         return prop1;
     }
 }
+
+@SuppressWarnings("serial")
+@Entity
+@UniqueKey(property = "email", scope = "tenant")
+class Entity4 extends EntityBase {
+
+    @Column
+    private String tenant;
+    @Column
+    private String email;
+
+    public Entity4() {
+    }
+
+    public Entity4(final String tenant, final String email) {
+        this.tenant = tenant;
+        this.email = email;
+    }
+
+    public String getTenant() {
+        return tenant;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+}
+
+@SuppressWarnings("serial")
+@Entity
+@UniqueKey(property = "account.login")
+class Entity7 extends EntityBase {
+
+    @ManyToOne
+    private Entity7Account account;
+
+    public Entity7() {
+    }
+
+    public Entity7(final Entity7Account account) {
+        this.account = account;
+    }
+
+    public Entity7Account getAccount() {
+        return account;
+    }
+}
+
+@SuppressWarnings("serial")
+@Entity
+class Entity7Account extends EntityBase {
+
+    @Column
+    private String login;
+
+    public Entity7Account() {
+    }
+
+    public Entity7Account(final String login) {
+        this.login = login;
+    }
+
+    public String getLogin() {
+        return login;
+    }
+}
+
+@SuppressWarnings("serial")
+@Entity
+@UniqueKey(property = "account")
+class Entity8 extends EntityBase {
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    private Entity7Account account;
+
+    public Entity8() {
+    }
+
+    public Entity8(final Entity7Account account) {
+        this.account = account;
+    }
+
+    public Entity7Account getAccount() {
+        return account;
+    }
+}
+
+/**
+ * Like a provider proxy or enhanced subclass, not a managed type itself.
+ */
+@SuppressWarnings("serial")
+class Entity8Proxy extends Entity8 {
+
+    public Entity8Proxy(final Entity7Account account) {
+        super(account);
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import static de.hashcode.validation.TestUtils.assertPropertyPath;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+import java.io.Serializable;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Persistence;
+import javax.persistence.PersistenceException;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+import javax.validation.ConstraintViolation;
+import javax.validation.ConstraintViolationException;
+import javax.validation.Validation;
+import javax.validation.Validator;
+import javax.validation.ValidatorContext;
+import javax.validation.ValidatorFactory;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test for {@link UniqueKey#deferred()} and the
+ * {@link UniqueKeyViolationTranslator}.
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+public class UniqueKeyViolationTranslatorTest {
+
+    private Validator validator;
+    private UniqueKeyViolationTranslator translator;
+    private EntityManager em;
+    private List<Object> objectsToRemove;
+
+    @Before
+    public void beforeMethod() {
+        final EntityManagerFactory entityManagerFactory = Persistence.createEntityManagerFactory("test");
+
+        final ValidatorFactory validatorFactory = Validation.buildDefaultValidatorFactory();
+        final ValidatorContext validatorContext = validatorFactory.usingContext();
+        validatorContext.constraintValidatorFactory(new ConstraintValidatorFactoryEMFImpl(entityManagerFactory));
+        validator = validatorContext.getValidator();
+
+        translator = new UniqueKeyViolationTranslator(validatorFactory);
+
+        em = entityManagerFactory.createEntityManager();
+
+        objectsToRemove = new ArrayList<Object>();
+    }
+
+    @After
+    public void afterMethod() {
+        if (em.getTransaction().isActive()) {
+            em.getTransaction().rollback();
+        }
+        for (final Object entity : objectsToRemove) {
+            em.getTransaction().begin();
+            em.remove(em.merge(entity));
+            em.getTransaction().commit();
+        }
+    }
+
+    @Test
+    public void testDeferredUniqueKeyIsTranslatedOnFlush() {
+
+        final Entity3 obj1 = new Entity3("val1");
+        em.getTransaction().begin();
+        em.persist(obj1);
+        em.getTransaction().commit();
+        objectsToRemove.add(obj1);
+
+        final Entity3 obj2 = new Entity3(obj1.getProp1());
+
+        // no query is executed during validation
+        final Set<ConstraintViolation<Entity3>> violations = validator.validate(obj2);
+        assertEquals("Unexpected violations: " + violations + ".", 0, violations.size());
+
+        em.getTransaction().begin();
+        em.persist(obj2);
+        try {
+            translator.flush(em, obj2);
+            fail("Expected ConstraintViolationException.");
+        } catch (final ConstraintViolationException e) {
+            assertEquals("Unexpected violations: " + e.getConstraintViolations() + ".", 1, e
+                    .getConstraintViolations().size());
+            final ConstraintViolation<?> violation = e.getConstraintViolations().iterator().next();
+            assertPropertyPath(violation, "prop1");
+            assertEquals("must be unique", violation.getMessage());
+        }
+    }
+
+    @Test
+    public void testUnnamedKeyIsOnlyUsedForUniqueViolations() {
+        final DeferredBean bean = new DeferredBean("val1");
+
+        final PersistenceException foreignKeyViolation = new PersistenceException(new SQLException(
+                "integrity constraint violation: foreign key no parent; FK_BEAN_PARENT", "23503", -177));
+        assertNull(translator.translate(foreignKeyViolation, bean));
+
+        final PersistenceException notNullViolation = new PersistenceException(
+                new SQLIntegrityConstraintViolationException("ORA-01400: cannot insert NULL", "23000", 1400));
+        assertNull(translator.translate(notNullViolation, bean));
+
+        final PersistenceException uniqueViolation = new PersistenceException(new SQLException(
+                "Duplicate entry 'val1' for key 'prop1'", "23000", 1062));
+        final ConstraintViolationException translated = translator.translate(uniqueViolation, bean);
+        assertNotNull(translated);
+        assertPropertyPath(translated.getConstraintViolations().iterator().next(), "prop1");
+    }
+
+    @Test
+    public void testConstraintNameIsMatchedAsIdentifier() {
+        final NamedKeysBean bean = new NamedKeysBean("mail1", "tenant1");
+
+        final ConstraintViolationException scoped = translator.translate(new PersistenceException(
+                new SQLException("Duplicate entry 'mail1-tenant1' for key 'UK_EMAIL_TENANT'", "23000", 1062)), bean);
+        assertNotNull(scoped);
+        assertEquals("uk_email_tenant", constraintName(scoped));
+
+        final ConstraintViolationException unscoped = translator.translate(new PersistenceException(
+                new SQLException("Duplicate entry 'mail1' for key 'uk_email'", "23000", 1062)), bean);
+        assertNotNull(unscoped);
+        assertEquals("uk_email", constraintName(unscoped));
+
+        assertTrue(UniqueKeyViolationTranslator.containsIdentifier("KEY 'UK_EMAIL'", "UK_EMAIL"));
+        assertFalse(UniqueKeyViolationTranslator.containsIdentifier("KEY 'UK_EMAIL_TENANT'", "UK_EMAIL"));
+        assertFalse(UniqueKeyViolationTranslator.containsIdentifier("KEY 'XUK_EMAIL'", "UK_EMAIL"));
+    }
+
+    @Test
+    public void testNamedKeyIsOnlyUsedForUniqueViolations() {
+        final NamedKeysBean bean = new NamedKeysBean("mail1", "tenant1");
+        assertNull(translator.translate(new PersistenceException(new SQLException(
+                "check constraint violation: UK_EMAIL", "23513")), bean));
+    }
+
+    private static String constraintName(final ConstraintViolationException e) {
+        final ConstraintViolation<?> violation = e.getConstraintViolations().iterator().next();
+        assertPropertyPath(violation, "email");
+        return ((UniqueKey) violation.getConstraintDescriptor().getAnnotation()).constraintName();
+    }
+
+    @Test
+    public void testIsUniqueViolation() {
+        assertTrue(UniqueKeyViolationTranslator.isUniqueViolation(new SQLException("unique", "23505")));
+        assertTrue(UniqueKeyViolationTranslator.isUniqueViolation(new RuntimeException(new SQLException(
+                "ORA-00001: unique constraint violated", "23000", 1))));
+        assertTrue(UniqueKeyViolationTranslator.isUniqueViolation(new SQLException("duplicate key", "23000", 2627)));
+        assertFalse(UniqueKeyViolationTranslator.isUniqueViolation(new SQLException("foreign key", "23503")));
+        assertFalse(UniqueKeyViolationTranslator.isUniqueViolation(new SQLException("check", "23513")));
+        assertFalse(UniqueKeyViolationTranslator.isUniqueViolation(new SQLException("connection", "08001", 1)));
+    }
+
+}
+
+/**
+ * A bean with a deferred key without constraint name.
+ */
+@UniqueKey(property = "prop1", deferred = true)
+class DeferredBean {
+
+    private final String prop1;
+
+    public DeferredBean(final String prop1) {
+        this.prop1 = prop1;
+    }
+
+    public String getProp1() {
+        return prop1;
+    }
+}
+
+@SuppressWarnings("serial")
+@Entity
+@Table(uniqueConstraints = @UniqueConstraint(name = "UK_ENTITY3_PROP1", columnNames = "PROP1"))
+@UniqueKey(property = "prop1", deferred = true, constraintName = "UK_ENTITY3_PROP1")
+class Entity3 implements Serializable {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE)
+    private long id;
+
+    @Column
+    private String prop1;
+
+    public Entity3() {
+    }
+
+    public Entity3(final String prop1) {
+        this.prop1 = prop1;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getProp1() {
+        return prop1;
+    }
+}
+
+/**
+ * A bean with deferred keys whose constraint names share a prefix.
+ */
+@UniqueKey.List({ @UniqueKey(property = "email", deferred = true, constraintName = "uk_email"),
+        @UniqueKey(property = "email", scope = "tenant", deferred = true, constraintName = "uk_email_tenant") })
+class NamedKeysBean {
+
+    private final String email;
+    private final String tenant;
+
+    NamedKeysBean(final String email, final String tenant) {
+        this.email = email;
+        this.tenant = tenant;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public String getTenant() {
+        return tenant;
+    }
+}
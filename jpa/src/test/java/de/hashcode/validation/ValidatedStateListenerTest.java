@@ -0,0 +1,299 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+import java.io.Serializable;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EntityListeners;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Persistence;
+import javax.persistence.Version;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test for {@link ValidatedStateListener}: keys that were already validated
+ * must not be queried again as long as they and the version are unchanged.
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+public class ValidatedStateListenerTest {
+
+    private EntityManagerFactory entityManagerFactory;
+    private EntityManager em;
+    private CountingUniquenessChecker checker;
+    private UniqueKeyValidator validator;
+    private Entity10 entity;
+
+    @Before
+    public void beforeMethod() {
+        entityManagerFactory = Persistence.createEntityManagerFactory("test");
+        em = entityManagerFactory.createEntityManager();
+
+        checker = new CountingUniquenessChecker(new JpaUniquenessChecker(em));
+        validator = new UniqueKeyValidator(checker);
+        validator.initialize(Entity10.class.getAnnotation(UniqueKey.class));
+
+        entity = new Entity10("login1", "name");
+        em.getTransaction().begin();
+        em.persist(entity);
+    }
+
+    @After
+    public void afterMethod() {
+        if (em.getTransaction().isActive()) {
+            em.getTransaction().rollback();
+        }
+        em.getTransaction().begin();
+        final Entity10 persisted = em.find(Entity10.class, entity.getId());
+        if (persisted != null) {
+            em.remove(persisted);
+        }
+        em.getTransaction().commit();
+    }
+
+    @Test
+    public void testValidatedKeyIsNotQueriedAgain() {
+        assertTrue(validator.isValid(entity, null));
+        entity.setName("changed");
+        assertTrue(validator.isValid(entity, null));
+        assertEquals("Unexpected number of queries.", 1, checker.getCount());
+    }
+
+    @Test
+    public void testChangedKeyIsQueried() {
+        assertTrue(validator.isValid(entity, null));
+        entity.setLogin("login2");
+        assertTrue(validator.isValid(entity, null));
+        assertEquals("Unexpected number of queries.", 2, checker.getCount());
+    }
+
+    @Test
+    public void testRecordIsKeptByFlush() {
+        assertTrue(validator.isValid(entity, null));
+        em.flush();
+        entity.setName("changed");
+        em.flush();
+        assertTrue(validator.isValid(entity, null));
+        assertEquals("Unexpected number of queries.", 1, checker.getCount());
+    }
+
+    @Test
+    public void testNewVersionIsQueried() {
+        assertTrue(validator.isValid(entity, null));
+        em.getTransaction().commit();
+
+        final EntityManager em2 = entityManagerFactory.createEntityManager();
+        em2.getTransaction().begin();
+        em2.find(Entity10.class, entity.getId()).setName("changed");
+        em2.getTransaction().commit();
+
+        em.refresh(entity);
+        assertTrue(validator.isValid(entity, null));
+        assertEquals("Unexpected number of queries.", 2, checker.getCount());
+    }
+
+    @Test
+    public void testRecordsAreKeptPerInstance() {
+        final EntityManager setup = entityManagerFactory.createEntityManager();
+        final Entity11 persisted = new Entity11("login11");
+        setup.getTransaction().begin();
+        setup.persist(persisted);
+        setup.getTransaction().commit();
+
+        final UniqueKeyValidator entity11Validator = new UniqueKeyValidator(checker);
+        entity11Validator.initialize(Entity11.class.getAnnotation(UniqueKey.class));
+        final EntityManager em2 = entityManagerFactory.createEntityManager();
+        final EntityManager em3 = entityManagerFactory.createEntityManager();
+        try {
+            // equal (by id), but loaded by different persistence contexts
+            final Entity11 loaded2 = em2.find(Entity11.class, persisted.getId());
+            final Entity11 loaded3 = em3.find(Entity11.class, persisted.getId());
+            assertEquals(loaded2, loaded3);
+
+            assertTrue(entity11Validator.isValid(loaded2, null));
+            assertTrue(entity11Validator.isValid(loaded3, null));
+            assertTrue(entity11Validator.isValid(loaded2, null));
+            assertEquals("Unexpected number of queries.", 2, checker.getCount());
+        } finally {
+            em2.close();
+            em3.close();
+            setup.getTransaction().begin();
+            setup.remove(persisted);
+            setup.getTransaction().commit();
+            setup.close();
+        }
+    }
+
+    @Test
+    public void testReloadDiscardsRecords() {
+        assertTrue(validator.isValid(entity, null));
+        em.getTransaction().commit();
+
+        // reloaded at the same version, the key might have been validated in a rolled back transaction
+        em.refresh(entity);
+        assertTrue(validator.isValid(entity, null));
+        assertEquals("Unexpected number of queries.", 2, checker.getCount());
+    }
+
+    @Test
+    public void testUnversionedEntityIsQueried() {
+        final UnversionedBean bean = new UnversionedBean("login2");
+        new ValidatedStateListener().prePersist(bean);
+        final UniqueKeyValidator beanValidator = new UniqueKeyValidator(checker);
+        beanValidator.initialize(UnversionedBean.class.getAnnotation(UniqueKey.class));
+        assertTrue(beanValidator.isValid(bean, null));
+        assertTrue(beanValidator.isValid(bean, null));
+        assertEquals("Unexpected number of queries.", 2, checker.getCount());
+    }
+
+    @Test
+    public void testUntrackedEntityIsQueried() {
+        final Entity10 untracked = new Entity10("login2", "name");
+        assertTrue(validator.isValid(untracked, null));
+        assertTrue(validator.isValid(untracked, null));
+        assertEquals("Unexpected number of queries.", 2, checker.getCount());
+    }
+
+}
+
+@SuppressWarnings("serial")
+@Entity
+@EntityListeners(ValidatedStateListener.class)
+@UniqueKey(property = "login")
+class Entity10 implements Serializable {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE)
+    private long id;
+
+    @Version
+    private long version;
+
+    @Column
+    private String login;
+    @Column
+    private String name;
+
+    public Entity10() {
+    }
+
+    public Entity10(final String login, final String name) {
+        this.login = login;
+        this.name = name;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getLogin() {
+        return login;
+    }
+
+    public void setLogin(final String login) {
+        this.login = login;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(final String name) {
+        this.name = name;
+    }
+}
+
+/**
+ * A versioned entity with an id based equals/hashCode.
+ */
+@SuppressWarnings("serial")
+@Entity
+@EntityListeners(ValidatedStateListener.class)
+@UniqueKey(property = "login")
+class Entity11 implements Serializable {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE)
+    private Long id;
+
+    @Version
+    private long version;
+
+    @Column
+    private String login;
+
+    public Entity11() {
+    }
+
+    public Entity11(final String login) {
+        this.login = login;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getLogin() {
+        return login;
+    }
+
+    @Override
+    public int hashCode() {
+        return id == null ? 0 : id.hashCode();
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        return obj instanceof Entity11 && id != null && id.equals(((Entity11) obj).id);
+    }
+}
+
+/**
+ * A bean without version.
+ */
+@SuppressWarnings("serial")
+@UniqueKey(property = "login")
+class UnversionedBean implements Serializable {
+
+    @Id
+    private Long id;
+
+    private final String login;
+
+    public UnversionedBean(final String login) {
+        this.login = login;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getLogin() {
+        return login;
+    }
+}
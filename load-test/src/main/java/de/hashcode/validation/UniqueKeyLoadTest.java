@@ -0,0 +1,333 @@
+/*
+ * Copyright 2011 Martin Grotzke
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an &quot;AS IS&quot; BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.hashcode.validation;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnull;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import javax.persistence.PersistenceException;
+import javax.validation.Validation;
+import javax.validation.Validator;
+import javax.validation.ValidatorContext;
+
+import org.HdrHistogram.Histogram;
+
+/**
+ * A load test for the {@link UniqueKeyValidator}: many concurrent writers
+ * validate and insert {@link LoadTestEntity}s into one table of an embedded
+ * (in memory) hsqldb, with a configurable rate of key collisions.
+ * <p>
+ * Measured are the latencies of validation and insert (recorded in
+ * HdrHistograms, reported as percentiles), the {@link EntityManager}s used by
+ * the validators (created and concurrently open, and the time to obtain one
+ * as indicator for pool saturation), and the number of races: inserts that
+ * passed the validation but failed due to the unique index, because a
+ * concurrent insert of the same key passed the validation as well.
+ * </p>
+ * <p>
+ * The configuration is read from system properties (defaults in brackets):
+ * </p>
+ * <ul>
+ * <li><code>writers</code> the number of concurrent writers [200]</li>
+ * <li><code>durationSeconds</code> how long to run (after the warmup) [30]</li>
+ * <li><code>warmupSeconds</code> how long to run without recording [5]</li>
+ * <li><code>collisionRate</code> the share of inserts (0..1) using one of the
+ * hot keys, the others use unique keys [0.05]</li>
+ * <li><code>hotKeys</code> the number of hot keys [50]</li>
+ * <li><code>hotKeyLifetimeMillis</code> after this time a new set of hot keys
+ * is used, so that collisions keep racing [1000]</li>
+ * <li><code>poolSize</code> the max size of the connection pool [32]</li>
+ * <li><code>label</code> identifies the run in the report, e.g. the release
+ * [the implementation version of the jpa module]</li>
+ * <li><code>report</code> the file to write the report to (as properties, to
+ * compare runs), it's always printed to stdout</li>
+ * </ul>
+ *
+ * @author <a href="mailto:martin.grotzke@googlemail.com">Martin Grotzke</a>
+ */
+public class UniqueKeyLoadTest {
+
+    /**
+     * The highest recorded latency: 1 minute in microseconds.
+     */
+    private static final long HIGHEST_LATENCY = TimeUnit.MINUTES.toMicros(1);
+    private static final int SIGNIFICANT_DIGITS = 3;
+    private static final double[] PERCENTILES = { 50, 90, 99, 99.9 };
+
+    private final int writers = Integer.getInteger("writers", 200);
+    private final int durationSeconds = Integer.getInteger("durationSeconds", 30);
+    private final int warmupSeconds = Integer.getInteger("warmupSeconds", 5);
+    private final double collisionRate = Double.parseDouble(System.getProperty("collisionRate", "0.05"));
+    private final int hotKeys = Integer.getInteger("hotKeys", 50);
+    private final long hotKeyLifetimeMillis = Long.getLong("hotKeyLifetimeMillis", 1000);
+    private final int poolSize = Integer.getInteger("poolSize", 32);
+
+    private final AtomicLong validations = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong inserted = new AtomicLong();
+    private final AtomicLong races = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+
+    public static void main(final String[] args) throws Exception {
+        final Properties report = new UniqueKeyLoadTest().run();
+        final String label = System.getProperty("label", String.valueOf(UniqueKeyValidator.class.getPackage()
+                .getImplementationVersion()));
+        report.setProperty("label", label);
+
+        // sorted for easy comparison
+        for (final Map.Entry<Object, Object> entry : new TreeMap<Object, Object>(report).entrySet()) {
+            System.out.println(entry.getKey() + " = " + entry.getValue());
+        }
+        final String reportFile = System.getProperty("report");
+        if (reportFile != null) {
+            final OutputStream out = new FileOutputStream(reportFile);
+            try {
+                report.store(out, "UniqueKeyLoadTest " + label);
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    /**
+     * Runs the load test and returns the report.
+     */
+    @Nonnull
+    public Properties run() throws InterruptedException, IOException {
+        final Map<String, String> properties = new HashMap<String, String>();
+        properties.put("eclipselink.jdbc.connections.max", String.valueOf(poolSize));
+        properties.put("eclipselink.jdbc.connections.min", String.valueOf(poolSize));
+        final EntityManagerFactory entityManagerFactory = Persistence.createEntityManagerFactory("load-test",
+                properties);
+        try {
+            final MeasuringEntityManagerProvider entityManagerProvider = new MeasuringEntityManagerProvider(
+                    EntityManagerProviders.perCheck(entityManagerFactory));
+            final ValidatorContext validatorContext = Validation.buildDefaultValidatorFactory().usingContext();
+            validatorContext.constraintValidatorFactory(new ConstraintValidatorFactoryEMFImpl(entityManagerFactory,
+                    entityManagerProvider));
+            final Validator validator = validatorContext.getValidator();
+
+            final long start = System.currentTimeMillis();
+            final long recordFrom = start + TimeUnit.SECONDS.toMillis(warmupSeconds);
+            final long end = recordFrom + TimeUnit.SECONDS.toMillis(durationSeconds);
+
+            final CountDownLatch done = new CountDownLatch(writers);
+            final List<Writer> writerList = new ArrayList<Writer>();
+            for (int i = 0; i < writers; i++) {
+                final Writer writer = new Writer(i, validator, entityManagerFactory, start, recordFrom, end, done);
+                writerList.add(writer);
+                new Thread(writer, "writer-" + i).start();
+            }
+            done.await();
+
+            final Histogram validationLatencies = newHistogram();
+            final Histogram insertLatencies = newHistogram();
+            for (final Writer writer : writerList) {
+                validationLatencies.add(writer.validationLatencies);
+                insertLatencies.add(writer.insertLatencies);
+            }
+
+            System.out.println("Validation latencies (ms):");
+            validationLatencies.outputPercentileDistribution(System.out, 1000.0);
+
+            final Properties report = new Properties();
+            report.setProperty("config.writers", String.valueOf(writers));
+            report.setProperty("config.durationSeconds", String.valueOf(durationSeconds));
+            report.setProperty("config.collisionRate", String.valueOf(collisionRate));
+            report.setProperty("config.hotKeys", String.valueOf(hotKeys));
+            report.setProperty("config.hotKeyLifetimeMillis", String.valueOf(hotKeyLifetimeMillis));
+            report.setProperty("config.poolSize", String.valueOf(poolSize));
+            report.setProperty("validations", String.valueOf(validations.get()));
+            report.setProperty("validations.perSecond", String.valueOf(validations.get() / Math.max(1,
+                    durationSeconds)));
+            report.setProperty("rejected", String.valueOf(rejected.get()));
+            report.setProperty("inserted", String.valueOf(inserted.get()));
+            report.setProperty("races", String.valueOf(races.get()));
+            report.setProperty("errors", String.valueOf(errors.get()));
+            addLatencies(report, "validation", validationLatencies);
+            addLatencies(report, "insert", insertLatencies);
+            addLatencies(report, "entityManager.acquire", entityManagerProvider.acquireLatencies);
+            report.setProperty("entityManager.created", String.valueOf(entityManagerProvider.created.get()));
+            report.setProperty("entityManager.peakOpen", String.valueOf(entityManagerProvider.peakOpen.get()));
+            return report;
+        } finally {
+            entityManagerFactory.close();
+        }
+    }
+
+    private static void addLatencies(final Properties report, final String name, final Histogram histogram) {
+        synchronized (histogram) {
+            report.setProperty(name + ".count", String.valueOf(histogram.getTotalCount()));
+            for (final double percentile : PERCENTILES) {
+                report.setProperty(name + ".p" + String.valueOf(percentile).replace(".0", "").replace(".", "")
+                        + ".micros", String.valueOf(histogram.getValueAtPercentile(percentile)));
+            }
+            report.setProperty(name + ".max.micros", String.valueOf(histogram.getMaxValue()));
+            report.setProperty(name + ".mean.micros", String.valueOf(Math.round(histogram.getMean())));
+        }
+    }
+
+    private static Histogram newHistogram() {
+        return new Histogram(HIGHEST_LATENCY, SIGNIFICANT_DIGITS);
+    }
+
+    private static long micros(final long startNanos) {
+        return Math.min(HIGHEST_LATENCY, TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos));
+    }
+
+    /**
+     * Validates and inserts entities until the end is reached. The histograms
+     * are only accessed by this writer until it's done.
+     */
+    private final class Writer implements Runnable {
+
+        private final int id;
+        private final Validator validator;
+        private final EntityManagerFactory entityManagerFactory;
+        private final long start;
+        private final long recordFrom;
+        private final long end;
+        private final CountDownLatch done;
+        private final Random random;
+        private final Histogram validationLatencies = newHistogram();
+        private final Histogram insertLatencies = newHistogram();
+
+        private Writer(final int id, final Validator validator, final EntityManagerFactory entityManagerFactory,
+                final long start, final long recordFrom, final long end, final CountDownLatch done) {
+            this.id = id;
+            this.validator = validator;
+            this.entityManagerFactory = entityManagerFactory;
+            this.start = start;
+            this.recordFrom = recordFrom;
+            this.end = end;
+            this.done = done;
+            random = new Random(id);
+        }
+
+        @Override
+        public void run() {
+            try {
+                long seq = 0;
+                for (long now = System.currentTimeMillis(); now < end; now = System.currentTimeMillis()) {
+                    final boolean record = now >= recordFrom;
+                    final String login = random.nextDouble() < collisionRate
+                        ? "hot-" + (now - start) / hotKeyLifetimeMillis + "-" + random.nextInt(hotKeys)
+                        : "key-" + id + "-" + seq++;
+                    final LoadTestEntity entity = new LoadTestEntity(login);
+
+                    final long validationStart = System.nanoTime();
+                    final boolean valid = validator.validate(entity).isEmpty();
+                    if (record) {
+                        validationLatencies.recordValue(micros(validationStart));
+                        validations.incrementAndGet();
+                    }
+                    if (!valid) {
+                        if (record) {
+                            rejected.incrementAndGet();
+                        }
+                        continue;
+                    }
+
+                    final long insertStart = System.nanoTime();
+                    final AtomicLong result = insert(entity);
+                    if (record) {
+                        insertLatencies.recordValue(micros(insertStart));
+                        result.incrementAndGet();
+                    }
+                }
+            } finally {
+                done.countDown();
+            }
+        }
+
+        /**
+         * Inserts the given entity and returns the counter for the outcome.
+         */
+        private AtomicLong insert(final LoadTestEntity entity) {
+            final EntityManager entityManager = entityManagerFactory.createEntityManager();
+            try {
+                entityManager.getTransaction().begin();
+                entityManager.persist(entity);
+                entityManager.getTransaction().commit();
+                return inserted;
+            } catch (final PersistenceException e) {
+                return UniqueKeyViolationTranslator.isUniqueViolation(e) ? races : errors;
+            } finally {
+                if (entityManager.getTransaction().isActive()) {
+                    entityManager.getTransaction().rollback();
+                }
+                entityManager.close();
+            }
+        }
+    }
+
+    /**
+     * Counts the {@link EntityManager}s used by the validators, and records
+     * the time to obtain one.
+     */
+    private static final class MeasuringEntityManagerProvider implements EntityManagerProvider {
+
+        private final EntityManagerProvider delegate;
+        private final AtomicLong created = new AtomicLong();
+        private final AtomicInteger open = new AtomicInteger();
+        private final AtomicInteger peakOpen = new AtomicInteger();
+        private final Histogram acquireLatencies = newHistogram();
+
+        private MeasuringEntityManagerProvider(final EntityManagerProvider delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public EntityManager getEntityManager() {
+            final long start = System.nanoTime();
+            final EntityManager result = delegate.getEntityManager();
+            final long latency = micros(start);
+            synchronized (acquireLatencies) {
+                acquireLatencies.recordValue(latency);
+            }
+            created.incrementAndGet();
+            final int current = open.incrementAndGet();
+            for (int peak = peakOpen.get(); current > peak && !peakOpen.compareAndSet(peak, current); peak = peakOpen
+                    .get()) {
+                // retry
+            }
+            return result;
+        }
+
+        @Override
+        public void release(final EntityManager entityManager) {
+            open.decrementAndGet();
+            delegate.release(entityManager);
+        }
+    }
+
+}